@@ -0,0 +1,101 @@
+package com.netopyr.wurmloch.jmh;
+
+import com.netopyr.wurmloch.codec.WireInput;
+import com.netopyr.wurmloch.codec.WireOutput;
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GCounter;
+import com.netopyr.wurmloch.crdt.ORSet;
+import com.netopyr.wurmloch.crdt.RGA;
+import io.reactivex.Flowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandCodecBenchmark {
+
+    private static final String CRDT_ID = "ID_1";
+
+    @Param({"GCounter", "ORSet", "RGA"})
+    private String crdt;
+
+    @Param({"1", "16", "256"})
+    private int entries;
+
+    private final BinaryCommandCodec encoder = new BinaryCommandCodec();
+    private final BinaryCommandCodec decoder = new BinaryCommandCodec();
+    private final WireOutput output = new WireOutput();
+    private final WireInput input = new WireInput();
+    private CrdtCommand command;
+    private byte[] encoded;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        command = createCommand();
+        // the first encoding interns the ids, which is what a long-lived connection sees
+        encoder.encode(command, output);
+        input.setInput(ByteBuffer.wrap(output.toByteArray()));
+        decoder.decode(input);
+        output.clear();
+        encoder.encode(command, output);
+        encoded = output.toByteArray();
+    }
+
+    private CrdtCommand createCommand() {
+        switch (crdt) {
+            case "GCounter":
+                final GCounter counter = new GCounter("N_LOCAL", CRDT_ID);
+                for (int i = 0; i < entries; i++) {
+                    final GCounter replica = new GCounter("N_" + i, CRDT_ID);
+                    replica.increment(i + 1L);
+                    counter.subscribeTo(replica);
+                }
+                return Flowable.fromPublisher(counter).blockingFirst();
+            case "ORSet":
+                final ORSet<String> set = new ORSet<>("N_LOCAL", CRDT_ID);
+                for (int i = 0; i < entries; i++) {
+                    set.add("element" + i);
+                }
+                return Flowable.fromPublisher(set).cast(CrdtCommand.class).blockingFirst();
+            default:
+                final RGA<String> rga = new RGA<>("N_LOCAL", CRDT_ID);
+                for (int i = 0; i < entries; i++) {
+                    rga.add("element" + i);
+                }
+                return Flowable.fromPublisher(rga).cast(CrdtCommand.class).blockingFirst();
+        }
+    }
+
+
+    @Benchmark
+    public int encode() {
+        output.clear();
+        encoder.encode(command, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public CrdtCommand decode() {
+        input.setInput(ByteBuffer.wrap(encoded));
+        return decoder.decode(input);
+    }
+}
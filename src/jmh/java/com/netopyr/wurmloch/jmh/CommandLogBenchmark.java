@@ -0,0 +1,80 @@
+package com.netopyr.wurmloch.jmh;
+
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GCounter;
+import com.netopyr.wurmloch.store.CommandLog;
+import io.reactivex.Flowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time until an appended command is durable, with several threads appending concurrently.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class CommandLogBenchmark {
+
+    private static final String CRDT_ID = "ID_1";
+
+    @Param({"1", "16", "256"})
+    private int maxBatchSize;
+
+    @Param({"0", "100"})
+    private long maxLingerMicros;
+
+    private Path directory;
+    private CommandLog log;
+    private CrdtCommand command;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("wurmloch-jmh");
+        log = new CommandLog(directory, new BinaryCommandCodec(), 64L * 1024L * 1024L, maxBatchSize, maxLingerMicros, TimeUnit.MICROSECONDS);
+        final GCounter counter = new GCounter("N_1", CRDT_ID);
+        final List<CrdtCommand> commands = new ArrayList<>();
+        Flowable.fromPublisher(counter).subscribe(commands::add);
+        counter.increment();
+        command = commands.get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void commit() {
+        log.append(command).join();
+    }
+}
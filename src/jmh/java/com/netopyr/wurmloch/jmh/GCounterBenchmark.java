@@ -0,0 +1,67 @@
+package com.netopyr.wurmloch.jmh;
+
+import com.netopyr.wurmloch.crdt.GCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GCounterBenchmark {
+
+    private static final String CRDT_ID = "ID_1";
+
+    @Param({"1", "16", "256"})
+    private int replicas;
+
+    private GCounter local;
+    private GCounter sender;
+    private GCounter receiver;
+
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        local = new GCounter("N_LOCAL", CRDT_ID);
+        sender = new GCounter("N_SENDER", CRDT_ID);
+        receiver = new GCounter("N_RECEIVER", CRDT_ID);
+        for (int i = 0; i < replicas; i++) {
+            final GCounter replica = new GCounter("N_" + i, CRDT_ID);
+            replica.increment();
+            local.subscribeTo(replica);
+            sender.subscribeTo(replica);
+            receiver.subscribeTo(replica);
+        }
+        receiver.subscribeTo(sender);
+    }
+
+
+    @Benchmark
+    public void increment() {
+        local.increment();
+    }
+
+    @Benchmark
+    public void replicatedIncrement() {
+        sender.increment();
+    }
+
+    @Benchmark
+    public long get() {
+        return local.get();
+    }
+}
@@ -0,0 +1,72 @@
+package com.netopyr.wurmloch.jmh;
+
+import com.netopyr.wurmloch.crdt.LWWRegister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LWWRegisterBenchmark {
+
+    private static final String CRDT_ID = "ID_1";
+
+    @Param({"1", "16", "256"})
+    private int replicas;
+
+    private LWWRegister<Integer> local;
+    private LWWRegister<Integer> sender;
+    private LWWRegister<Integer> receiver;
+    private int next;
+
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        local = new LWWRegister<>("N_LOCAL", CRDT_ID);
+        sender = new LWWRegister<>("N_SENDER", CRDT_ID);
+        receiver = new LWWRegister<>("N_RECEIVER", CRDT_ID);
+        LWWRegister<Integer> previous = new LWWRegister<>("N_0", CRDT_ID);
+        previous.set(0);
+        for (int i = 1; i < replicas; i++) {
+            final LWWRegister<Integer> replica = new LWWRegister<>("N_" + i, CRDT_ID);
+            replica.subscribeTo(previous);
+            replica.set(i);
+            previous = replica;
+        }
+        local.subscribeTo(previous);
+        sender.subscribeTo(previous);
+        receiver.subscribeTo(previous);
+        receiver.subscribeTo(sender);
+    }
+
+
+    @Benchmark
+    public void set() {
+        local.set(next++);
+    }
+
+    @Benchmark
+    public void replicatedSet() {
+        sender.set(next++);
+    }
+
+    @Benchmark
+    public Object get() {
+        return local.get();
+    }
+}
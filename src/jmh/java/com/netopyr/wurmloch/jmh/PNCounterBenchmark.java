@@ -0,0 +1,73 @@
+package com.netopyr.wurmloch.jmh;
+
+import com.netopyr.wurmloch.crdt.PNCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PNCounterBenchmark {
+
+    private static final String CRDT_ID = "ID_1";
+
+    @Param({"1", "16", "256"})
+    private int replicas;
+
+    private PNCounter local;
+    private PNCounter sender;
+    private PNCounter receiver;
+
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        local = new PNCounter("N_LOCAL", CRDT_ID);
+        sender = new PNCounter("N_SENDER", CRDT_ID);
+        receiver = new PNCounter("N_RECEIVER", CRDT_ID);
+        for (int i = 0; i < replicas; i++) {
+            final PNCounter replica = new PNCounter("N_" + i, CRDT_ID);
+            replica.increment();
+            replica.decrement();
+            local.subscribeTo(replica);
+            sender.subscribeTo(replica);
+            receiver.subscribeTo(replica);
+        }
+        receiver.subscribeTo(sender);
+    }
+
+
+    @Benchmark
+    public void increment() {
+        local.increment();
+    }
+
+    @Benchmark
+    public void decrement() {
+        local.decrement();
+    }
+
+    @Benchmark
+    public void replicatedIncrement() {
+        sender.increment();
+    }
+
+    @Benchmark
+    public long get() {
+        return local.get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.netopyr.wurmloch.jmh;
+
+import com.netopyr.wurmloch.crdt.TwoPSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TwoPSetBenchmark {
+
+    private static final String CRDT_ID = "ID_1";
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private TwoPSet<Integer> local;
+    private TwoPSet<Integer> sender;
+    private TwoPSet<Integer> receiver;
+    private int next;
+
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        local = new TwoPSet<>(CRDT_ID);
+        sender = new TwoPSet<>(CRDT_ID);
+        receiver = new TwoPSet<>(CRDT_ID);
+        receiver.subscribeTo(sender);
+        for (int i = 0; i < size; i++) {
+            local.add(i);
+            sender.add(i);
+        }
+        next = size;
+    }
+
+
+    @Benchmark
+    public boolean add() {
+        return local.add(next++);
+    }
+
+    @Benchmark
+    public boolean replicatedAdd() {
+        return sender.add(next++);
+    }
+
+    @Benchmark
+    public boolean addAndRemove() {
+        final Integer element = next++;
+        local.add(element);
+        return local.remove(element);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return local.contains(size / 2);
+    }
+
+    @Benchmark
+    public int size() {
+        return local.size();
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (final Integer element : local) {
+            blackhole.consume(element);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.netopyr.wurmloch.codec;
+
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+
+/**
+ * Converts commands to and from a binary representation, so they can be sent to another JVM.
+ * <p>
+ * A codec instance may keep state across commands, e.g. the interned strings of its {@link WireOutput}. Commands
+ * have to be decoded in the order in which they were encoded.
+ */
+public interface CommandCodec {
+
+    /**
+     * @throws IllegalArgumentException if the codec does not support the type of the command
+     */
+    void encode(CrdtCommand command, WireOutput output);
+
+    /**
+     * @throws IllegalArgumentException if the input is not a valid command
+     */
+    CrdtCommand decode(WireInput input);
+
+}
@@ -0,0 +1,15 @@
+package com.netopyr.wurmloch.codec;
+
+/**
+ * Encodes the elements and values that the CRDTs contain.
+ *
+ * @param <E> the type of the elements
+ * @see ElementSerializers
+ */
+public interface ElementSerializer<E> {
+
+    void write(E element, WireOutput output);
+
+    E read(WireInput input);
+
+}
@@ -0,0 +1,285 @@
+package com.netopyr.wurmloch.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The built-in {@link ElementSerializer}s.
+ */
+public final class ElementSerializers {
+
+    // fields
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_BOOLEAN = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_CHARACTER = 6;
+    private static final int TAG_BYTES = 7;
+    private static final int TAG_SERIALIZABLE = 8;
+
+    private static final Class<?> FILTER_CLASS = findClass("java.io.ObjectInputFilter");
+
+    private static final ElementSerializer<String> STRINGS = new ElementSerializer<String>() {
+        @Override
+        public void write(String element, WireOutput output) {
+            output.writeString(element);
+        }
+
+        @Override
+        public String read(WireInput input) {
+            return input.readString();
+        }
+    };
+
+    private static final ElementSerializer<Long> LONGS = new ElementSerializer<Long>() {
+        @Override
+        public void write(Long element, WireOutput output) {
+            output.writeSignedVarLong(element);
+        }
+
+        @Override
+        public Long read(WireInput input) {
+            return input.readSignedVarLong();
+        }
+    };
+
+    private static final ElementSerializer<Object> STANDARD = new ElementSerializer<Object>() {
+        @Override
+        public void write(Object element, WireOutput output) {
+            writeTagged(element, output, Collections.<Class<?>>emptySet());
+        }
+
+        @Override
+        public Object read(WireInput input) {
+            return readTagged(input, Collections.<Class<?>>emptySet());
+        }
+    };
+
+
+    // constructor
+    private ElementSerializers() {
+    }
+
+
+    // core functionality
+    public static ElementSerializer<String> strings() {
+        return STRINGS;
+    }
+
+    public static ElementSerializer<Long> longs() {
+        return LONGS;
+    }
+
+    /**
+     * Returns a serializer for {@code null} and the boxed primitives, strings and byte-arrays, which prefixes each
+     * element with a type tag. Elements of any other type are rejected with an {@link IllegalArgumentException}, both
+     * when writing and when reading, so that untrusted input is never passed to Java deserialization.
+     */
+    public static ElementSerializer<Object> standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Returns a serializer, which supports the same types as {@link #standard()} and falls back to Java serialization
+     * for the given classes. Deserialization is restricted to an allow-list: every class in the serialized object
+     * graph, including super classes like {@link Number} and the element types of arrays, needs to be listed.
+     * Arrays of primitives and of {@code Object} are always accepted and proxy classes are always rejected. On JDK 9 and later the allow-list is
+     * additionally installed as an {@code ObjectInputFilter}.
+     *
+     * @param allowedClasses the classes that may be read and written with Java serialization
+     */
+    public static ElementSerializer<Object> serializable(Class<?>... allowedClasses) {
+        Objects.requireNonNull(allowedClasses, "AllowedClasses must not be null");
+        final Set<Class<?>> allowed = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(allowedClasses)));
+        if (allowed.contains(null)) {
+            throw new NullPointerException("AllowedClasses must not contain null");
+        }
+        return new ElementSerializer<Object>() {
+            @Override
+            public void write(Object element, WireOutput output) {
+                writeTagged(element, output, allowed);
+            }
+
+            @Override
+            public Object read(WireInput input) {
+                return readTagged(input, allowed);
+            }
+        };
+    }
+
+
+    // implementation
+    private static void writeTagged(Object element, WireOutput output, Set<Class<?>> allowed) {
+        if (element == null) {
+            output.writeByte(TAG_NULL);
+        } else if (element instanceof String) {
+            output.writeByte(TAG_STRING);
+            output.writeString((String) element);
+        } else if (element instanceof Integer) {
+            output.writeByte(TAG_INTEGER);
+            output.writeSignedVarLong((Integer) element);
+        } else if (element instanceof Long) {
+            output.writeByte(TAG_LONG);
+            output.writeSignedVarLong((Long) element);
+        } else if (element instanceof Boolean) {
+            output.writeByte(TAG_BOOLEAN);
+            output.writeBoolean((Boolean) element);
+        } else if (element instanceof Double) {
+            output.writeByte(TAG_DOUBLE);
+            output.writeLong(Double.doubleToLongBits((Double) element));
+        } else if (element instanceof Character) {
+            output.writeByte(TAG_CHARACTER);
+            output.writeVarInt((Character) element);
+        } else if (element instanceof byte[]) {
+            output.writeByte(TAG_BYTES);
+            output.writeBytes((byte[]) element);
+        } else if (element instanceof Serializable && isAllowed(element.getClass(), allowed)) {
+            output.writeByte(TAG_SERIALIZABLE);
+            output.writeBytes(serialize(element));
+        } else {
+            throw new IllegalArgumentException("Cannot serialize element of " + element.getClass());
+        }
+    }
+
+    private static Object readTagged(WireInput input, Set<Class<?>> allowed) {
+        final int tag = input.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return input.readString();
+            case TAG_INTEGER:
+                return (int) input.readSignedVarLong();
+            case TAG_LONG:
+                return input.readSignedVarLong();
+            case TAG_BOOLEAN:
+                return input.readBoolean();
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(input.readLong());
+            case TAG_CHARACTER:
+                return (char) input.readVarInt();
+            case TAG_BYTES:
+                return input.readBytes();
+            case TAG_SERIALIZABLE:
+                if (allowed.isEmpty()) {
+                    throw new IllegalArgumentException("Java serialization is not enabled for this serializer");
+                }
+                return deserialize(input.readBytes(), allowed);
+            default:
+                throw new IllegalArgumentException("Unknown element tag " + tag);
+        }
+    }
+
+    private static byte[] serialize(Object element) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(element);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Cannot serialize element " + element, ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes, Set<Class<?>> allowed) {
+        try (ObjectInputStream in = new AllowListInputStream(new ByteArrayInputStream(bytes), allowed)) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalArgumentException("Cannot deserialize element", ex);
+        }
+    }
+
+    private static boolean isAllowed(Class<?> clazz, Set<Class<?>> allowed) {
+        Class<?> type = clazz;
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || type == Object.class || allowed.contains(type);
+    }
+
+    private static Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+
+    private static final class AllowListInputStream extends ObjectInputStream {
+
+        // fields
+        private final Set<Class<?>> allowed;
+
+
+        // constructor
+        private AllowListInputStream(ByteArrayInputStream bytes, Set<Class<?>> allowed) throws IOException {
+            super(bytes);
+            this.allowed = allowed;
+            if (FILTER_CLASS != null) {
+                installFilter();
+            }
+        }
+
+
+        // core functionality
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final Class<?> clazz = super.resolveClass(desc);
+            if (!isAllowed(clazz, allowed)) {
+                throw new InvalidClassException(desc.getName(), "Class is not in the allow-list");
+            }
+            return clazz;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes are not allowed");
+        }
+
+
+        // implementation
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void installFilter() throws IOException {
+            try {
+                final Class<? extends Enum> statusClass =
+                        (Class<? extends Enum>) Class.forName("java.io.ObjectInputFilter$Status");
+                final Method serialClass = Class.forName("java.io.ObjectInputFilter$FilterInfo").getMethod("serialClass");
+                final Object undecided = Enum.valueOf(statusClass, "UNDECIDED");
+                final Object rejected = Enum.valueOf(statusClass, "REJECTED");
+                final InvocationHandler handler = (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "checkInput":
+                            final Class<?> clazz = (Class<?>) serialClass.invoke(args[0]);
+                            return clazz == null || isAllowed(clazz, allowed) ? undecided : rejected;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return "AllowListFilter" + allowed;
+                    }
+                };
+                final Object filter = Proxy.newProxyInstance(
+                        FILTER_CLASS.getClassLoader(), new Class<?>[] {FILTER_CLASS}, handler);
+                ObjectInputStream.class.getMethod("setObjectInputFilter", FILTER_CLASS).invoke(this, filter);
+            } catch (ReflectiveOperationException ex) {
+                throw new IOException("Cannot install ObjectInputFilter", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.netopyr.wurmloch.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads the binary encoding written by a {@link WireOutput}.
+ * <p>
+ * The input keeps the table of interned strings across frames. A new frame is passed with {@link #setInput(ByteBuffer)}.
+ *
+ * @see WireOutput
+ */
+public final class WireInput {
+
+    // fields
+    private final List<String> internedStrings = new ArrayList<>();
+    private ByteBuffer input;
+
+
+    // constructor
+    public WireInput() {
+        this(ByteBuffer.allocate(0));
+    }
+
+    public WireInput(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public WireInput(ByteBuffer input) {
+        setInput(input);
+    }
+
+
+    // core functionality
+    public void setInput(ByteBuffer input) {
+        this.input = Objects.requireNonNull(input, "Input must not be null");
+    }
+
+    public boolean hasRemaining() {
+        return input.hasRemaining();
+    }
+
+    public int readByte() {
+        return input.get();
+    }
+
+    public boolean readBoolean() {
+        return input.get() != 0;
+    }
+
+    public int readVarInt() {
+        final long value = readVarLong();
+        if (value < 0L || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Varint " + Long.toUnsignedString(value) + " exceeds the range of an int");
+        }
+        return (int) value;
+    }
+
+    public long readVarLong() {
+        long result = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = input.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public long readSignedVarLong() {
+        final long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    public long readLong() {
+        return input.getLong();
+    }
+
+    public byte[] readBytes() {
+        final int length = readVarInt();
+        if (length > input.remaining()) {
+            throw new IllegalArgumentException("Length " + length + " exceeds the input");
+        }
+        final byte[] result = new byte[length];
+        input.get(result);
+        return result;
+    }
+
+    public String readString() {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    public String readInternedString() {
+        final int index = readVarInt();
+        if (index > 0) {
+            if (index > internedStrings.size()) {
+                throw new IllegalArgumentException("Unknown interned string " + index);
+            }
+            return internedStrings.get(index - 1);
+        }
+        final String value = readString();
+        if (internedStrings.size() < WireOutput.MAX_INTERNED_STRINGS) {
+            internedStrings.add(value);
+        }
+        return value;
+    }
+
+    /**
+     * Forgets the interned strings, e.g. when the matching {@link WireOutput} was reset.
+     */
+    public void reset() {
+        internedStrings.clear();
+    }
+}
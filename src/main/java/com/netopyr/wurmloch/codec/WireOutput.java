@@ -0,0 +1,148 @@
+package com.netopyr.wurmloch.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A growable buffer for the binary encoding of commands.
+ * <p>
+ * Integers are written as varints. Strings that are written with {@link #writeInternedString(String)} are sent only
+ * once. Later occurrences refer to the first one by an index. The table of interned strings lives as long as the
+ * output and is only valid for a {@link WireInput} that reads every frame of this output in order.
+ */
+public final class WireOutput {
+
+    // fields
+    static final int MAX_INTERNED_STRINGS = 4096;
+
+    private final Map<String, Integer> internedStrings = new HashMap<>();
+    private byte[] buffer;
+    private int size;
+
+
+    // constructor
+    public WireOutput() {
+        this(256);
+    }
+
+    public WireOutput(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("InitialCapacity must be positive");
+        }
+        this.buffer = new byte[initialCapacity];
+    }
+
+
+    // core functionality
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non-negative int in one to five bytes.
+     */
+    public void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes an unsigned long in one to ten bytes. Small values need fewer bytes.
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0L) {
+            buffer[size++] = (byte) ((value & 0x7FL) | 0x80L);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed long in zigzag encoding, so that small negative values need few bytes, too.
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    public void writeString(String value) {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a string that is expected to be repeated, e.g. a node or CRDT id.
+     */
+    public void writeInternedString(String value) {
+        final Integer index = internedStrings.get(value);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+        writeVarInt(0);
+        writeString(value);
+        if (internedStrings.size() < MAX_INTERNED_STRINGS) {
+            internedStrings.put(value, internedStrings.size());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Copies the written bytes into the target buffer.
+     *
+     * @throws java.nio.BufferOverflowException if the target buffer has not enough space
+     */
+    public void writeTo(ByteBuffer target) {
+        target.put(buffer, 0, size);
+    }
+
+    /**
+     * Discards the written bytes, but keeps the interned strings for the next frame.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Discards the written bytes and the interned strings.
+     */
+    public void reset() {
+        size = 0;
+        internedStrings.clear();
+    }
+
+
+    // implementation
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
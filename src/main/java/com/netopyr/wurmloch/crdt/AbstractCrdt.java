@@ -38,10 +38,10 @@ public abstract class AbstractCrdt<TYPE extends AbstractCrdt<TYPE, COMMAND>, COM
 
     @Override
     public void subscribeTo(Publisher<? extends COMMAND> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(command -> {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
             final Option<? extends COMMAND> newCommand = processCommand(command);
             newCommand.peek(commands::onNext);
-        });
+        }));
     }
 
     protected abstract Option<? extends COMMAND> processCommand(COMMAND command);
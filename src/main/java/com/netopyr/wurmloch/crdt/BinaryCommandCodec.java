@@ -0,0 +1,516 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.codec.CommandCodec;
+import com.netopyr.wurmloch.codec.ElementSerializer;
+import com.netopyr.wurmloch.codec.ElementSerializers;
+import com.netopyr.wurmloch.codec.WireInput;
+import com.netopyr.wurmloch.codec.WireOutput;
+import com.netopyr.wurmloch.vectorclock.NodeRegistry;
+import com.netopyr.wurmloch.vectorclock.StrictVectorClock;
+import com.netopyr.wurmloch.vectorclock.VectorClock;
+import javaslang.Tuple;
+import javaslang.Tuple2;
+
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A compact binary {@link CommandCodec} for the commands of all built-in CRDTs.
+ * <p>
+ * Counters are written as varints and node and CRDT ids are interned by the {@link WireOutput}. The elements of sets,
+ * lists and registers are written with an {@link ElementSerializer}, which defaults to
+ * {@link ElementSerializers#standard()}.
+ */
+@SuppressWarnings({"unchecked", "WeakerAccess"})
+public class BinaryCommandCodec implements CommandCodec {
+
+    // fields
+    private static final int GCOUNTER_UPDATE = 1;
+    private static final int PNCOUNTER_UPDATE = 2;
+    private static final int LWWREGISTER_SET = 3;
+    private static final int MVREGISTER_SET = 4;
+    private static final int GSET_ADD = 5;
+    private static final int TWOPSET_ADD = 6;
+    private static final int TWOPSET_REMOVE = 7;
+    private static final int TWOPSET_STATE = 8;
+    private static final int USET_ADD = 9;
+    private static final int USET_REMOVE = 10;
+    private static final int ORSET_ADD = 11;
+    private static final int ORSET_REMOVE = 12;
+    private static final int ORSET_STATE = 13;
+    private static final int ORSWOT_ADD = 14;
+    private static final int ORSWOT_REMOVE = 15;
+    private static final int ORSWOT_STATE = 16;
+    private static final int RGA_REMOVE = 17;
+    private static final int RGA_ADD_RIGHT = 18;
+    private static final int RGA_ACK = 19;
+    private static final int RGA_ADD_RIGHT_RANGE = 20;
+    private static final int RGA_REMOVE_RANGE = 21;
+    private static final int RGA_STATE = 22;
+    private static final int TEXTRGA_INSERT = 23;
+    private static final int TEXTRGA_DELETE = 24;
+    private static final int TEXTRGA_STATE = 25;
+
+    private static final Map<Class<?>, Integer> TAGS = new IdentityHashMap<>();
+
+    static {
+        TAGS.put(GCounter.UpdateCommand.class, GCOUNTER_UPDATE);
+        TAGS.put(PNCounter.UpdateCommand.class, PNCOUNTER_UPDATE);
+        TAGS.put(LWWRegister.SetCommand.class, LWWREGISTER_SET);
+        TAGS.put(MVRegister.SetCommand.class, MVREGISTER_SET);
+        TAGS.put(GSet.AddCommand.class, GSET_ADD);
+        TAGS.put(TwoPSet.AddCommand.class, TWOPSET_ADD);
+        TAGS.put(TwoPSet.RemoveCommand.class, TWOPSET_REMOVE);
+        TAGS.put(TwoPSet.StateCommand.class, TWOPSET_STATE);
+        TAGS.put(USet.AddCommand.class, USET_ADD);
+        TAGS.put(USet.RemoveCommand.class, USET_REMOVE);
+        TAGS.put(ORSet.AddCommand.class, ORSET_ADD);
+        TAGS.put(ORSet.RemoveCommand.class, ORSET_REMOVE);
+        TAGS.put(ORSet.StateCommand.class, ORSET_STATE);
+        TAGS.put(ORSWOT.AddCommand.class, ORSWOT_ADD);
+        TAGS.put(ORSWOT.RemoveCommand.class, ORSWOT_REMOVE);
+        TAGS.put(ORSWOT.StateCommand.class, ORSWOT_STATE);
+        TAGS.put(RGA.RemoveCommand.class, RGA_REMOVE);
+        TAGS.put(RGA.AddRightCommand.class, RGA_ADD_RIGHT);
+        TAGS.put(RGA.AckCommand.class, RGA_ACK);
+        TAGS.put(RGA.AddRightRangeCommand.class, RGA_ADD_RIGHT_RANGE);
+        TAGS.put(RGA.RemoveRangeCommand.class, RGA_REMOVE_RANGE);
+        TAGS.put(RGA.StateCommand.class, RGA_STATE);
+        TAGS.put(TextRGA.InsertCommand.class, TEXTRGA_INSERT);
+        TAGS.put(TextRGA.DeleteCommand.class, TEXTRGA_DELETE);
+        TAGS.put(TextRGA.StateCommand.class, TEXTRGA_STATE);
+    }
+
+    private final ElementSerializer<Object> elements;
+
+
+    // constructor
+    public BinaryCommandCodec() {
+        this(ElementSerializers.standard());
+    }
+
+    public BinaryCommandCodec(ElementSerializer<Object> elements) {
+        this.elements = Objects.requireNonNull(elements, "Elements must not be null");
+    }
+
+
+    // core functionality
+    @Override
+    public void encode(CrdtCommand command, WireOutput output) {
+        final Integer tag = TAGS.get(command.getClass());
+        if (tag == null) {
+            throw new IllegalArgumentException("Unsupported command " + command.getClass());
+        }
+        output.writeByte(tag);
+        output.writeInternedString(command.getCrdtId());
+        switch (tag) {
+            case GCOUNTER_UPDATE:
+                writeEntries(((GCounter.UpdateCommand) command).getEntries(), output);
+                break;
+            case PNCOUNTER_UPDATE:
+                writeEntries(((PNCounter.UpdateCommand) command).getPEntries(), output);
+                writeEntries(((PNCounter.UpdateCommand) command).getNEntries(), output);
+                break;
+            case LWWREGISTER_SET:
+                elements.write(((LWWRegister.SetCommand<?>) command).getValue(), output);
+                writeClock(((LWWRegister.SetCommand<?>) command).getClock(), output);
+                break;
+            case MVREGISTER_SET:
+                final MVRegister.Entry<?> entry = ((MVRegister.SetCommand<?>) command).getEntry();
+                elements.write(entry.getValue(), output);
+                writeVectorClock(entry.getClock(), output);
+                break;
+            case GSET_ADD:
+                elements.write(((GSet.AddCommand<?>) command).getElement(), output);
+                break;
+            case TWOPSET_ADD:
+                elements.write(((TwoPSet.AddCommand<?>) command).getElement(), output);
+                break;
+            case TWOPSET_REMOVE:
+                elements.write(((TwoPSet.RemoveCommand<?>) command).getElement(), output);
+                break;
+            case TWOPSET_STATE:
+                writeElements(((TwoPSet.StateCommand<?>) command).getElements(), output);
+                writeElements(((TwoPSet.StateCommand<?>) command).getTombstone(), output);
+                break;
+            case USET_ADD:
+                elements.write(((USet.AddCommand<?>) command).getElement(), output);
+                break;
+            case USET_REMOVE:
+                elements.write(((USet.RemoveCommand<?>) command).getElement(), output);
+                break;
+            case ORSET_ADD:
+                writeORSetElement(((ORSet.AddCommand<?>) command).getElement(), output);
+                break;
+            case ORSET_REMOVE:
+                writeORSetElements(((ORSet.RemoveCommand<Object>) command).getElements(), output);
+                break;
+            case ORSET_STATE:
+                writeORSetElements(((ORSet.StateCommand<Object>) command).getElements(), output);
+                writeDots(((ORSet.StateCommand<?>) command).getTombstone(), output);
+                break;
+            case ORSWOT_ADD:
+                elements.write(((ORSWOT.AddCommand<?>) command).getValue(), output);
+                writeDot(((ORSWOT.AddCommand<?>) command).getDot(), output);
+                writeDots(((ORSWOT.AddCommand<?>) command).getObsoleteDots(), output);
+                break;
+            case ORSWOT_REMOVE:
+                elements.write(((ORSWOT.RemoveCommand<?>) command).getValue(), output);
+                writeDots(((ORSWOT.RemoveCommand<?>) command).getDots(), output);
+                break;
+            case ORSWOT_STATE:
+                final Map<Object, Set<Dot>> orswotElements = ((ORSWOT.StateCommand<Object>) command).getElements();
+                output.writeVarInt(orswotElements.size());
+                for (final Map.Entry<Object, Set<Dot>> element : orswotElements.entrySet()) {
+                    elements.write(element.getKey(), output);
+                    writeDots(element.getValue(), output);
+                }
+                writeDotContext(((ORSWOT.StateCommand<?>) command).getContext(), output);
+                break;
+            case RGA_REMOVE:
+                writeClock(((RGA.RemoveCommand<?>) command).getClock(), output);
+                writeClock(((RGA.RemoveCommand<?>) command).getRemoverClock(), output);
+                break;
+            case RGA_ADD_RIGHT:
+                writeClock(((RGA.AddRightCommand<?>) command).getAnchorClock(), output);
+                elements.write(((RGA.AddRightCommand<?>) command).getNewVertexValue(), output);
+                writeClock(((RGA.AddRightCommand<?>) command).getNewVertexClock(), output);
+                break;
+            case RGA_ACK:
+                output.writeInternedString(((RGA.AckCommand<?>) command).getNodeId());
+                writeClock(((RGA.AckCommand<?>) command).getClock(), output);
+                break;
+            case RGA_ADD_RIGHT_RANGE:
+                writeClock(((RGA.AddRightRangeCommand<?>) command).getAnchorClock(), output);
+                writeElements(((RGA.AddRightRangeCommand<?>) command).getNewVertexValues(), output);
+                writeClock(((RGA.AddRightRangeCommand<?>) command).getFirstVertexClock(), output);
+                break;
+            case RGA_REMOVE_RANGE:
+                final List<StrictVectorClock> clocks = ((RGA.RemoveRangeCommand<?>) command).getClocks();
+                output.writeVarInt(clocks.size());
+                for (final StrictVectorClock clock : clocks) {
+                    writeClock(clock, output);
+                }
+                writeClock(((RGA.RemoveRangeCommand<?>) command).getRemoverClock(), output);
+                break;
+            case RGA_STATE:
+                final List<RGA.VertexState<Object>> vertices = ((RGA.StateCommand<Object>) command).getVertices();
+                output.writeVarInt(vertices.size());
+                for (final RGA.VertexState<Object> vertex : vertices) {
+                    writeClock(vertex.getAnchorClock(), output);
+                    elements.write(vertex.getValue(), output);
+                    writeClock(vertex.getClock(), output);
+                    writeOptionalClock(vertex.getRemoverClock(), output);
+                }
+                writeClock(((RGA.StateCommand<?>) command).getClock(), output);
+                break;
+            case TEXTRGA_INSERT:
+                writeClock(((TextRGA.InsertCommand) command).getAnchorClock(), output);
+                output.writeString(((TextRGA.InsertCommand) command).getText());
+                writeClock(((TextRGA.InsertCommand) command).getFirstClock(), output);
+                break;
+            case TEXTRGA_DELETE:
+                final List<Tuple2<StrictVectorClock, Integer>> ranges = ((TextRGA.DeleteCommand) command).getRanges();
+                output.writeVarInt(ranges.size());
+                for (final Tuple2<StrictVectorClock, Integer> range : ranges) {
+                    writeClock(range._1, output);
+                    output.writeVarInt(range._2);
+                }
+                break;
+            case TEXTRGA_STATE:
+                final List<TextRGA.BlockState> blocks = ((TextRGA.StateCommand) command).getBlocks();
+                output.writeVarInt(blocks.size());
+                for (final TextRGA.BlockState block : blocks) {
+                    writeClock(block.getAnchorClock(), output);
+                    writeClock(block.getFirstClock(), output);
+                    output.writeString(block.getText());
+                    output.writeBoolean(block.isRemoved());
+                }
+                writeClock(((TextRGA.StateCommand) command).getClock(), output);
+                break;
+            default:
+                throw new IllegalStateException("Missing encoder for tag " + tag);
+        }
+    }
+
+    @Override
+    public CrdtCommand decode(WireInput input) {
+        try {
+            return doDecode(input);
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Command is truncated", ex);
+        }
+    }
+
+
+    // implementation
+    // the counts are not used to pre-size collections, because they are read from untrusted input
+    private CrdtCommand doDecode(WireInput input) {
+        final int tag = input.readByte();
+        final String crdtId = input.readInternedString();
+        switch (tag) {
+            case GCOUNTER_UPDATE:
+                return new GCounter.UpdateCommand(crdtId, readEntries(input));
+            case PNCOUNTER_UPDATE:
+                final javaslang.collection.Map<String, Long> pEntries = readEntries(input);
+                return new PNCounter.UpdateCommand(crdtId, pEntries, readEntries(input));
+            case LWWREGISTER_SET:
+                final Object lwwValue = elements.read(input);
+                return new LWWRegister.SetCommand<>(crdtId, lwwValue, readClock(input));
+            case MVREGISTER_SET:
+                final Object mvValue = elements.read(input);
+                return new MVRegister.SetCommand<>(crdtId, new MVRegister.Entry<>(mvValue, readVectorClock(input)));
+            case GSET_ADD:
+                return new GSet.AddCommand<>(crdtId, elements.read(input));
+            case TWOPSET_ADD:
+                return new TwoPSet.AddCommand<>(crdtId, elements.read(input));
+            case TWOPSET_REMOVE:
+                return new TwoPSet.RemoveCommand<>(crdtId, elements.read(input));
+            case TWOPSET_STATE:
+                final Set<Object> twoPSetElements = readElements(input, new HashSet<>());
+                return new TwoPSet.StateCommand<>(crdtId, twoPSetElements, readElements(input, new HashSet<>()));
+            case USET_ADD:
+                return new USet.AddCommand<>(crdtId, elements.read(input));
+            case USET_REMOVE:
+                return new USet.RemoveCommand<>(crdtId, elements.read(input));
+            case ORSET_ADD:
+                return new ORSet.AddCommand<>(crdtId, readORSetElement(input));
+            case ORSET_REMOVE:
+                return new ORSet.RemoveCommand<>(crdtId, readORSetElements(input));
+            case ORSET_STATE:
+                final Set<ORSet.Element<Object>> orSetElements = readORSetElements(input);
+                return new ORSet.StateCommand<>(crdtId, orSetElements, readDots(input));
+            case ORSWOT_ADD:
+                final Object addedValue = elements.read(input);
+                final Dot dot = readDot(input);
+                return new ORSWOT.AddCommand<>(crdtId, addedValue, dot, readDots(input));
+            case ORSWOT_REMOVE:
+                final Object removedValue = elements.read(input);
+                return new ORSWOT.RemoveCommand<>(crdtId, removedValue, readDots(input));
+            case ORSWOT_STATE:
+                final int orswotSize = input.readVarInt();
+                final Map<Object, Set<Dot>> orswotElements = new LinkedHashMap<>();
+                for (int i = 0; i < orswotSize; i++) {
+                    final Object value = elements.read(input);
+                    orswotElements.put(value, readDots(input));
+                }
+                return new ORSWOT.StateCommand<>(crdtId, orswotElements, readDotContext(input));
+            case RGA_REMOVE:
+                final StrictVectorClock removedClock = readClock(input);
+                return new RGA.RemoveCommand<>(crdtId, removedClock, readClock(input));
+            case RGA_ADD_RIGHT:
+                final StrictVectorClock anchorClock = readClock(input);
+                final Object vertexValue = elements.read(input);
+                return new RGA.AddRightCommand<>(crdtId, anchorClock, vertexValue, readClock(input));
+            case RGA_ACK:
+                final String nodeId = input.readInternedString();
+                return new RGA.AckCommand<>(crdtId, nodeId, readClock(input));
+            case RGA_ADD_RIGHT_RANGE:
+                final StrictVectorClock rangeAnchorClock = readClock(input);
+                final List<Object> vertexValues = readElements(input, new ArrayList<>());
+                return new RGA.AddRightRangeCommand<>(crdtId, rangeAnchorClock, vertexValues, readClock(input));
+            case RGA_REMOVE_RANGE:
+                final int clockCount = input.readVarInt();
+                final List<StrictVectorClock> clocks = new ArrayList<>();
+                for (int i = 0; i < clockCount; i++) {
+                    clocks.add(readClock(input));
+                }
+                return new RGA.RemoveRangeCommand<>(crdtId, clocks, readClock(input));
+            case RGA_STATE:
+                final int vertexCount = input.readVarInt();
+                final List<RGA.VertexState<Object>> vertices = new ArrayList<>();
+                for (int i = 0; i < vertexCount; i++) {
+                    final StrictVectorClock vertexAnchorClock = readClock(input);
+                    final Object value = elements.read(input);
+                    final StrictVectorClock clock = readClock(input);
+                    vertices.add(new RGA.VertexState<>(vertexAnchorClock, value, clock, readOptionalClock(input)));
+                }
+                return new RGA.StateCommand<>(crdtId, vertices, readClock(input));
+            case TEXTRGA_INSERT:
+                final StrictVectorClock textAnchorClock = readClock(input);
+                final String text = input.readString();
+                return new TextRGA.InsertCommand(crdtId, textAnchorClock, text, readClock(input));
+            case TEXTRGA_DELETE:
+                final int rangeCount = input.readVarInt();
+                final List<Tuple2<StrictVectorClock, Integer>> ranges = new ArrayList<>();
+                for (int i = 0; i < rangeCount; i++) {
+                    final StrictVectorClock clock = readClock(input);
+                    ranges.add(Tuple.of(clock, input.readVarInt()));
+                }
+                return new TextRGA.DeleteCommand(crdtId, ranges);
+            case TEXTRGA_STATE:
+                final int blockCount = input.readVarInt();
+                final List<TextRGA.BlockState> blocks = new ArrayList<>();
+                for (int i = 0; i < blockCount; i++) {
+                    final StrictVectorClock blockAnchorClock = readClock(input);
+                    final StrictVectorClock firstClock = readClock(input);
+                    final String blockText = input.readString();
+                    blocks.add(new TextRGA.BlockState(blockAnchorClock, firstClock, blockText, input.readBoolean()));
+                }
+                return new TextRGA.StateCommand(crdtId, blocks, readClock(input));
+            default:
+                throw new IllegalArgumentException("Unknown command tag " + tag);
+        }
+    }
+
+    private static void writeEntries(javaslang.collection.Map<String, Long> entries, WireOutput output) {
+        output.writeVarInt(entries.size());
+        for (final Tuple2<String, Long> entry : entries) {
+            output.writeInternedString(entry._1);
+            output.writeVarLong(entry._2);
+        }
+    }
+
+    private static javaslang.collection.Map<String, Long> readEntries(WireInput input) {
+        final int size = input.readVarInt();
+        javaslang.collection.Map<String, Long> result = javaslang.collection.HashMap.empty();
+        for (int i = 0; i < size; i++) {
+            final String nodeId = input.readInternedString();
+            result = result.put(nodeId, input.readVarLong());
+        }
+        return result;
+    }
+
+    private static void writeClock(StrictVectorClock clock, WireOutput output) {
+        output.writeInternedString(clock.getKey());
+        output.writeVarInt(clock.getEntryCount());
+        clock.forEachEntry((nodeId, counter) -> {
+            output.writeInternedString(nodeId);
+            output.writeVarLong(counter);
+        });
+    }
+
+    private static StrictVectorClock readClock(WireInput input) {
+        final String key = input.readInternedString();
+        return new StrictVectorClock(key, readEntries(input));
+    }
+
+    private static void writeOptionalClock(StrictVectorClock clock, WireOutput output) {
+        output.writeBoolean(clock != null);
+        if (clock != null) {
+            writeClock(clock, output);
+        }
+    }
+
+    private static StrictVectorClock readOptionalClock(WireInput input) {
+        return input.readBoolean() ? readClock(input) : null;
+    }
+
+    private static void writeVectorClock(VectorClock clock, WireOutput output) {
+        output.writeVarInt(clock.getEntryCount());
+        clock.forEachEntry((nodeId, counter) -> {
+            output.writeInternedString(nodeId);
+            output.writeVarLong(counter);
+        });
+    }
+
+    private static VectorClock readVectorClock(WireInput input) {
+        return new VectorClock(readEntries(input));
+    }
+
+    private static void writeDot(Dot dot, WireOutput output) {
+        output.writeInternedString(dot.getNodeId());
+        output.writeVarLong(dot.getCounter());
+    }
+
+    private static Dot readDot(WireInput input) {
+        final String nodeId = input.readInternedString();
+        return new Dot(nodeId, input.readVarLong());
+    }
+
+    private static void writeDots(Set<Dot> dots, WireOutput output) {
+        output.writeVarInt(dots.size());
+        for (final Dot dot : dots) {
+            writeDot(dot, output);
+        }
+    }
+
+    private static Set<Dot> readDots(WireInput input) {
+        final int size = input.readVarInt();
+        final Set<Dot> result = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            result.add(readDot(input));
+        }
+        return result;
+    }
+
+    private static void writeDotContext(DotContext context, WireOutput output) {
+        int count = 0;
+        for (int nodeIndex = 0; nodeIndex < context.getCompactLength(); nodeIndex++) {
+            if (context.getCompact(nodeIndex) > 0L) {
+                count++;
+            }
+        }
+        output.writeVarInt(count);
+        for (int nodeIndex = 0; nodeIndex < context.getCompactLength(); nodeIndex++) {
+            final long counter = context.getCompact(nodeIndex);
+            if (counter > 0L) {
+                output.writeInternedString(NodeRegistry.nodeIdOf(nodeIndex));
+                output.writeVarLong(counter);
+            }
+        }
+        writeDots(context.getCloud(), output);
+    }
+
+    private static DotContext readDotContext(WireInput input) {
+        final DotContext result = new DotContext();
+        final int count = input.readVarInt();
+        for (int i = 0; i < count; i++) {
+            final String nodeId = input.readInternedString();
+            result.addAll(NodeRegistry.indexOf(nodeId), input.readVarLong());
+        }
+        for (final Dot dot : readDots(input)) {
+            result.add(dot);
+        }
+        return result;
+    }
+
+    private void writeElements(Collection<?> values, WireOutput output) {
+        output.writeVarInt(values.size());
+        for (final Object value : values) {
+            elements.write(value, output);
+        }
+    }
+
+    private <C extends Collection<Object>> C readElements(WireInput input, C result) {
+        final int size = input.readVarInt();
+        for (int i = 0; i < size; i++) {
+            result.add(elements.read(input));
+        }
+        return result;
+    }
+
+    private void writeORSetElement(ORSet.Element<?> element, WireOutput output) {
+        elements.write(element.getValue(), output);
+        writeDot(element.getDot(), output);
+    }
+
+    private ORSet.Element<Object> readORSetElement(WireInput input) {
+        final Object value = elements.read(input);
+        return new ORSet.Element<>(value, readDot(input));
+    }
+
+    private void writeORSetElements(Set<ORSet.Element<Object>> orSetElements, WireOutput output) {
+        output.writeVarInt(orSetElements.size());
+        for (final ORSet.Element<Object> element : orSetElements) {
+            writeORSetElement(element, output);
+        }
+    }
+
+    private Set<ORSet.Element<Object>> readORSetElements(WireInput input) {
+        final int size = input.readVarInt();
+        final Set<ORSet.Element<Object>> result = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            result.add(readORSetElement(input));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.subscribers.DefaultSubscriber;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Receives the commands of a replica with a bounded demand. It requests {@link #PREFETCH} commands up front and
+ * requests more after three quarters of them have been processed, so that a buffering publisher only holds a bounded
+ * number of commands for this subscriber.
+ */
+public final class BoundedSubscriber<T> extends DefaultSubscriber<T> {
+
+    static final int PREFETCH = 128;
+    private static final int LIMIT = PREFETCH - (PREFETCH >> 2);
+
+    // fields
+    private final Consumer<? super T> consumer;
+    private int consumed;
+
+
+    // constructor
+    public BoundedSubscriber(Consumer<? super T> consumer) {
+        this.consumer = Objects.requireNonNull(consumer, "Consumer must not be null");
+    }
+
+
+    // core functionality
+    @Override
+    protected void onStart() {
+        request(PREFETCH);
+    }
+
+    @Override
+    public void onNext(T command) {
+        try {
+            consumer.accept(command);
+        } catch (Throwable throwable) {
+            Exceptions.throwIfFatal(throwable);
+            cancel();
+            onError(throwable);
+            return;
+        }
+        if (++consumed == LIMIT) {
+            consumed = 0;
+            request(LIMIT);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        RxJavaPlugins.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+    }
+}
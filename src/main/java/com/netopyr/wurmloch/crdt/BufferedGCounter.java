@@ -0,0 +1,100 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link GCounter} for high-frequency local increments.
+ * <p>
+ * Local increments are accumulated in a {@link LongAdder} without any locking. The accumulated value is folded into
+ * the replicated state and published, when it reaches the flush threshold or when the flush interval elapses,
+ * whichever comes first. {@link #get()} includes the pending increments.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BufferedGCounter extends GCounter implements Disposable {
+
+    // fields
+    private final LongAdder pending = new LongAdder();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final long flushThreshold;
+    private final Disposable flushTask;
+
+
+    // constructor
+    public BufferedGCounter(String nodeId, String crdtId, long flushThreshold, long flushInterval, TimeUnit unit) {
+        this(nodeId, crdtId, false, flushThreshold, flushInterval, unit, Schedulers.computation());
+    }
+
+    public BufferedGCounter(String nodeId, String crdtId, boolean deltaState, long flushThreshold, long flushInterval, TimeUnit unit, Scheduler scheduler) {
+        super(nodeId, crdtId, deltaState);
+        if (flushThreshold < 1L) {
+            throw new IllegalArgumentException("FlushThreshold needs to be a positive number.");
+        }
+        if (flushInterval < 1L) {
+            throw new IllegalArgumentException("FlushInterval needs to be a positive number.");
+        }
+        Objects.requireNonNull(unit, "Unit must not be null");
+        Objects.requireNonNull(scheduler, "Scheduler must not be null");
+        this.flushThreshold = flushThreshold;
+        this.flushTask = Flowable.interval(flushInterval, flushInterval, unit, scheduler).subscribe(tick -> flush());
+    }
+
+
+    // core functionality
+    @Override
+    public long get() {
+        synchronized (flushLock) {
+            return super.get() + pending.sum();
+        }
+    }
+
+    @Override
+    public void increment(long value) {
+        if (value < 1L) {
+            throw new IllegalArgumentException("Value needs to be a positive number.");
+        }
+        pending.add(value);
+        if (pending.sum() >= flushThreshold && flushing.compareAndSet(false, true)) {
+            try {
+                flush();
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+
+    public void flush() {
+        final UpdateCommand command;
+        synchronized (flushLock) {
+            final long value = pending.sum();
+            if (value <= 0L) {
+                return;
+            }
+            // the base is incremented first, so that a concurrent get() never sees the counter shrink
+            command = doIncrement(value);
+            pending.add(-value);
+        }
+        commands.onNext(command);
+    }
+
+
+    // disposable
+    @Override
+    public void dispose() {
+        flushTask.dispose();
+        flush();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return flushTask.isDisposed();
+    }
+}
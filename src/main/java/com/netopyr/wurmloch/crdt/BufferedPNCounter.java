@@ -0,0 +1,126 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PNCounter} for high-frequency local updates.
+ * <p>
+ * Local increments and decrements are accumulated in {@link LongAdder}s without any locking. They are folded into
+ * the replicated state and published, when the sum of both reaches the flush threshold or when the flush interval
+ * elapses, whichever comes first. {@link #get()} includes the pending updates.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BufferedPNCounter extends PNCounter implements Disposable {
+
+    // fields
+    private final LongAdder pendingIncrements = new LongAdder();
+    private final LongAdder pendingDecrements = new LongAdder();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final long flushThreshold;
+    private final Disposable flushTask;
+
+
+    // constructor
+    public BufferedPNCounter(String nodeId, String crdtId, long flushThreshold, long flushInterval, TimeUnit unit) {
+        this(nodeId, crdtId, false, flushThreshold, flushInterval, unit, Schedulers.computation());
+    }
+
+    public BufferedPNCounter(String nodeId, String crdtId, boolean deltaState, long flushThreshold, long flushInterval, TimeUnit unit, Scheduler scheduler) {
+        super(nodeId, crdtId, deltaState);
+        if (flushThreshold < 1L) {
+            throw new IllegalArgumentException("FlushThreshold needs to be a positive number.");
+        }
+        if (flushInterval < 1L) {
+            throw new IllegalArgumentException("FlushInterval needs to be a positive number.");
+        }
+        Objects.requireNonNull(unit, "Unit must not be null");
+        Objects.requireNonNull(scheduler, "Scheduler must not be null");
+        this.flushThreshold = flushThreshold;
+        this.flushTask = Flowable.interval(flushInterval, flushInterval, unit, scheduler).subscribe(tick -> flush());
+    }
+
+
+    // core functionality
+    @Override
+    public long get() {
+        synchronized (flushLock) {
+            return super.get() + pendingIncrements.sum() - pendingDecrements.sum();
+        }
+    }
+
+    @Override
+    public void increment(long value) {
+        if (value < 1L) {
+            throw new IllegalArgumentException("Value needs to be a positive number.");
+        }
+        pendingIncrements.add(value);
+        flushIfThresholdReached();
+    }
+
+    @Override
+    public void decrement(long value) {
+        if (value < 1L) {
+            throw new IllegalArgumentException("Value needs to be a positive number.");
+        }
+        pendingDecrements.add(value);
+        flushIfThresholdReached();
+    }
+
+    public void flush() {
+        UpdateCommand incrementCommand = null;
+        UpdateCommand decrementCommand = null;
+        synchronized (flushLock) {
+            // the base is updated first, so that a concurrent get() sees the pending updates exactly once
+            final long increments = pendingIncrements.sum();
+            if (increments > 0L) {
+                incrementCommand = doIncrement(increments);
+                pendingIncrements.add(-increments);
+            }
+            final long decrements = pendingDecrements.sum();
+            if (decrements > 0L) {
+                decrementCommand = doDecrement(decrements);
+                pendingDecrements.add(-decrements);
+            }
+        }
+        if (incrementCommand != null) {
+            commands.onNext(incrementCommand);
+        }
+        if (decrementCommand != null) {
+            commands.onNext(decrementCommand);
+        }
+    }
+
+
+    // implementation
+    private void flushIfThresholdReached() {
+        if (pendingIncrements.sum() + pendingDecrements.sum() >= flushThreshold && flushing.compareAndSet(false, true)) {
+            try {
+                flush();
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+
+
+    // disposable
+    @Override
+    public void dispose() {
+        flushTask.dispose();
+        flush();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return flushTask.isDisposed();
+    }
+}
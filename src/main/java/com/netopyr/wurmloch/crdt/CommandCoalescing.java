@@ -0,0 +1,49 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.vectorclock.Causality;
+
+import java.util.Objects;
+
+/**
+ * Coalesces commands, which carry the state of a CRDT, so that only the latest state has to be replicated.
+ * <p>
+ * The updates of {@link GCounter} and {@link PNCounter} are joined. A set command of a {@link LWWRegister} replaces
+ * a pending set command, if its clock is not older. All other commands are not coalescible.
+ */
+public final class CommandCoalescing {
+
+    private CommandCoalescing() {
+    }
+
+    public static boolean isCoalescible(CrdtCommand command) {
+        Objects.requireNonNull(command, "Command must not be null");
+        return command instanceof GCounter.UpdateCommand
+                || command instanceof PNCounter.UpdateCommand
+                || command instanceof LWWRegister.SetCommand;
+    }
+
+    /**
+     * Coalesces a pending command with the next command of the same CRDT.
+     *
+     * @return the command which replaces both commands or {@code null} if they cannot be coalesced
+     */
+    public static CrdtCommand coalesce(CrdtCommand pending, CrdtCommand next) {
+        Objects.requireNonNull(pending, "Pending must not be null");
+        Objects.requireNonNull(next, "Next must not be null");
+        if (!pending.getCrdtId().equals(next.getCrdtId())) {
+            return null;
+        }
+        if (pending instanceof GCounter.UpdateCommand && next instanceof GCounter.UpdateCommand) {
+            return ((GCounter.UpdateCommand) pending).join((GCounter.UpdateCommand) next);
+        }
+        if (pending instanceof PNCounter.UpdateCommand && next instanceof PNCounter.UpdateCommand) {
+            return ((PNCounter.UpdateCommand) pending).join((PNCounter.UpdateCommand) next);
+        }
+        if (pending instanceof LWWRegister.SetCommand && next instanceof LWWRegister.SetCommand) {
+            final Causality causality = ((LWWRegister.SetCommand<?>) next).getClock().compare(((LWWRegister.SetCommand<?>) pending).getClock());
+            // a concurrent command has to be sent, because the receiver merges the clocks of all set commands
+            return causality == Causality.AFTER || causality == Causality.EQUAL ? next : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.vectorclock.NodeRegistry;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Identifies a single event of a node: the node and the value of its local counter after the event.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Dot {
+
+    private final int nodeIndex;
+    private final long counter;
+
+    public Dot(String nodeId, long counter) {
+        this(NodeRegistry.indexOf(nodeId), counter);
+    }
+
+    Dot(int nodeIndex, long counter) {
+        if (counter < 1L) {
+            throw new IllegalArgumentException("Counter needs to be a positive number.");
+        }
+        this.nodeIndex = nodeIndex;
+        this.counter = counter;
+    }
+
+    public String getNodeId() {
+        return NodeRegistry.nodeIdOf(nodeIndex);
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    int getNodeIndex() {
+        return nodeIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Dot dot = (Dot) o;
+
+        return nodeIndex == dot.nodeIndex && counter == dot.counter;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * nodeIndex + Long.hashCode(counter);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("nodeId", getNodeId())
+                .append("counter", counter)
+                .toString();
+    }
+}
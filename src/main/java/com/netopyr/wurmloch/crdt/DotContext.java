@@ -0,0 +1,137 @@
+package com.netopyr.wurmloch.crdt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The set of all dots a replica has seen.
+ * <p>
+ * For each node the contiguous range of dots starting at 1 is stored as a single counter. Only dots that were seen
+ * out of order are kept individually, until the gap before them is closed.
+ */
+final class DotContext {
+
+    private long[] compact = new long[0];
+    private final Set<Dot> cloud = new HashSet<>();
+
+
+    DotContext() {
+    }
+
+    private DotContext(DotContext other) {
+        this.compact = other.compact.clone();
+        this.cloud.addAll(other.cloud);
+    }
+
+
+    boolean contains(Dot dot) {
+        return dot.getCounter() <= get(dot.getNodeIndex()) || cloud.contains(dot);
+    }
+
+    boolean add(Dot dot) {
+        final int nodeIndex = dot.getNodeIndex();
+        final long current = get(nodeIndex);
+        if (dot.getCounter() <= current) {
+            return false;
+        }
+        if (dot.getCounter() > current + 1L) {
+            return cloud.add(dot);
+        }
+        long next = dot.getCounter();
+        while (cloud.remove(new Dot(nodeIndex, next + 1L))) {
+            next++;
+        }
+        set(nodeIndex, next);
+        return true;
+    }
+
+    Dot next(int nodeIndex) {
+        final Dot dot = new Dot(nodeIndex, get(nodeIndex) + 1L);
+        add(dot);
+        return dot;
+    }
+
+    boolean join(DotContext other) {
+        boolean changed = false;
+        for (int nodeIndex = 0; nodeIndex < other.compact.length; nodeIndex++) {
+            if (other.compact[nodeIndex] > get(nodeIndex)) {
+                set(nodeIndex, other.compact[nodeIndex]);
+                changed = true;
+            }
+        }
+        if (changed) {
+            for (final Dot dot : new ArrayList<>(cloud)) {
+                if (dot.getCounter() <= get(dot.getNodeIndex())) {
+                    cloud.remove(dot);
+                } else if (dot.getCounter() == get(dot.getNodeIndex()) + 1L) {
+                    cloud.remove(dot);
+                    add(dot);
+                }
+            }
+        }
+        for (final Dot dot : other.cloud) {
+            changed |= add(dot);
+        }
+        return changed;
+    }
+
+    /**
+     * Adds all dots of a node up to the given counter.
+     */
+    void addAll(int nodeIndex, long counter) {
+        final DotContext range = new DotContext();
+        range.set(nodeIndex, counter);
+        join(range);
+    }
+
+    DotContext copy() {
+        return new DotContext(this);
+    }
+
+    int getCloudSize() {
+        return cloud.size();
+    }
+
+    Set<Dot> getCloud() {
+        return Collections.unmodifiableSet(cloud);
+    }
+
+    int getCompactLength() {
+        return compact.length;
+    }
+
+    long getCompact(int nodeIndex) {
+        return get(nodeIndex);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final DotContext that = (DotContext) o;
+
+        return Arrays.equals(compact, that.compact) && cloud.equals(that.cloud);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(compact) + cloud.hashCode();
+    }
+
+
+    private long get(int nodeIndex) {
+        return nodeIndex < compact.length ? compact[nodeIndex] : 0L;
+    }
+
+    private void set(int nodeIndex, long counter) {
+        if (nodeIndex >= compact.length) {
+            compact = Arrays.copyOf(compact, nodeIndex + 1);
+        }
+        compact[nodeIndex] = counter;
+    }
+}
@@ -1,6 +1,6 @@
 package com.netopyr.wurmloch.crdt;
 
-import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.collection.HashMap;
 import javaslang.collection.Map;
 import javaslang.control.Option;
@@ -8,28 +8,58 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.reactivestreams.Subscriber;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 @SuppressWarnings("WeakerAccess")
 public class GCounter extends AbstractCrdt<GCounter, GCounter.UpdateCommand> {
 
     // fields
-    private Map<String, Long> entries = HashMap.empty();
+    private final boolean deltaState;
+    private volatile Map<String, Long> entries = HashMap.empty();
 
 
     // constructor
     public GCounter(String nodeId, String crdtId) {
-        super(nodeId, crdtId, BehaviorProcessor.create());
+        this(nodeId, crdtId, false);
+    }
+
+    public GCounter(String nodeId, String crdtId, boolean deltaState) {
+        super(nodeId, crdtId, PublishProcessor.<UpdateCommand>create().toSerialized());
+        this.deltaState = deltaState;
     }
 
 
     // crdt
     @Override
-    protected Option<UpdateCommand> processCommand(UpdateCommand command) {
-        final Map<String, Long> oldEntries = entries;
-        entries = entries.merge(command.entries, Math::max);
-        return entries.equals(oldEntries)? Option.none() : Option.of(new UpdateCommand(crdtId, entries));
+    public void subscribe(Subscriber<? super UpdateCommand> subscriber) {
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
+    }
+
+    @Override
+    protected synchronized Option<UpdateCommand> processCommand(UpdateCommand command) {
+        final Map<String, Long> delta = command.entries.filter(entry -> entry._2 > entries.get(entry._1).getOrElse(0L));
+        if (delta.isEmpty()) {
+            return Option.none();
+        }
+        entries = entries.merge(delta, Math::max);
+        return Option.of(new UpdateCommand(crdtId, deltaState? delta : entries));
+    }
+
+    public synchronized UpdateCommand getStateCommand() {
+        return new UpdateCommand(crdtId, entries);
+    }
+
+    private List<UpdateCommand> getStateCommands() {
+        final UpdateCommand state = getStateCommand();
+        return deltaState || !state.entries.isEmpty() ? Collections.singletonList(state) : Collections.emptyList();
+    }
+
+    public boolean isDeltaState() {
+        return deltaState;
     }
 
 
@@ -46,11 +76,16 @@ public class GCounter extends AbstractCrdt<GCounter, GCounter.UpdateCommand> {
         if (value < 1L) {
             throw new IllegalArgumentException("Value needs to be a positive number.");
         }
-        entries = entries.put(nodeId, entries.get(nodeId).getOrElse(0L) + value);
-        commands.onNext(new UpdateCommand(
-                crdtId,
-                entries
-        ));
+        // emitting while holding the lock could deadlock with a connected replica that emits to this counter
+        commands.onNext(doIncrement(value));
+    }
+
+
+    // implementation
+    synchronized UpdateCommand doIncrement(long value) {
+        final long counter = entries.get(nodeId).getOrElse(0L) + value;
+        entries = entries.put(nodeId, counter);
+        return new UpdateCommand(crdtId, deltaState? HashMap.of(nodeId, counter) : entries);
     }
 
 
@@ -59,7 +94,7 @@ public class GCounter extends AbstractCrdt<GCounter, GCounter.UpdateCommand> {
 
         private final Map<String, Long> entries;
 
-        private UpdateCommand(String crdtId, Map<String, Long> entries) {
+        UpdateCommand(String crdtId, Map<String, Long> entries) {
             super(crdtId);
             this.entries = Objects.requireNonNull(entries, "Entries must not be null");
         }
@@ -68,6 +103,13 @@ public class GCounter extends AbstractCrdt<GCounter, GCounter.UpdateCommand> {
             return entries;
         }
 
+        public UpdateCommand join(UpdateCommand other) {
+            if (!getCrdtId().equals(other.getCrdtId())) {
+                throw new IllegalArgumentException("Commands of different CRDTs cannot be joined");
+            }
+            return new UpdateCommand(getCrdtId(), entries.merge(other.entries, Math::max));
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -1,7 +1,7 @@
 package com.netopyr.wurmloch.crdt;
 
 import io.reactivex.Flowable;
-import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.control.Option;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -12,8 +12,10 @@ import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -23,7 +25,8 @@ public class GSet<E> extends AbstractSet<E> implements Crdt<GSet<E>, GSet.AddCom
     // fields
     private final String crdtId;
     private final Set<E> elements = new HashSet<>();
-    private final Processor<AddCommand<E>, AddCommand<E>> commands = ReplayProcessor.create();
+    private final Processor<AddCommand<E>, AddCommand<E>> commands = PublishProcessor.<AddCommand<E>>create().toSerialized();
+    private final Object emitLock = new Object();
 
 
     // constructor
@@ -40,15 +43,15 @@ public class GSet<E> extends AbstractSet<E> implements Crdt<GSet<E>, GSet.AddCom
 
     @Override
     public void subscribe(Subscriber<? super AddCommand<E>> subscriber) {
-        commands.subscribe(subscriber);
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
     }
 
     @Override
     public void subscribeTo(Publisher<? extends AddCommand<E>> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(command -> {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
             final Option<AddCommand<E>> newCommand = processCommand(command);
             newCommand.peek(commands::onNext);
-        });
+        }));
     }
 
     private Option<AddCommand<E>> processCommand(AddCommand<E> command) {
@@ -58,7 +61,7 @@ public class GSet<E> extends AbstractSet<E> implements Crdt<GSet<E>, GSet.AddCom
 
     // core functionality
     @Override
-    public int size() {
+    public synchronized int size() {
         return elements.size();
     }
 
@@ -69,8 +72,12 @@ public class GSet<E> extends AbstractSet<E> implements Crdt<GSet<E>, GSet.AddCom
 
     @Override
     public boolean add(E element) {
-        commands.onNext(new AddCommand<>(crdtId, element));
-        return doAdd(element);
+        // local commands are emitted in order, but outside of the monitor, which a connected replica may need
+        synchronized (emitLock) {
+            final boolean changed = doAdd(element);
+            commands.onNext(new AddCommand<>(crdtId, element));
+            return changed;
+        }
     }
 
 
@@ -79,6 +86,14 @@ public class GSet<E> extends AbstractSet<E> implements Crdt<GSet<E>, GSet.AddCom
         return elements.add(element);
     }
 
+    private synchronized List<AddCommand<E>> getStateCommands() {
+        final List<AddCommand<E>> result = new ArrayList<>(elements.size());
+        for (final E element : elements) {
+            result.add(new AddCommand<>(crdtId, element));
+        }
+        return result;
+    }
+
     private class GSetIterator implements Iterator<E> {
 
         final Iterator<E> it = elements.iterator();
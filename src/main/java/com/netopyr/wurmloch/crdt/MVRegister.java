@@ -1,40 +1,50 @@
 package com.netopyr.wurmloch.crdt;
 
+import com.netopyr.wurmloch.vectorclock.Causality;
 import com.netopyr.wurmloch.vectorclock.VectorClock;
-import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.collection.Array;
 import javaslang.control.Option;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.reactivestreams.Subscriber;
 
 import java.util.Objects;
 
 public class MVRegister<T> extends AbstractCrdt<MVRegister<T>, MVRegister.SetCommand<T>> {
 
     // fields
-    private Array<Entry<T>> entries = Array.empty();
+    private volatile Array<Entry<T>> entries = Array.empty();
 
 
     // constructor
     public MVRegister(String nodeId, String crdtId) {
-        super(nodeId, crdtId, ReplayProcessor.create());
+        super(nodeId, crdtId, PublishProcessor.<SetCommand<T>>create().toSerialized());
     }
 
 
     // crdt
-    protected Option<SetCommand<T>> processCommand(SetCommand<T> command) {
+    @Override
+    public void subscribe(Subscriber<? super SetCommand<T>> subscriber) {
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
+    }
+
+    protected synchronized Option<SetCommand<T>> processCommand(SetCommand<T> command) {
         final Entry<T> newEntry = command.getEntry();
-        if (!entries.exists(entry -> entry.getClock().compareTo(newEntry.getClock()) > 0
-                || entry.getClock().equals(newEntry.getClock()))) {
-            final Array<Entry<T>> newEntries = entries
-                    .filter(entry -> entry.getClock().compareTo(newEntry.getClock()) == 0)
-                    .append(newEntry);
-            doSet(newEntries);
-            return Option.of(command);
+        Array<Entry<T>> concurrentEntries = Array.empty();
+        for (final Entry<T> entry : entries) {
+            final Causality causality = entry.getClock().compare(newEntry.getClock());
+            if (causality == Causality.AFTER || causality == Causality.EQUAL) {
+                return Option.none();
+            }
+            if (causality == Causality.CONCURRENT) {
+                concurrentEntries = concurrentEntries.append(entry);
+            }
         }
-        return Option.none();
+        doSet(concurrentEntries.append(newEntry));
+        return Option.of(command);
     }
 
 
@@ -44,22 +54,31 @@ public class MVRegister<T> extends AbstractCrdt<MVRegister<T>, MVRegister.SetCom
     }
 
     public void set(T newValue) {
-        if (entries.size() != 1 || !Objects.equals(entries.head().getValue(), newValue)) {
-            final Entry<T> newEntry = new Entry<>(newValue, incVV());
-            doSet(Array.of(newEntry));
-            commands.onNext(new SetCommand<>(
-                    crdtId,
-                    newEntry
-            ));
+        final SetCommand<T> command = prepareSet(newValue);
+        if (command != null) {
+            commands.onNext(command);
         }
     }
 
 
     // implementation
+    private synchronized SetCommand<T> prepareSet(T newValue) {
+        if (entries.size() == 1 && Objects.equals(entries.head().getValue(), newValue)) {
+            return null;
+        }
+        final Entry<T> newEntry = new Entry<>(newValue, incVV());
+        doSet(Array.of(newEntry));
+        return new SetCommand<>(crdtId, newEntry);
+    }
+
     private void doSet(Array<Entry<T>> newEntries) {
         entries = newEntries;
     }
 
+    private synchronized Array<SetCommand<T>> getStateCommands() {
+        return entries.map(entry -> new SetCommand<>(crdtId, entry));
+    }
+
     private VectorClock incVV() {
         final Array<VectorClock> clocks = entries.map(Entry::getClock);
         final VectorClock mergedClock = clocks.reduceOption(VectorClock::merge).getOrElse(new VectorClock());
@@ -72,7 +91,7 @@ public class MVRegister<T> extends AbstractCrdt<MVRegister<T>, MVRegister.SetCom
         private final T value;
         private final VectorClock clock;
 
-        private Entry(T value, VectorClock clock) {
+        Entry(T value, VectorClock clock) {
             this.value = value;
             this.clock = Objects.requireNonNull(clock, "Clock must not be null");
         }
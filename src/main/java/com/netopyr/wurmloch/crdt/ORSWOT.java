@@ -0,0 +1,408 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.vectorclock.NodeRegistry;
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import javaslang.control.Option;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An observed-remove set without tombstones (ORSWOT).
+ * <p>
+ * Every add is tagged with a {@link Dot} of the adding node. Instead of keeping the tags of removed elements in a
+ * tombstone, a replica remembers all dots it has seen in a {@link DotContext}, which collapses to a single counter
+ * per node once there are no gaps. An add is ignored if its dot has been seen before, which covers adds that arrive
+ * after their removal. Memory is therefore proportional to the live elements and the number of nodes.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ORSWOT<E> extends AbstractSet<E> implements Crdt<ORSWOT<E>, ORSWOT.ORSWOTCommand<E>> {
+
+    // fields
+    private final String crdtId;
+    private final int nodeIndex;
+    private final Map<E, Set<Dot>> elements = new HashMap<>();
+    private final DotContext context = new DotContext();
+    private final Processor<ORSWOTCommand<E>, ORSWOTCommand<E>> commands = PublishProcessor.<ORSWOTCommand<E>>create().toSerialized();
+
+
+    // constructor
+    public ORSWOT(String nodeId, String crdtId) {
+        this.nodeIndex = NodeRegistry.indexOf(Objects.requireNonNull(nodeId, "NodeId must not be null"));
+        this.crdtId = Objects.requireNonNull(crdtId, "CrdtId must not be null");
+    }
+
+
+    // crdt
+    @Override
+    public String getCrdtId() {
+        return crdtId;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ORSWOTCommand<E>> subscriber) {
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
+    }
+
+    @Override
+    public void subscribeTo(Publisher<? extends ORSWOTCommand<E>> publisher) {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
+            final Option<ORSWOTCommand<E>> newCommand = processCommand(command);
+            newCommand.peek(commands::onNext);
+        }));
+    }
+
+    private synchronized Option<ORSWOTCommand<E>> processCommand(ORSWOTCommand<E> command) {
+        if (command instanceof AddCommand) {
+            final AddCommand<E> addCommand = (AddCommand<E>) command;
+            final boolean removed = doRemove(addCommand.getValue(), addCommand.getObsoleteDots());
+            return doAdd(addCommand.getValue(), addCommand.getDot()) | removed ? Option.of(command) : Option.none();
+        } else if (command instanceof RemoveCommand) {
+            final RemoveCommand<E> removeCommand = (RemoveCommand<E>) command;
+            return doRemove(removeCommand.getValue(), removeCommand.getDots()) ? Option.of(command) : Option.none();
+        } else if (command instanceof StateCommand) {
+            return doMerge((StateCommand<E>) command) ? Option.of(command) : Option.none();
+        }
+        return Option.none();
+    }
+
+
+    // core functionality
+    @Override
+    public synchronized int size() {
+        return elements.size();
+    }
+
+    @SuppressWarnings("SuspiciousMethodCalls")
+    @Override
+    public synchronized boolean contains(Object value) {
+        return elements.containsKey(value);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new ORSWOTIterator();
+    }
+
+    @Override
+    public boolean add(E value) {
+        // commands are emitted outside of the lock, a connected replica may emit to this set concurrently
+        final AddCommand<E> command = prepareAdd(value);
+        commands.onNext(command);
+        return command.getObsoleteDots().isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object value) {
+        final RemoveCommand<E> command = prepareRemove((E) value);
+        if (command == null) {
+            return false;
+        }
+        commands.onNext(command);
+        return true;
+    }
+
+
+    // implementation
+    private synchronized AddCommand<E> prepareAdd(E value) {
+        final Set<Dot> obsoleteDots = elements.remove(value);
+        final Dot dot = context.next(nodeIndex);
+        final Set<Dot> dots = new HashSet<>();
+        dots.add(dot);
+        elements.put(value, dots);
+        return new AddCommand<>(crdtId, value, dot, obsoleteDots == null ? Collections.emptySet() : obsoleteDots);
+    }
+
+    private synchronized RemoveCommand<E> prepareRemove(E value) {
+        final Set<Dot> dots = elements.remove(value);
+        return dots == null ? null : new RemoveCommand<>(crdtId, value, dots);
+    }
+
+    private synchronized Collection<E> doElements() {
+        return new ArrayList<>(elements.keySet());
+    }
+
+    private boolean doAdd(E value, Dot dot) {
+        if (context.add(dot)) {
+            elements.computeIfAbsent(value, key -> new HashSet<>()).add(dot);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean doRemove(E value, Set<Dot> dots) {
+        boolean changed = false;
+        final Set<Dot> current = elements.get(value);
+        for (final Dot dot : dots) {
+            changed |= context.add(dot);
+            if (current != null) {
+                changed |= current.remove(dot);
+            }
+        }
+        if (current != null && current.isEmpty()) {
+            elements.remove(value);
+        }
+        return changed;
+    }
+
+    private boolean doMerge(StateCommand<E> command) {
+        final Set<Dot> remoteDots = new HashSet<>();
+        for (final Set<Dot> dots : command.getElements().values()) {
+            remoteDots.addAll(dots);
+        }
+
+        // drop the dots the other replica has seen and removed
+        boolean changed = false;
+        final Iterator<Set<Dot>> it = elements.values().iterator();
+        while (it.hasNext()) {
+            final Set<Dot> dots = it.next();
+            changed |= dots.removeIf(dot -> command.getContext().contains(dot) && !remoteDots.contains(dot));
+            if (dots.isEmpty()) {
+                it.remove();
+            }
+        }
+
+        // take over the dots this replica has not seen yet
+        for (final Map.Entry<E, Set<Dot>> entry : command.getElements().entrySet()) {
+            for (final Dot dot : entry.getValue()) {
+                if (!context.contains(dot)) {
+                    elements.computeIfAbsent(entry.getKey(), key -> new HashSet<>()).add(dot);
+                    changed = true;
+                }
+            }
+        }
+        return context.join(command.getContext()) | changed;
+    }
+
+    private synchronized List<ORSWOTCommand<E>> getStateCommands() {
+        if (elements.isEmpty() && context.equals(new DotContext())) {
+            return Collections.emptyList();
+        }
+        final Map<E, Set<Dot>> copy = new HashMap<>();
+        for (final Map.Entry<E, Set<Dot>> entry : elements.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        return Collections.singletonList(new StateCommand<>(crdtId, copy, context.copy()));
+    }
+
+    private class ORSWOTIterator implements Iterator<E> {
+
+        final Iterator<E> it = doElements().iterator();
+        E lastElement = null;
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public E next() {
+            lastElement = it.next();
+            return lastElement;
+        }
+
+        @Override
+        public void remove() {
+            it.remove();
+            ORSWOT.this.remove(lastElement);
+        }
+    }
+
+
+    // commands
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public abstract static class ORSWOTCommand<E> extends CrdtCommand {
+        protected ORSWOTCommand(String crdtId) {
+            super(crdtId);
+        }
+    }
+
+    public static final class AddCommand<E> extends ORSWOTCommand<E> {
+
+        private final E value;
+        private final Dot dot;
+        private final Set<Dot> obsoleteDots;
+
+        AddCommand(String crdtId, E value, Dot dot, Set<Dot> obsoleteDots) {
+            super(crdtId);
+            this.value = value;
+            this.dot = Objects.requireNonNull(dot, "Dot must not be null");
+            this.obsoleteDots = Objects.requireNonNull(obsoleteDots, "ObsoleteDots must not be null");
+        }
+
+        E getValue() {
+            return value;
+        }
+
+        Dot getDot() {
+            return dot;
+        }
+
+        Set<Dot> getObsoleteDots() {
+            return obsoleteDots;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AddCommand<?> that = (AddCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(value, that.value)
+                    .append(dot, that.dot)
+                    .append(obsoleteDots, that.obsoleteDots)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(value)
+                    .append(dot)
+                    .append(obsoleteDots)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("value", value)
+                    .append("dot", dot)
+                    .append("obsoleteDots", obsoleteDots)
+                    .toString();
+        }
+    }
+
+
+    public static final class RemoveCommand<E> extends ORSWOTCommand<E> {
+
+        private final E value;
+        private final Set<Dot> dots;
+
+        RemoveCommand(String crdtId, E value, Set<Dot> dots) {
+            super(crdtId);
+            this.value = value;
+            this.dots = Objects.requireNonNull(dots, "Dots must not be null");
+        }
+
+        E getValue() {
+            return value;
+        }
+
+        Set<Dot> getDots() {
+            return dots;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            RemoveCommand<?> that = (RemoveCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(value, that.value)
+                    .append(dots, that.dots)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(value)
+                    .append(dots)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("value", value)
+                    .append("dots", dots)
+                    .toString();
+        }
+    }
+
+
+    public static final class StateCommand<E> extends ORSWOTCommand<E> {
+
+        private final Map<E, Set<Dot>> elements;
+        private final DotContext context;
+
+        StateCommand(String crdtId, Map<E, Set<Dot>> elements, DotContext context) {
+            super(crdtId);
+            this.elements = Objects.requireNonNull(elements, "Elements must not be null");
+            this.context = Objects.requireNonNull(context, "Context must not be null");
+        }
+
+        Map<E, Set<Dot>> getElements() {
+            return elements;
+        }
+
+        DotContext getContext() {
+            return context;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            StateCommand<?> that = (StateCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(elements, that.elements)
+                    .append(context, that.context)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(elements)
+                    .append(context)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("crdtId", getCrdtId())
+                    .append("elements", elements)
+                    .append("context", context)
+                    .toString();
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package com.netopyr.wurmloch.crdt;
 
+import com.netopyr.wurmloch.vectorclock.NodeRegistry;
 import io.reactivex.Flowable;
-import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.control.Option;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -12,26 +13,45 @@ import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORSetCommand<E>> /*, ObservableSet<E> */ {
 
     // fields
     private final String crdtId;
-    private final Set<Element<E>> elements = new HashSet<>();
-    private final Set<Element<E>> tombstone = new HashSet<>();
-    private final Processor<ORSetCommand<E>, ORSetCommand<E>> commands = ReplayProcessor.create();
+    private final String nodeId;
+    private int nodeIndex = -1;
+    private final Map<E, Set<Element<E>>> elements = new HashMap<>();
+    private final Set<Dot> tombstone = new HashSet<>();
+    private final Processor<ORSetCommand<E>, ORSetCommand<E>> commands = PublishProcessor.<ORSetCommand<E>>create().toSerialized();
+    private final Object emitLock = new Object();
+    private long sequence = 0L;
 
 
     // constructor
+    /**
+     * Creates a set with a random node id. The node id is registered in the {@link NodeRegistry}, which never forgets
+     * an id, on the first local add. Use {@link #ORSet(String, String)} with a stable node id for long-lived
+     * processes that create many sets.
+     */
     public ORSet(String crdtId) {
+        this.nodeId = UUID.randomUUID().toString();
+        this.crdtId = Objects.requireNonNull(crdtId, "Id must not be null");
+    }
+
+    public ORSet(String nodeId, String crdtId) {
+        this.nodeId = Objects.requireNonNull(nodeId, "NodeId must not be null");
+        this.nodeIndex = NodeRegistry.indexOf(nodeId);
         this.crdtId = Objects.requireNonNull(crdtId, "Id must not be null");
     }
 
@@ -44,16 +64,15 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
 
     @Override
     public void subscribe(Subscriber<? super ORSetCommand<E>> subscriber) {
-        commands.subscribe(subscriber);
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
     }
 
     @Override
     public void subscribeTo(Publisher<? extends ORSetCommand<E>> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(command -> {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
             final Option<ORSetCommand<E>> newCommand = processCommand(command);
             newCommand.peek(commands::onNext);
-
-        });
+        }));
     }
 
     private Option<ORSetCommand<E>> processCommand(ORSetCommand<E> command) {
@@ -61,6 +80,8 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
             return doAdd(((AddCommand<E>) command).getElement())? Option.of(command) : Option.none();
         } else if (command instanceof RemoveCommand) {
             return doRemove(((RemoveCommand<E>) command).getElements())? Option.of(command) : Option.none();
+        } else if (command instanceof StateCommand) {
+            return doMerge((StateCommand<E>) command)? Option.of(command) : Option.none();
         }
         return Option.none();
     }
@@ -68,8 +89,14 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
 
     // core functionality
     @Override
-    public int size() {
-        return doElements().size();
+    public synchronized int size() {
+        return elements.size();
+    }
+
+    @SuppressWarnings("SuspiciousMethodCalls")
+    @Override
+    public synchronized boolean contains(Object value) {
+        return elements.containsKey(value);
     }
 
     @Override
@@ -79,43 +106,118 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
 
     @Override
     public boolean add(E value) {
-        final boolean contained = doContains(value);
-        prepareAdd(value);
-        return !contained;
+        // local commands are emitted in order, but outside of the monitor, which a connected replica may need
+        synchronized (emitLock) {
+            final boolean contained;
+            final AddCommand<E> command;
+            synchronized (this) {
+                contained = elements.containsKey(value);
+                command = prepareAdd(value);
+            }
+            commands.onNext(command);
+            return !contained;
+        }
     }
 
-
-    // implementation
-    private static <U> Predicate<Element<U>> matches(U value) {
-        return element -> Objects.equals(value, element.getValue());
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object value) {
+        synchronized (emitLock) {
+            final RemoveCommand<E> command = prepareRemove((E) value);
+            if (command == null) {
+                return false;
+            }
+            commands.onNext(command);
+            return true;
+        }
     }
 
-    private synchronized boolean doContains(E value) {
-        return elements.parallelStream().anyMatch(matches(value));
-    }
 
-    private synchronized Set<E> doElements() {
-        return elements.parallelStream().map(Element::getValue).collect(Collectors.toSet());
+    // implementation
+    private synchronized Collection<E> doElements() {
+        return new ArrayList<>(elements.keySet());
     }
 
-    private synchronized void prepareAdd(E value) {
-        final Element<E> element = new Element<>(value, UUID.randomUUID());
-        commands.onNext(new AddCommand<>(getCrdtId(), element));
+    private synchronized AddCommand<E> prepareAdd(E value) {
+        if (nodeIndex < 0) {
+            nodeIndex = NodeRegistry.indexOf(nodeId);
+        }
+        final Element<E> element = new Element<>(value, new Dot(nodeIndex, ++sequence));
         doAdd(element);
+        return new AddCommand<>(getCrdtId(), element);
     }
 
     private synchronized boolean doAdd(Element<E> element) {
-        return (elements.add(element) | elements.removeAll(tombstone)) && (!tombstone.contains(element));
+        observe(element.getDot());
+        return !tombstone.contains(element.getDot())
+                && elements.computeIfAbsent(element.getValue(), value -> new HashSet<>()).add(element);
     }
 
-    private synchronized void prepareRemove(E value) {
-        final Set<Element<E>> removes = elements.parallelStream().filter(matches(value)).collect(Collectors.toSet());
-        commands.onNext(new RemoveCommand<>(getCrdtId(), removes));
-        doRemove(removes);
+    private synchronized RemoveCommand<E> prepareRemove(E value) {
+        final Set<Element<E>> removes = elements.remove(value);
+        if (removes == null) {
+            return null;
+        }
+        for (final Element<E> element : removes) {
+            tombstone.add(element.getDot());
+        }
+        return new RemoveCommand<>(getCrdtId(), removes);
     }
 
     private synchronized boolean doRemove(Collection<Element<E>> removes) {
-        return elements.removeAll(removes) | tombstone.addAll(removes);
+        boolean changed = false;
+        for (final Element<E> element : removes) {
+            observe(element.getDot());
+            final Set<Element<E>> tags = elements.get(element.getValue());
+            if (tags != null && tags.remove(element)) {
+                if (tags.isEmpty()) {
+                    elements.remove(element.getValue());
+                }
+                changed = true;
+            }
+            changed |= tombstone.add(element.getDot());
+        }
+        return changed;
+    }
+
+    private synchronized boolean doMerge(StateCommand<E> command) {
+        boolean changed = false;
+        for (final Dot dot : command.getTombstone()) {
+            observe(dot);
+            changed |= tombstone.add(dot);
+        }
+        if (changed) {
+            final Iterator<Set<Element<E>>> it = elements.values().iterator();
+            while (it.hasNext()) {
+                final Set<Element<E>> tags = it.next();
+                tags.removeIf(element -> tombstone.contains(element.getDot()));
+                if (tags.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        for (final Element<E> element : command.getElements()) {
+            changed |= doAdd(element);
+        }
+        return changed;
+    }
+
+    // a rebuilt replica must not reuse the dots it created before, they may already be in the tombstone
+    private void observe(Dot dot) {
+        if (dot.getNodeIndex() == nodeIndex && dot.getCounter() > sequence) {
+            sequence = dot.getCounter();
+        }
+    }
+
+    private synchronized List<ORSetCommand<E>> getStateCommands() {
+        if (elements.isEmpty() && tombstone.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Set<Element<E>> allElements = new HashSet<>();
+        for (final Set<Element<E>> tags : elements.values()) {
+            allElements.addAll(tags);
+        }
+        return Collections.singletonList(new StateCommand<>(crdtId, allElements, new HashSet<>(tombstone)));
     }
 
     private class ORSetIterator implements Iterator<E> {
@@ -137,7 +239,7 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
         @Override
         public void remove() {
             it.remove();
-            ORSet.this.prepareRemove(lastElement);
+            ORSet.this.remove(lastElement);
         }
     }
 
@@ -145,17 +247,21 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
     public static final class Element<E> {
 
         private final E value;
-        private final UUID uuid;
+        private final Dot dot;
 
-        Element(E value, UUID uuid) {
+        Element(E value, Dot dot) {
             this.value = value;
-            this.uuid = uuid;
+            this.dot = dot;
         }
 
         E getValue() {
             return value;
         }
 
+        Dot getDot() {
+            return dot;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -164,25 +270,19 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
 
             Element<?> element = (Element<?>) o;
 
-            return new EqualsBuilder()
-                    .append(value, element.value)
-                    .append(uuid, element.uuid)
-                    .isEquals();
+            return dot.equals(element.dot);
         }
 
         @Override
         public int hashCode() {
-            return new HashCodeBuilder(17, 37)
-                    .append(value)
-                    .append(uuid)
-                    .toHashCode();
+            return dot.hashCode();
         }
 
         @Override
         public String toString() {
             return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                     .append("value", value)
-                    .append("uuid", uuid)
+                    .append("dot", dot)
                     .toString();
         }
     }
@@ -286,4 +386,59 @@ public class ORSet<E> extends AbstractSet<E> implements Crdt<ORSet<E>, ORSet.ORS
                     .toString();
         }
     }
+
+
+    public static final class StateCommand<E> extends ORSetCommand<E> {
+
+        private final Set<Element<E>> elements;
+        private final Set<Dot> tombstone;
+
+        StateCommand(String crdtId, Set<Element<E>> elements, Set<Dot> tombstone) {
+            super(crdtId);
+            this.elements = elements;
+            this.tombstone = tombstone;
+        }
+
+        Set<Element<E>> getElements() {
+            return elements;
+        }
+
+        Set<Dot> getTombstone() {
+            return tombstone;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            StateCommand<?> that = (StateCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(elements, that.elements)
+                    .append(tombstone, that.tombstone)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(elements)
+                    .append(tombstone)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("crdtId", getCrdtId())
+                    .append("elements", elements)
+                    .append("tombstone", tombstone)
+                    .toString();
+        }
+    }
 }
@@ -0,0 +1,177 @@
+package com.netopyr.wurmloch.crdt;
+
+import java.util.Random;
+
+/**
+ * A sequence of intrusive nodes, kept in a treap, that supports positional access in O(log n).
+ * <p>
+ * Nodes carry no key; their order is defined solely by where they were inserted. Every node has a weight and
+ * positions are counted in units of weight, which lets nodes with weight 0 (e.g. tombstones) stay in the sequence
+ * without being visible to index-based lookups.
+ */
+final class OrderStatisticTree<N extends OrderStatisticTree.Node<N>> {
+
+    private final Random random = new Random();
+    private N root;
+
+
+    int getTotalWeight() {
+        return sum(root);
+    }
+
+    void insertAfter(N anchor, N node, int weight) {
+        node.priority = random.nextInt();
+        node.weight = weight;
+        node.sum = weight;
+
+        if (root == null) {
+            root = node;
+        } else if (anchor == null) {
+            attach(leftmost(root), node, true);
+        } else if (anchor.right == null) {
+            attach(anchor, node, false);
+        } else {
+            attach(leftmost(anchor.right), node, true);
+        }
+
+        while (node.parent != null && node.priority > node.parent.priority) {
+            if (node == node.parent.left) {
+                rotateRight(node.parent);
+            } else {
+                rotateLeft(node.parent);
+            }
+        }
+    }
+
+    N get(int index) {
+        if (index < 0 || index >= getTotalWeight()) {
+            throw new IndexOutOfBoundsException();
+        }
+        N node = root;
+        while (true) {
+            final int leftSum = sum(node.left);
+            if (index < leftSum) {
+                node = node.left;
+            } else {
+                index -= leftSum;
+                if (index < node.weight) {
+                    return node;
+                }
+                index -= node.weight;
+                node = node.right;
+            }
+        }
+    }
+
+    int rank(N node) {
+        int result = sum(node.left);
+        for (N current = node; current.parent != null; current = current.parent) {
+            if (current == current.parent.right) {
+                result += sum(current.parent.left) + current.parent.weight;
+            }
+        }
+        return result;
+    }
+
+    void setWeight(N node, int weight) {
+        final int delta = weight - node.weight;
+        node.weight = weight;
+        for (N current = node; current != null; current = current.parent) {
+            current.sum += delta;
+        }
+    }
+
+    void remove(N node) {
+        while (node.left != null || node.right != null) {
+            if (node.right == null || (node.left != null && node.left.priority > node.right.priority)) {
+                rotateRight(node);
+            } else {
+                rotateLeft(node);
+            }
+        }
+        for (N current = node.parent; current != null; current = current.parent) {
+            current.sum -= node.weight;
+        }
+        replace(node, null);
+        node.parent = null;
+    }
+
+
+    private void attach(N parent, N node, boolean left) {
+        if (left) {
+            parent.left = node;
+        } else {
+            parent.right = node;
+        }
+        node.parent = parent;
+        for (N current = parent; current != null; current = current.parent) {
+            current.sum += node.weight;
+        }
+    }
+
+    private void rotateLeft(N x) {
+        final N y = x.right;
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+        replace(x, y);
+        y.left = x;
+        x.parent = y;
+        update(x);
+        update(y);
+    }
+
+    private void rotateRight(N x) {
+        final N y = x.left;
+        x.left = y.right;
+        if (y.right != null) {
+            y.right.parent = x;
+        }
+        replace(x, y);
+        y.right = x;
+        x.parent = y;
+        update(x);
+        update(y);
+    }
+
+    private void replace(N oldNode, N newNode) {
+        final N parent = oldNode.parent;
+        if (newNode != null) {
+            newNode.parent = parent;
+        }
+        if (parent == null) {
+            root = newNode;
+        } else if (parent.left == oldNode) {
+            parent.left = newNode;
+        } else {
+            parent.right = newNode;
+        }
+    }
+
+    private static <N extends Node<N>> void update(N node) {
+        node.sum = sum(node.left) + node.weight + sum(node.right);
+    }
+
+    private static <N extends Node<N>> int sum(N node) {
+        return node == null ? 0 : node.sum;
+    }
+
+    private static <N extends Node<N>> N leftmost(N node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+
+    abstract static class Node<N extends Node<N>> {
+
+        N left;
+        N right;
+        N parent;
+        int priority;
+        int weight;
+        int sum;
+    }
+}
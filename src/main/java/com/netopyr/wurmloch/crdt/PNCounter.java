@@ -1,6 +1,6 @@
 package com.netopyr.wurmloch.crdt;
 
-import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.collection.HashMap;
 import javaslang.collection.Map;
 import javaslang.control.Option;
@@ -8,31 +8,61 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.reactivestreams.Subscriber;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 @SuppressWarnings("WeakerAccess")
 public class PNCounter extends AbstractCrdt<PNCounter, PNCounter.UpdateCommand> {
 
     // fields
-    private Map<String, Long> pEntries = HashMap.empty();
-    private Map<String, Long> nEntries = HashMap.empty();
+    private final boolean deltaState;
+    private volatile Map<String, Long> pEntries = HashMap.empty();
+    private volatile Map<String, Long> nEntries = HashMap.empty();
 
 
     // constructor
     public PNCounter(String nodeId, String crtdId) {
-        super(nodeId, crtdId, BehaviorProcessor.create());
+        this(nodeId, crtdId, false);
+    }
+
+    public PNCounter(String nodeId, String crtdId, boolean deltaState) {
+        super(nodeId, crtdId, PublishProcessor.<UpdateCommand>create().toSerialized());
+        this.deltaState = deltaState;
     }
 
 
     // crdt
-    protected Option<UpdateCommand> processCommand(PNCounter.UpdateCommand command) {
-        final Map<String, Long> oldPEntries = pEntries;
-        final Map<String, Long> oldNEntries = nEntries;
-        pEntries = pEntries.merge(command.pEntries, Math::max);
-        nEntries = nEntries.merge(command.nEntries, Math::max);
-        return pEntries.equals(oldPEntries) && nEntries.equals(oldNEntries)? Option.none()
-                : Option.of(new UpdateCommand(crdtId, pEntries, nEntries));
+    @Override
+    public void subscribe(Subscriber<? super UpdateCommand> subscriber) {
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
+    }
+
+    protected synchronized Option<UpdateCommand> processCommand(PNCounter.UpdateCommand command) {
+        final Map<String, Long> pDelta = command.pEntries.filter(entry -> entry._2 > pEntries.get(entry._1).getOrElse(0L));
+        final Map<String, Long> nDelta = command.nEntries.filter(entry -> entry._2 > nEntries.get(entry._1).getOrElse(0L));
+        if (pDelta.isEmpty() && nDelta.isEmpty()) {
+            return Option.none();
+        }
+        pEntries = pEntries.merge(pDelta, Math::max);
+        nEntries = nEntries.merge(nDelta, Math::max);
+        return Option.of(deltaState? new UpdateCommand(crdtId, pDelta, nDelta) : new UpdateCommand(crdtId, pEntries, nEntries));
+    }
+
+    public synchronized UpdateCommand getStateCommand() {
+        return new UpdateCommand(crdtId, pEntries, nEntries);
+    }
+
+    private List<UpdateCommand> getStateCommands() {
+        final UpdateCommand state = getStateCommand();
+        return deltaState || !state.pEntries.isEmpty() || !state.nEntries.isEmpty()
+                ? Collections.singletonList(state) : Collections.emptyList();
+    }
+
+    public boolean isDeltaState() {
+        return deltaState;
     }
 
 
@@ -49,12 +79,8 @@ public class PNCounter extends AbstractCrdt<PNCounter, PNCounter.UpdateCommand>
         if (value < 1L) {
             throw new IllegalArgumentException("Value needs to be a positive number.");
         }
-        pEntries = pEntries.put(nodeId, pEntries.get(nodeId).getOrElse(0L) + value);
-        commands.onNext(new UpdateCommand(
-                crdtId,
-                pEntries,
-                nEntries
-        ));
+        // emitting while holding the lock could deadlock with a connected replica that emits to this counter
+        commands.onNext(doIncrement(value));
     }
 
     public void decrement() {
@@ -65,12 +91,23 @@ public class PNCounter extends AbstractCrdt<PNCounter, PNCounter.UpdateCommand>
         if (value < 1L) {
             throw new IllegalArgumentException("Value needs to be a positive number.");
         }
-        nEntries = nEntries.put(nodeId, nEntries.get(nodeId).getOrElse(0L) + value);
-        commands.onNext(new UpdateCommand(
-                crdtId,
-                pEntries,
-                nEntries
-        ));
+        commands.onNext(doDecrement(value));
+    }
+
+
+    // implementation
+    synchronized UpdateCommand doIncrement(long value) {
+        final long counter = pEntries.get(nodeId).getOrElse(0L) + value;
+        pEntries = pEntries.put(nodeId, counter);
+        return deltaState? new UpdateCommand(crdtId, HashMap.of(nodeId, counter), HashMap.empty())
+                : new UpdateCommand(crdtId, pEntries, nEntries);
+    }
+
+    synchronized UpdateCommand doDecrement(long value) {
+        final long counter = nEntries.get(nodeId).getOrElse(0L) + value;
+        nEntries = nEntries.put(nodeId, counter);
+        return deltaState? new UpdateCommand(crdtId, HashMap.empty(), HashMap.of(nodeId, counter))
+                : new UpdateCommand(crdtId, pEntries, nEntries);
     }
 
 
@@ -80,7 +117,7 @@ public class PNCounter extends AbstractCrdt<PNCounter, PNCounter.UpdateCommand>
         private final Map<String, Long> pEntries;
         private final Map<String, Long> nEntries;
 
-        private UpdateCommand(String crdtId, Map<String, Long> pEntries, Map<String, Long> nEntries) {
+        UpdateCommand(String crdtId, Map<String, Long> pEntries, Map<String, Long> nEntries) {
             super(crdtId);
             this.pEntries = Objects.requireNonNull(pEntries, "PEntries must not be null");
             this.nEntries = Objects.requireNonNull(nEntries, "NEntries must not be null");
@@ -94,6 +131,17 @@ public class PNCounter extends AbstractCrdt<PNCounter, PNCounter.UpdateCommand>
             return nEntries;
         }
 
+        public UpdateCommand join(UpdateCommand other) {
+            if (!getCrdtId().equals(other.getCrdtId())) {
+                throw new IllegalArgumentException("Commands of different CRDTs cannot be joined");
+            }
+            return new UpdateCommand(
+                    getCrdtId(),
+                    pEntries.merge(other.pEntries, Math::max),
+                    nEntries.merge(other.nEntries, Math::max)
+            );
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
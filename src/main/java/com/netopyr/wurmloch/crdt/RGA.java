@@ -1,10 +1,10 @@
 package com.netopyr.wurmloch.crdt;
 
+import com.netopyr.wurmloch.vectorclock.Causality;
 import com.netopyr.wurmloch.vectorclock.StrictVectorClock;
 import io.reactivex.Flowable;
-import io.reactivex.processors.ReplayProcessor;
-import javaslang.collection.HashMap;
-import javaslang.collection.Map;
+import io.reactivex.processors.PublishProcessor;
+import javaslang.collection.Vector;
 import javaslang.control.Option;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -15,28 +15,54 @@ import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
 
 public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGACommand<E>> {
 
+    private final String nodeId;
     private final String crdtId;
-    private final Processor<RGACommand<E>, RGACommand<E>> commands = ReplayProcessor.create();
+    private final Set<String> replicaIds;
+    private final Processor<RGACommand<E>, RGACommand<E>> commands = PublishProcessor.<RGACommand<E>>create().toSerialized();
+    private final Object emitLock = new Object();
     private final Vertex<E> start;
 
-    private Map<StrictVectorClock, Vertex<E>> vertices;
-    private Map<Vertex<E>, Vertex<E>> edges = HashMap.empty();
+    private final Map<StrictVectorClock, Vertex<E>> vertices = new HashMap<>();
+    private final OrderStatisticTree<Vertex<E>> index = new OrderStatisticTree<>();
+    private final Map<String, StrictVectorClock> acknowledgements = new HashMap<>();
     private StrictVectorClock clock;
-    private int size;
+    private StrictVectorClock stableClock;
 
 
     // constructor
     public RGA(String nodeId, String crdtId) {
+        this(nodeId, crdtId, null);
+    }
+
+    /**
+     * Creates an RGA in compaction mode, which removes tombstones once all replicas have acknowledged the removal.
+     *
+     * @param replicaIds the node ids of all replicas of this RGA
+     * @see #compact()
+     */
+    public RGA(String nodeId, String crdtId, Collection<String> replicaIds) {
         this.crdtId = Objects.requireNonNull(crdtId, "CrtdId must not be null");
+        this.nodeId = Objects.requireNonNull(nodeId, "NodeId must not be null");
+        this.replicaIds = replicaIds == null ? null : Collections.unmodifiableSet(new HashSet<>(replicaIds));
 
-        Objects.requireNonNull(nodeId, "NodeId must not be null");
         this.clock = new StrictVectorClock(nodeId);
-        this.start = new Vertex<>(null, clock);
-        this.vertices = HashMap.of(clock, start);
+        this.start = new Vertex<>(null, clock, null);
+        this.vertices.put(clock, start);
+        this.index.insertAfter(null, start, 0);
     }
 
 
@@ -48,21 +74,21 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
 
     @Override
     public void subscribe(Subscriber<? super RGACommand<E>> subscriber) {
-        commands.subscribe(subscriber);
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
     }
 
     @Override
     public void subscribeTo(Publisher<? extends RGACommand<E>> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(command -> {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
             final Option<RGACommand<E>> newCommand = processCommand(command);
             newCommand.peek(commands::onNext);
-        });
+        }));
     }
 
-    private Option<RGACommand<E>> processCommand(RGACommand<E> command) {
+    private synchronized Option<RGACommand<E>> processCommand(RGACommand<E> command) {
         if (command instanceof AddRightCommand) {
             final AddRightCommand<E> addRightCommand = (AddRightCommand<E>) command;
-            if (findVertex(addRightCommand.newVertexClock).isEmpty()) {
+            if (findVertex(addRightCommand.newVertexClock).isEmpty() && !isStable(addRightCommand.newVertexClock)) {
                 final Option<Vertex<E>> anchor = findVertex(addRightCommand.anchorClock);
                 clock = clock.merge(addRightCommand.newVertexClock);
                 anchor.peek(
@@ -71,10 +97,43 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
                 return Option.of(command);
             }
 
+        } else if (command instanceof AddRightRangeCommand) {
+            final AddRightRangeCommand<E> rangeCommand = (AddRightRangeCommand<E>) command;
+            if (findVertex(rangeCommand.firstVertexClock).isEmpty() && !isStable(rangeCommand.firstVertexClock)) {
+                final Option<Vertex<E>> anchor = findVertex(rangeCommand.anchorClock);
+                final StrictVectorClock lastVertexClock = anchor.isDefined()
+                        ? doAddRightRange(anchor.get(), rangeCommand.newVertexValues, rangeCommand.firstVertexClock)
+                        : lastClockOfRange(rangeCommand.firstVertexClock, rangeCommand.newVertexValues.size());
+                clock = clock.merge(lastVertexClock);
+                return Option.of(command);
+            }
+
         } else if (command instanceof RemoveCommand) {
-            final StrictVectorClock removedClock = ((RemoveCommand) command).clock;
-            final Option<Vertex<E>> vertex = findVertex(removedClock);
-            return vertex.map(this::doRemove).flatMap(result -> result? Option.of(command) : Option.none());
+            final RemoveCommand<E> removeCommand = (RemoveCommand<E>) command;
+            final Option<Vertex<E>> vertex = findVertex(removeCommand.clock);
+            clock = clock.merge(removeCommand.removerClock);
+            return vertex.map(v -> doRemove(v, removeCommand.removerClock))
+                    .flatMap(result -> result? Option.of(command) : Option.none());
+
+        } else if (command instanceof RemoveRangeCommand) {
+            final RemoveRangeCommand<E> rangeCommand = (RemoveRangeCommand<E>) command;
+            clock = clock.merge(rangeCommand.removerClock);
+            boolean changed = false;
+            for (final StrictVectorClock removedClock : rangeCommand.clocks) {
+                final Vertex<E> vertex = vertices.get(removedClock);
+                changed |= vertex != null && doRemove(vertex, rangeCommand.removerClock);
+            }
+            return changed? Option.of(command) : Option.none();
+
+        } else if (command instanceof StateCommand) {
+            final StateCommand<E> stateCommand = (StateCommand<E>) command;
+            final boolean changed = doMerge(stateCommand.vertices);
+            clock = clock.merge(stateCommand.clock);
+            return changed? Option.of(command) : Option.none();
+
+        } else if (command instanceof AckCommand) {
+            final AckCommand<E> ackCommand = (AckCommand<E>) command;
+            return doAcknowledge(ackCommand.nodeId, ackCommand.clock)? Option.of(command) : Option.none();
         }
 
         return Option.none();
@@ -83,99 +142,342 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
 
     // core functionality
     @Override
-    public E get(int index) {
+    public synchronized E get(int index) {
         return findVertex(index).value;
     }
 
     @Override
-    public int size() {
-        return size;
+    public synchronized int size() {
+        return index.getTotalWeight();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new RGAIterator();
     }
 
     @Override
     public void add(int index, E element) {
-        if (index < 0 || index > size) {
-            throw new IndexOutOfBoundsException();
+        // local commands are emitted in order, but outside of the monitor, which a connected replica may need
+        synchronized (emitLock) {
+            commands.onNext(prepareAddRight(index, element));
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        return addAll(size(), elements);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> elements) {
+        synchronized (emitLock) {
+            final RGACommand<E> command = prepareAddRightRange(index, new ArrayList<>(elements));
+            if (command == null) {
+                return false;
+            }
+            commands.onNext(command);
+            return true;
         }
-        final Vertex<E> anchor = index == 0 ? start : findVertex(index - 1);
-        prepareAddRight(anchor, element);
     }
 
     @Override
     public E remove(int index) {
-        final Vertex<E> vertex = findVertex(index);
-        prepareRemove(vertex);
-        return vertex.value;
+        synchronized (emitLock) {
+            final Vertex<E> vertex;
+            final RGACommand<E> command;
+            synchronized (this) {
+                vertex = findVertex(index);
+                command = prepareRemove(vertex);
+            }
+            commands.onNext(command);
+            return vertex.value;
+        }
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        synchronized (emitLock) {
+            final RGACommand<E> command = prepareRemoveRange(fromIndex, toIndex);
+            if (command != null) {
+                commands.onNext(command);
+            }
+        }
+    }
+
+
+    public synchronized Vector<E> snapshot() {
+        return Vector.ofAll(this);
+    }
+
+    /**
+     * Acknowledges all changes this replica has seen to the other replicas and removes all tombstones that every
+     * replica has acknowledged. Needs to be called periodically in compaction mode.
+     */
+    public void compact() {
+        synchronized (emitLock) {
+            commands.onNext(prepareAcknowledge());
+        }
+    }
+
+    synchronized int getVertexCount() {
+        return vertices.size();
     }
 
 
     // implementation
     private Vertex<E> findVertex(int index) {
-        if (index < 0 || index >= size) {
-            throw new IndexOutOfBoundsException();
-        }
-        Vertex<E> vertex = start;
-        for (int i = 0; i <= index; i++) {
-            do {
-                vertex = edges.get(vertex).get();
-            } while (vertex.removed);
-        }
-        return vertex;
+        return this.index.get(index);
     }
 
     private Option<Vertex<E>> findVertex(StrictVectorClock clock) {
-        return vertices.get(clock);
+        return Option.of(vertices.get(clock));
+    }
+
+    private synchronized RGACommand<E> prepareRemove(Vertex<E> vertex) {
+        clock = clock.increment();
+        doRemove(vertex, clock);
+        return new RemoveCommand<>(crdtId, vertex.clock, clock);
     }
 
-    private void prepareRemove(Vertex<E> vertex) {
-        commands.onNext(new RemoveCommand<>(crdtId, vertex.clock));
-        doRemove(vertex);
+    private synchronized RGACommand<E> prepareRemoveRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (fromIndex == toIndex) {
+            return null;
+        }
+        final int count = toIndex - fromIndex;
+        clock = clock.increment();
+        final List<StrictVectorClock> removedClocks = new ArrayList<>(count);
+        Vertex<E> vertex = findVertex(fromIndex);
+        for (int i = 0; i < count; i++) {
+            while (vertex.removed) {
+                vertex = vertex.next;
+            }
+            removedClocks.add(vertex.clock);
+            doRemove(vertex, clock);
+            vertex = vertex.next;
+        }
+        return new RemoveRangeCommand<>(crdtId, removedClocks, clock);
     }
 
-    private boolean doRemove(Vertex<E> vertex) {
+    private boolean doRemove(Vertex<E> vertex, StrictVectorClock removerClock) {
         if (! vertex.removed) {
             vertex.removed = true;
-            size--;
+            vertex.removerClock = removerClock;
+            index.setWeight(vertex, 0);
             return true;
         }
         return false;
     }
 
-    private void prepareAddRight(Vertex<E> anchor, E value) {
+    private synchronized RGACommand<E> prepareAddRight(int index, E value) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        final Vertex<E> anchor = index == 0 ? start : findVertex(index - 1);
         clock = clock.increment();
         doAddRight(anchor, value, clock);
-        commands.onNext(new AddRightCommand<>(crdtId, anchor.clock, value, clock));
+        return new AddRightCommand<>(crdtId, anchor.clock, value, clock);
     }
 
-    private void doAddRight(Vertex<E> l, E value, StrictVectorClock clock) {
-        Option<Vertex<E>> r = successor(l);
-        while (r.isDefined() && (clock.compareTo(r.get().clock) < 0)) {
-            l = r.get();
-            r = successor(l);
+    private synchronized RGACommand<E> prepareAddRightRange(int index, List<E> values) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (values.isEmpty()) {
+            return null;
+        }
+        final Vertex<E> anchor = index == 0 ? start : findVertex(index - 1);
+        final StrictVectorClock firstVertexClock = clock.increment();
+        clock = doAddRightRange(anchor, values, firstVertexClock);
+        return new AddRightRangeCommand<>(crdtId, anchor.clock, values, firstVertexClock);
+    }
+
+    private StrictVectorClock doAddRightRange(Vertex<E> anchor, List<E> values, StrictVectorClock firstVertexClock) {
+        // every element of a range is anchored at its predecessor, exactly as if it had been added on its own
+        StrictVectorClock vertexClock = firstVertexClock;
+        Vertex<E> vertex = doAddRight(anchor, values.get(0), vertexClock);
+        for (int i = 1; i < values.size(); i++) {
+            vertexClock = vertexClock.increment();
+            vertex = doAddRight(vertex, values.get(i), vertexClock);
         }
-        final Vertex<E> w = new Vertex<>(value, clock);
-        vertices = vertices.put(clock, w);
-        size++;
-        edges = edges.put(l, w);
-        if (r.isDefined()) {
-            edges = edges.put(w, r.get());
+        return vertexClock;
+    }
+
+    private static StrictVectorClock lastClockOfRange(StrictVectorClock firstVertexClock, int count) {
+        StrictVectorClock result = firstVertexClock;
+        for (int i = 1; i < count; i++) {
+            result = result.increment();
         }
+        return result;
     }
 
-    private Option<Vertex<E>> successor(Vertex<E> vertex) {
-        return edges.get(vertex);
+    private Vertex<E> doAddRight(Vertex<E> l, E value, StrictVectorClock clock) {
+        final StrictVectorClock anchorClock = l.clock;
+        Vertex<E> r = l.next;
+        while (r != null && (clock.compareTo(r.clock) < 0)) {
+            l = r;
+            r = l.next;
+        }
+        final Vertex<E> w = new Vertex<>(value, clock, anchorClock);
+        vertices.put(clock, w);
+        index.insertAfter(l, w, 1);
+        l.next = w;
+        w.next = r;
+        return w;
     }
 
-    private static final class Vertex<E> {
+    private boolean doMerge(List<VertexState<E>> states) {
+        // The vertices of the state are in list order, therefore every anchor is known before it is needed. If this
+        // replica has purged an anchor already, its position is stable and the predecessor is an equivalent anchor.
+        boolean changed = false;
+        Vertex<E> predecessor = start;
+        for (final VertexState<E> state : states) {
+            Vertex<E> vertex = vertices.get(state.clock);
+            if (vertex == null && !isStable(state.clock)) {
+                final Vertex<E> anchor = vertices.get(state.anchorClock);
+                vertex = doAddRight(anchor != null ? anchor : predecessor, state.value, state.clock);
+                changed = true;
+            }
+            if (vertex != null) {
+                if (state.removerClock != null) {
+                    changed |= doRemove(vertex, state.removerClock);
+                }
+                predecessor = vertex;
+            }
+        }
+        return changed;
+    }
+
+    private synchronized List<RGACommand<E>> getStateCommands() {
+        if (start.next == null) {
+            return Collections.emptyList();
+        }
+        final List<VertexState<E>> states = new ArrayList<>(vertices.size() - 1);
+        for (Vertex<E> vertex = start.next; vertex != null; vertex = vertex.next) {
+            states.add(new VertexState<>(vertex.anchorClock, vertex.value, vertex.clock, vertex.removerClock));
+        }
+        return Collections.singletonList(new StateCommand<>(crdtId, states, clock));
+    }
+
+    private synchronized RGACommand<E> prepareAcknowledge() {
+        if (replicaIds == null) {
+            throw new IllegalStateException("RGA was not created in compaction mode");
+        }
+        final RGACommand<E> command = new AckCommand<>(crdtId, nodeId, clock);
+        purge();
+        return command;
+    }
+
+    private boolean doAcknowledge(String ackNodeId, StrictVectorClock ackClock) {
+        if (replicaIds == null || nodeId.equals(ackNodeId) || !replicaIds.contains(ackNodeId)) {
+            return false;
+        }
+        final StrictVectorClock oldClock = acknowledgements.get(ackNodeId);
+        if (oldClock != null && isBeforeOrEqual(ackClock, oldClock)) {
+            return false;
+        }
+        acknowledgements.put(ackNodeId, oldClock == null ? ackClock : oldClock.merge(ackClock));
+        return true;
+    }
+
+    private void purge() {
+        // A tombstone can only be removed if no replica will ever reference it again. This is the case if every
+        // replica has seen the removal and if this replica has received everything the other replicas had seen
+        // when they acknowledged, because that includes all concurrent inserts anchored at the tombstone.
+        StrictVectorClock frontier = clock;
+        for (final String replicaId : replicaIds) {
+            if (!replicaId.equals(nodeId)) {
+                final StrictVectorClock ackClock = acknowledgements.get(replicaId);
+                if (ackClock == null || !isBeforeOrEqual(ackClock, clock)) {
+                    return;
+                }
+                frontier = frontier.meet(ackClock);
+            }
+        }
+        stableClock = frontier;
+
+        // The successor of a removed tombstone needs to be stable, too. Otherwise a later insert could skip it
+        // here while stopping at the tombstone on a replica that has not compacted yet.
+        Vertex<E> previous = start;
+        Vertex<E> current = start.next;
+        while (current != null) {
+            final Vertex<E> next = current.next;
+            if (current.removed && isStable(current.removerClock) && (next == null || isStable(next.clock))) {
+                previous.next = next;
+                vertices.remove(current.clock);
+                index.remove(current);
+            } else {
+                previous = current;
+            }
+            current = next;
+        }
+    }
+
+    private boolean isStable(StrictVectorClock vertexClock) {
+        return stableClock != null && isBeforeOrEqual(vertexClock, stableClock);
+    }
+
+    private static boolean isBeforeOrEqual(StrictVectorClock clock1, StrictVectorClock clock2) {
+        final Causality causality = clock1.compare(clock2);
+        return causality == Causality.BEFORE || causality == Causality.EQUAL;
+    }
+
+    private class RGAIterator implements Iterator<E> {
+
+        private Vertex<E> nextVertex = skipRemoved(start.next);
+        private Vertex<E> lastVertex = null;
+
+        @Override
+        public boolean hasNext() {
+            return nextVertex != null;
+        }
+
+        @Override
+        public E next() {
+            if (nextVertex == null) {
+                throw new NoSuchElementException();
+            }
+            lastVertex = nextVertex;
+            nextVertex = skipRemoved(nextVertex.next);
+            return lastVertex.value;
+        }
+
+        @Override
+        public void remove() {
+            if (lastVertex == null) {
+                throw new IllegalStateException();
+            }
+            synchronized (emitLock) {
+                commands.onNext(prepareRemove(lastVertex));
+            }
+            lastVertex = null;
+        }
+
+        private Vertex<E> skipRemoved(Vertex<E> vertex) {
+            while (vertex != null && vertex.removed) {
+                vertex = vertex.next;
+            }
+            return vertex;
+        }
+    }
+
+    private static final class Vertex<E> extends OrderStatisticTree.Node<Vertex<E>> {
 
         private final E value;
         private final StrictVectorClock clock;
+        private final StrictVectorClock anchorClock;
 
+        private Vertex<E> next;
         private boolean removed;
+        private StrictVectorClock removerClock;
 
-        private Vertex(E value, StrictVectorClock clock) {
+        private Vertex(E value, StrictVectorClock clock, StrictVectorClock anchorClock) {
             this.value = value;
             this.clock = clock;
+            this.anchorClock = anchorClock;
         }
 
         @Override
@@ -216,10 +518,20 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
     public static final class RemoveCommand<E> extends RGACommand<E> {
 
         private final StrictVectorClock clock;
+        private final StrictVectorClock removerClock;
 
-        private RemoveCommand(String crdtId, StrictVectorClock clock) {
+        RemoveCommand(String crdtId, StrictVectorClock clock, StrictVectorClock removerClock) {
             super(crdtId);
-            this.clock = clock;
+            this.clock = Objects.requireNonNull(clock, "Clock must not be null");
+            this.removerClock = Objects.requireNonNull(removerClock, "RemoverClock must not be null");
+        }
+
+        StrictVectorClock getClock() {
+            return clock;
+        }
+
+        StrictVectorClock getRemoverClock() {
+            return removerClock;
         }
 
         @Override
@@ -233,6 +545,7 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
             return new EqualsBuilder()
                     .appendSuper(super.equals(o))
                     .append(clock, that.clock)
+                    .append(removerClock, that.removerClock)
                     .isEquals();
         }
 
@@ -241,6 +554,7 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
             return new HashCodeBuilder(17, 37)
                     .appendSuper(super.hashCode())
                     .append(clock)
+                    .append(removerClock)
                     .toHashCode();
         }
 
@@ -249,6 +563,7 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
             return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                     .appendSuper(super.toString())
                     .append("clock", clock)
+                    .append("removerClock", removerClock)
                     .toString();
         }
     }
@@ -259,13 +574,25 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
         private final E newVertexValue;
         private final StrictVectorClock newVertexClock;
 
-        private AddRightCommand(String crdtId, StrictVectorClock anchorClock, E newVertexValue, StrictVectorClock newVertexClock) {
+        AddRightCommand(String crdtId, StrictVectorClock anchorClock, E newVertexValue, StrictVectorClock newVertexClock) {
             super(crdtId);
             this.anchorClock = Objects.requireNonNull(anchorClock, "AnchorClock must not be null");
             this.newVertexValue = Objects.requireNonNull(newVertexValue, "NewVertexValue must not be null");
             this.newVertexClock = Objects.requireNonNull(newVertexClock, "NewVertexClock must not be null");
         }
 
+        StrictVectorClock getAnchorClock() {
+            return anchorClock;
+        }
+
+        E getNewVertexValue() {
+            return newVertexValue;
+        }
+
+        StrictVectorClock getNewVertexClock() {
+            return newVertexClock;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -302,4 +629,298 @@ public class RGA<E> extends AbstractList<E> implements Crdt<RGA<E>, RGA.RGAComma
                     .toString();
         }
     }
+
+    public static final class AckCommand<E> extends RGACommand<E> {
+
+        private final String nodeId;
+        private final StrictVectorClock clock;
+
+        AckCommand(String crdtId, String nodeId, StrictVectorClock clock) {
+            super(crdtId);
+            this.nodeId = Objects.requireNonNull(nodeId, "NodeId must not be null");
+            this.clock = Objects.requireNonNull(clock, "Clock must not be null");
+        }
+
+        String getNodeId() {
+            return nodeId;
+        }
+
+        StrictVectorClock getClock() {
+            return clock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AckCommand<?> that = (AckCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(nodeId, that.nodeId)
+                    .append(clock, that.clock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(nodeId)
+                    .append(clock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("nodeId", nodeId)
+                    .append("clock", clock)
+                    .toString();
+        }
+    }
+
+    public static final class AddRightRangeCommand<E> extends RGACommand<E> {
+
+        private final StrictVectorClock anchorClock;
+        private final List<E> newVertexValues;
+        private final StrictVectorClock firstVertexClock;
+
+        AddRightRangeCommand(String crdtId, StrictVectorClock anchorClock, List<E> newVertexValues, StrictVectorClock firstVertexClock) {
+            super(crdtId);
+            this.anchorClock = Objects.requireNonNull(anchorClock, "AnchorClock must not be null");
+            this.newVertexValues = Objects.requireNonNull(newVertexValues, "NewVertexValues must not be null");
+            this.firstVertexClock = Objects.requireNonNull(firstVertexClock, "FirstVertexClock must not be null");
+            if (newVertexValues.isEmpty()) {
+                throw new IllegalArgumentException("NewVertexValues must not be empty");
+            }
+            for (final E value : newVertexValues) {
+                Objects.requireNonNull(value, "NewVertexValues must not contain null");
+            }
+        }
+
+        StrictVectorClock getAnchorClock() {
+            return anchorClock;
+        }
+
+        List<E> getNewVertexValues() {
+            return newVertexValues;
+        }
+
+        StrictVectorClock getFirstVertexClock() {
+            return firstVertexClock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AddRightRangeCommand<?> that = (AddRightRangeCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(anchorClock, that.anchorClock)
+                    .append(newVertexValues, that.newVertexValues)
+                    .append(firstVertexClock, that.firstVertexClock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(anchorClock)
+                    .append(newVertexValues)
+                    .append(firstVertexClock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("anchorClock", anchorClock)
+                    .append("newVertexValues", newVertexValues)
+                    .append("firstVertexClock", firstVertexClock)
+                    .toString();
+        }
+    }
+
+    public static final class RemoveRangeCommand<E> extends RGACommand<E> {
+
+        private final List<StrictVectorClock> clocks;
+        private final StrictVectorClock removerClock;
+
+        RemoveRangeCommand(String crdtId, List<StrictVectorClock> clocks, StrictVectorClock removerClock) {
+            super(crdtId);
+            this.clocks = Objects.requireNonNull(clocks, "Clocks must not be null");
+            this.removerClock = Objects.requireNonNull(removerClock, "RemoverClock must not be null");
+        }
+
+        List<StrictVectorClock> getClocks() {
+            return clocks;
+        }
+
+        StrictVectorClock getRemoverClock() {
+            return removerClock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            RemoveRangeCommand<?> that = (RemoveRangeCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(clocks, that.clocks)
+                    .append(removerClock, that.removerClock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(clocks)
+                    .append(removerClock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("clocks", clocks)
+                    .append("removerClock", removerClock)
+                    .toString();
+        }
+    }
+
+    public static final class StateCommand<E> extends RGACommand<E> {
+
+        private final List<VertexState<E>> vertices;
+        private final StrictVectorClock clock;
+
+        StateCommand(String crdtId, List<VertexState<E>> vertices, StrictVectorClock clock) {
+            super(crdtId);
+            this.vertices = Objects.requireNonNull(vertices, "Vertices must not be null");
+            this.clock = Objects.requireNonNull(clock, "Clock must not be null");
+        }
+
+        List<VertexState<E>> getVertices() {
+            return vertices;
+        }
+
+        StrictVectorClock getClock() {
+            return clock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            StateCommand<?> that = (StateCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(vertices, that.vertices)
+                    .append(clock, that.clock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(vertices)
+                    .append(clock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("vertices", vertices)
+                    .append("clock", clock)
+                    .toString();
+        }
+    }
+
+    public static final class VertexState<E> {
+
+        private final StrictVectorClock anchorClock;
+        private final E value;
+        private final StrictVectorClock clock;
+        private final StrictVectorClock removerClock;
+
+        VertexState(StrictVectorClock anchorClock, E value, StrictVectorClock clock, StrictVectorClock removerClock) {
+            this.anchorClock = Objects.requireNonNull(anchorClock, "AnchorClock must not be null");
+            this.value = value;
+            this.clock = Objects.requireNonNull(clock, "Clock must not be null");
+            this.removerClock = removerClock;
+        }
+
+        StrictVectorClock getAnchorClock() {
+            return anchorClock;
+        }
+
+        E getValue() {
+            return value;
+        }
+
+        StrictVectorClock getClock() {
+            return clock;
+        }
+
+        StrictVectorClock getRemoverClock() {
+            return removerClock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            VertexState<?> that = (VertexState<?>) o;
+
+            return new EqualsBuilder()
+                    .append(anchorClock, that.anchorClock)
+                    .append(value, that.value)
+                    .append(clock, that.clock)
+                    .append(removerClock, that.removerClock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(anchorClock)
+                    .append(value)
+                    .append(clock)
+                    .append(removerClock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("anchorClock", anchorClock)
+                    .append("value", value)
+                    .append("clock", clock)
+                    .append("removerClock", removerClock)
+                    .toString();
+        }
+    }
 }
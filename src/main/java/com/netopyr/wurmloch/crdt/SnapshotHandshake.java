@@ -0,0 +1,92 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.UnicastProcessor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Connects a new subscriber to the commands of a CRDT without replaying its history.
+ * <p>
+ * The subscriber first receives commands that describe the current state and then all live commands. The live
+ * commands are buffered before the snapshot is taken, so a concurrent command is either part of the snapshot or
+ * delivered afterwards (or both, which is harmless because processing commands is idempotent).
+ * <p>
+ * The buffer of the live commands is unbounded, it holds the commands the subscriber has not requested yet. The
+ * replicas of the built-in CRDTs request commands in small batches and process them right away. A store, which uses a
+ * {@link com.netopyr.wurmloch.store.ShardedExecutor} or link threads, requests all commands into a bounded queue
+ * and applies its {@link com.netopyr.wurmloch.store.OverflowStrategy} instead.
+ * <p>
+ * A subscriber wrapped with {@link #liveOnly(Subscriber)} skips the snapshot and receives exactly the commands emitted
+ * after it subscribed. CRDTs, which do not use this class, send their state as usual.
+ */
+public final class SnapshotHandshake {
+
+    private SnapshotHandshake() {
+    }
+
+    public static <C> void subscribe(Publisher<? extends C> commands, Supplier<? extends Iterable<? extends C>> snapshot, Subscriber<? super C> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber must not be null");
+        if (subscriber instanceof LiveOnlySubscriber) {
+            Flowable.<C>fromPublisher(commands).subscribe(subscriber);
+            return;
+        }
+        final UnicastProcessor<C> liveCommands = UnicastProcessor.create();
+        final Disposable subscription = Flowable.fromPublisher(commands)
+                .subscribe(liveCommands::onNext, liveCommands::onError, liveCommands::onComplete);
+        Flowable.<C>fromIterable(snapshot.get())
+                .concatWith(liveCommands)
+                .doOnCancel(subscription::dispose)
+                .subscribe(subscriber);
+    }
+
+    /**
+     * Returns {@code true} if the snapshot, which a CRDT of the given class sends to a new subscriber, replaces any
+     * commands the subscriber missed. This is not the case for a {@link USet}, because it does not keep the elements
+     * it removed.
+     */
+    public static boolean isComplete(Class<?> crdtClass) {
+        return !USet.class.isAssignableFrom(Objects.requireNonNull(crdtClass, "CrdtClass must not be null"));
+    }
+
+    /**
+     * Wraps a subscriber, which already knows the current state of a CRDT and is only interested in later commands.
+     */
+    public static <C> Subscriber<C> liveOnly(Subscriber<C> subscriber) {
+        return new LiveOnlySubscriber<>(Objects.requireNonNull(subscriber, "Subscriber must not be null"));
+    }
+
+    private static final class LiveOnlySubscriber<C> implements Subscriber<C> {
+
+        private final Subscriber<C> delegate;
+
+        private LiveOnlySubscriber(Subscriber<C> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(C command) {
+            delegate.onNext(command);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+}
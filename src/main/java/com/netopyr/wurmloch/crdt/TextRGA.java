@@ -0,0 +1,641 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.vectorclock.StrictVectorClock;
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import javaslang.Tuple;
+import javaslang.Tuple2;
+import javaslang.control.Option;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A replicated growable array of characters that stores runs of consecutively inserted characters as blocks.
+ * <p>
+ * The semantics are the same as those of an {@link RGA} of characters: every character is identified by its own
+ * clock and an inserted string behaves like a range of characters, each anchored at its predecessor. Within a block
+ * the clocks of the characters differ only in the counter of the inserting node, so a block needs to store the clock
+ * of its first character only. Blocks are split when text is inserted into or deleted from their interior.
+ */
+public class TextRGA implements CharSequence, Crdt<TextRGA, TextRGA.TextRGACommand> {
+
+    // fields
+    private final String crdtId;
+    private final Processor<TextRGACommand, TextRGACommand> commands = PublishProcessor.<TextRGACommand>create().toSerialized();
+    private final Object emitLock = new Object();
+    private final Block start;
+
+    private final Map<String, TreeMap<Long, Block>> blocks = new HashMap<>();
+    private final OrderStatisticTree<Block> index = new OrderStatisticTree<>();
+    private StrictVectorClock clock;
+
+
+    // constructor
+    public TextRGA(String nodeId, String crdtId) {
+        this.crdtId = Objects.requireNonNull(crdtId, "CrtdId must not be null");
+
+        Objects.requireNonNull(nodeId, "NodeId must not be null");
+        this.clock = new StrictVectorClock(nodeId);
+        this.start = new Block(null, clock, "");
+        this.index.insertAfter(null, start, 0);
+    }
+
+
+    // crdt
+    @Override
+    public String getCrdtId() {
+        return crdtId;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super TextRGACommand> subscriber) {
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
+    }
+
+    @Override
+    public void subscribeTo(Publisher<? extends TextRGACommand> publisher) {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
+            final Option<TextRGACommand> newCommand = processCommand(command);
+            newCommand.peek(commands::onNext);
+        }));
+    }
+
+    private synchronized Option<TextRGACommand> processCommand(TextRGACommand command) {
+        if (command instanceof InsertCommand) {
+            final InsertCommand insertCommand = (InsertCommand) command;
+            if (findBlock(insertCommand.firstClock) == null) {
+                clock = clock.merge(insertCommand.firstClock.increment(insertCommand.text.length() - 1));
+                doInsert(insertCommand.anchorClock, insertCommand.text, insertCommand.firstClock);
+                return Option.of(command);
+            }
+
+        } else if (command instanceof DeleteCommand) {
+            boolean changed = false;
+            for (final Tuple2<StrictVectorClock, Integer> range : ((DeleteCommand) command).ranges) {
+                changed |= doDelete(range._1, range._2);
+            }
+            return changed? Option.of(command) : Option.none();
+
+        } else if (command instanceof StateCommand) {
+            final StateCommand stateCommand = (StateCommand) command;
+            boolean changed = false;
+            for (final BlockState block : stateCommand.blocks) {
+                changed |= doMerge(block);
+            }
+            clock = clock.merge(stateCommand.clock);
+            return changed? Option.of(command) : Option.none();
+        }
+
+        return Option.none();
+    }
+
+
+    // core functionality
+    @Override
+    public synchronized int length() {
+        return index.getTotalWeight();
+    }
+
+    @Override
+    public synchronized char charAt(int position) {
+        final Block block = index.get(position);
+        return block.text.charAt(position - index.rank(block));
+    }
+
+    @Override
+    public synchronized CharSequence subSequence(int startIndex, int endIndex) {
+        if (startIndex < 0 || endIndex > length() || startIndex > endIndex) {
+            throw new IndexOutOfBoundsException();
+        }
+        final StringBuilder result = new StringBuilder(endIndex - startIndex);
+        if (startIndex < endIndex) {
+            Block block = index.get(startIndex);
+            int offset = startIndex - index.rank(block);
+            while (result.length() < endIndex - startIndex) {
+                if (!block.removed) {
+                    final int end = Math.min(block.length(), offset + endIndex - startIndex - result.length());
+                    result.append(block.text, offset, end);
+                }
+                block = block.next;
+                offset = 0;
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder result = new StringBuilder(length());
+        for (Block block = start.next; block != null; block = block.next) {
+            if (!block.removed) {
+                result.append(block.text);
+            }
+        }
+        return result.toString();
+    }
+
+    public TextRGA append(CharSequence text) {
+        return insert(length(), text);
+    }
+
+    public TextRGA insert(int position, CharSequence text) {
+        // local commands are emitted in order, but outside of the monitor, which a connected replica may need
+        synchronized (emitLock) {
+            final TextRGACommand command = prepareInsert(position, text);
+            if (command != null) {
+                commands.onNext(command);
+            }
+        }
+        return this;
+    }
+
+    public TextRGA delete(int startIndex, int endIndex) {
+        synchronized (emitLock) {
+            final TextRGACommand command = prepareDelete(startIndex, endIndex);
+            if (command != null) {
+                commands.onNext(command);
+            }
+        }
+        return this;
+    }
+
+    int getBlockCount() {
+        int result = 0;
+        for (Block block = start.next; block != null; block = block.next) {
+            result++;
+        }
+        return result;
+    }
+
+
+    // implementation
+    private Block findBlock(StrictVectorClock charClock) {
+        return charClock.getCounter() == 0L ? start : findBlock(charClock.getKey(), charClock.getCounter());
+    }
+
+    private Block findBlock(String key, long counter) {
+        final TreeMap<Long, Block> nodeBlocks = blocks.get(key);
+        if (nodeBlocks == null) {
+            return null;
+        }
+        final Map.Entry<Long, Block> entry = nodeBlocks.floorEntry(counter);
+        return entry == null || counter >= entry.getKey() + entry.getValue().length() ? null : entry.getValue();
+    }
+
+    private static int offsetOf(Block block, StrictVectorClock charClock) {
+        return (int) (charClock.getCounter() - block.clock.getCounter());
+    }
+
+    private synchronized TextRGACommand prepareInsert(int position, CharSequence text) {
+        if (position < 0 || position > length()) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (text.length() == 0) {
+            return null;
+        }
+        final Block anchor = position == 0 ? start : index.get(position - 1);
+        final int anchorOffset = position == 0 ? -1 : position - 1 - index.rank(anchor);
+        final StrictVectorClock anchorClock = anchor == start ? start.clock : anchor.clock.increment(anchorOffset);
+        final StrictVectorClock firstClock = clock.increment();
+        clock = firstClock.increment(text.length() - 1);
+        doInsert(anchor, anchorOffset, anchorClock, text.toString(), firstClock);
+        return new InsertCommand(crdtId, anchorClock, text.toString(), firstClock);
+    }
+
+    private boolean doInsert(StrictVectorClock anchorClock, String text, StrictVectorClock firstClock) {
+        final Block anchor = findBlock(anchorClock);
+        if (anchor == null) {
+            return false;
+        }
+        final int anchorOffset = anchor == start ? -1 : offsetOf(anchor, anchorClock);
+        doInsert(anchor, anchorOffset, anchorClock, text, firstClock);
+        return true;
+    }
+
+    private void doInsert(Block anchor, int anchorOffset, StrictVectorClock anchorClock, String text, StrictVectorClock firstClock) {
+        Block l = anchor;
+        if (anchorOffset < anchor.length() - 1) {
+            // the successor of the anchor is in the same block, the remaining characters of which have larger clocks
+            if (firstClock.compareTo(anchor.clock.increment(anchorOffset + 1)) > 0) {
+                split(anchor, anchorOffset + 1);
+                insertAfter(anchor, anchorClock, text, firstClock);
+                return;
+            }
+        }
+        Block r = l.next;
+        while (r != null && (firstClock.compareTo(r.clock) < 0)) {
+            l = r;
+            r = l.next;
+        }
+        insertAfter(l, anchorClock, text, firstClock);
+    }
+
+    private void insertAfter(Block l, StrictVectorClock anchorClock, String text, StrictVectorClock firstClock) {
+        // every character of a block but the first is anchored at its predecessor
+        if (l != start && !l.removed && l.clock.getKey().equals(firstClock.getKey())
+                && anchorClock.equals(l.clock.increment(l.length() - 1))
+                && firstClock.equals(l.clock.increment(l.length()))) {
+            l.text.append(text);
+            index.setWeight(l, l.length());
+            return;
+        }
+        final Block w = new Block(anchorClock, firstClock, text);
+        blocks.computeIfAbsent(firstClock.getKey(), key -> new TreeMap<>()).put(firstClock.getCounter(), w);
+        index.insertAfter(l, w, w.length());
+        w.next = l.next;
+        l.next = w;
+    }
+
+    private synchronized TextRGACommand prepareDelete(int startIndex, int endIndex) {
+        if (startIndex < 0 || endIndex > length() || startIndex > endIndex) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (startIndex == endIndex) {
+            return null;
+        }
+        final List<Tuple2<StrictVectorClock, Integer>> ranges = new ArrayList<>();
+        final int position = startIndex;
+        int remaining = endIndex - startIndex;
+        while (remaining > 0) {
+            final Block block = index.get(position);
+            final int offset = position - index.rank(block);
+            final int length = Math.min(remaining, block.length() - offset);
+            ranges.add(Tuple.of(block.clock.increment(offset), length));
+            markRemoved(block, offset, length);
+            remaining -= length;
+        }
+        return new DeleteCommand(crdtId, ranges);
+    }
+
+    private boolean doDelete(StrictVectorClock firstClock, int count) {
+        boolean changed = false;
+        long counter = firstClock.getCounter();
+        int remaining = count;
+        while (remaining > 0) {
+            final Block block = findBlock(firstClock.getKey(), counter);
+            if (block == null) {
+                break;
+            }
+            final int offset = (int) (counter - block.clock.getCounter());
+            final int length = Math.min(remaining, block.length() - offset);
+            if (!block.removed) {
+                markRemoved(block, offset, length);
+                changed = true;
+            }
+            counter += length;
+            remaining -= length;
+        }
+        return changed;
+    }
+
+    private void markRemoved(Block block, int offset, int length) {
+        Block removed = offset > 0 ? split(block, offset) : block;
+        if (length < removed.length()) {
+            split(removed, length);
+        }
+        removed.removed = true;
+        index.setWeight(removed, 0);
+    }
+
+    private boolean doMerge(BlockState state) {
+        // characters that are missing here are inserted as ranges, each character anchored at its predecessor
+        boolean changed = false;
+        int offset = 0;
+        while (offset < state.text.length()) {
+            if (findBlock(state.firstClock.getKey(), state.firstClock.getCounter() + offset) != null) {
+                offset++;
+                continue;
+            }
+            int end = offset + 1;
+            while (end < state.text.length()
+                    && findBlock(state.firstClock.getKey(), state.firstClock.getCounter() + end) == null) {
+                end++;
+            }
+            final StrictVectorClock anchorClock = offset == 0 ? state.anchorClock : state.firstClock.increment(offset - 1);
+            changed |= doInsert(anchorClock, state.text.substring(offset, end), state.firstClock.increment(offset));
+            offset = end;
+        }
+        if (state.removed) {
+            changed |= doDelete(state.firstClock, state.text.length());
+        }
+        return changed;
+    }
+
+    private synchronized List<TextRGACommand> getStateCommands() {
+        if (start.next == null) {
+            return Collections.emptyList();
+        }
+        final List<BlockState> states = new ArrayList<>();
+        Block first = start.next;
+        final StringBuilder text = new StringBuilder(first.text);
+        for (Block block = first.next; ; block = block.next) {
+            // blocks that have only been split are joined again
+            if (block != null && block.removed == first.removed && block.clock.getKey().equals(first.clock.getKey())
+                    && block.clock.equals(first.clock.increment(text.length()))
+                    && block.anchorClock.equals(first.clock.increment(text.length() - 1))) {
+                text.append(block.text);
+                continue;
+            }
+            states.add(new BlockState(first.anchorClock, first.clock, text.toString(), first.removed));
+            if (block == null) {
+                break;
+            }
+            first = block;
+            text.setLength(0);
+            text.append(block.text);
+        }
+        return Collections.singletonList(new StateCommand(crdtId, states, clock));
+    }
+
+    private Block split(Block block, int offset) {
+        final Block tail = new Block(block.clock.increment(offset - 1), block.clock.increment(offset), block.text.substring(offset));
+        tail.removed = block.removed;
+        block.text.setLength(offset);
+        index.setWeight(block, block.removed ? 0 : offset);
+        index.insertAfter(block, tail, tail.removed ? 0 : tail.length());
+        blocks.get(tail.clock.getKey()).put(tail.clock.getCounter(), tail);
+        tail.next = block.next;
+        block.next = tail;
+        return tail;
+    }
+
+    private static final class Block extends OrderStatisticTree.Node<Block> {
+
+        private final StrictVectorClock anchorClock;
+        private final StrictVectorClock clock;
+        private final StringBuilder text;
+
+        private Block next;
+        private boolean removed;
+
+        private Block(StrictVectorClock anchorClock, StrictVectorClock clock, String text) {
+            this.anchorClock = anchorClock;
+            this.clock = clock;
+            this.text = new StringBuilder(text);
+        }
+
+        private int length() {
+            return text.length();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this)
+                    .append("text", text)
+                    .append("clock", clock)
+                    .append("removed", removed)
+                    .toString();
+        }
+    }
+
+
+    // commands
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public abstract static class TextRGACommand extends CrdtCommand {
+        protected TextRGACommand(String crdtId) {
+            super(crdtId);
+        }
+    }
+
+    public static final class InsertCommand extends TextRGACommand {
+
+        private final StrictVectorClock anchorClock;
+        private final String text;
+        private final StrictVectorClock firstClock;
+
+        InsertCommand(String crdtId, StrictVectorClock anchorClock, String text, StrictVectorClock firstClock) {
+            super(crdtId);
+            this.anchorClock = Objects.requireNonNull(anchorClock, "AnchorClock must not be null");
+            this.text = Objects.requireNonNull(text, "Text must not be null");
+            this.firstClock = Objects.requireNonNull(firstClock, "FirstClock must not be null");
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("Text must not be empty");
+            }
+        }
+
+        StrictVectorClock getAnchorClock() {
+            return anchorClock;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        StrictVectorClock getFirstClock() {
+            return firstClock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            InsertCommand that = (InsertCommand) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(anchorClock, that.anchorClock)
+                    .append(text, that.text)
+                    .append(firstClock, that.firstClock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(anchorClock)
+                    .append(text)
+                    .append(firstClock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("anchorClock", anchorClock)
+                    .append("text", text)
+                    .append("firstClock", firstClock)
+                    .toString();
+        }
+    }
+
+    public static final class DeleteCommand extends TextRGACommand {
+
+        private final List<Tuple2<StrictVectorClock, Integer>> ranges;
+
+        DeleteCommand(String crdtId, List<Tuple2<StrictVectorClock, Integer>> ranges) {
+            super(crdtId);
+            this.ranges = Objects.requireNonNull(ranges, "Ranges must not be null");
+        }
+
+        List<Tuple2<StrictVectorClock, Integer>> getRanges() {
+            return ranges;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            DeleteCommand that = (DeleteCommand) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(ranges, that.ranges)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(ranges)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("ranges", ranges)
+                    .toString();
+        }
+    }
+
+    public static final class StateCommand extends TextRGACommand {
+
+        private final List<BlockState> blocks;
+        private final StrictVectorClock clock;
+
+        StateCommand(String crdtId, List<BlockState> blocks, StrictVectorClock clock) {
+            super(crdtId);
+            this.blocks = Objects.requireNonNull(blocks, "Blocks must not be null");
+            this.clock = Objects.requireNonNull(clock, "Clock must not be null");
+        }
+
+        List<BlockState> getBlocks() {
+            return blocks;
+        }
+
+        StrictVectorClock getClock() {
+            return clock;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            StateCommand that = (StateCommand) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(blocks, that.blocks)
+                    .append(clock, that.clock)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(blocks)
+                    .append(clock)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("blocks", blocks)
+                    .append("clock", clock)
+                    .toString();
+        }
+    }
+
+    public static final class BlockState {
+
+        private final StrictVectorClock anchorClock;
+        private final StrictVectorClock firstClock;
+        private final String text;
+        private final boolean removed;
+
+        BlockState(StrictVectorClock anchorClock, StrictVectorClock firstClock, String text, boolean removed) {
+            this.anchorClock = Objects.requireNonNull(anchorClock, "AnchorClock must not be null");
+            this.firstClock = Objects.requireNonNull(firstClock, "FirstClock must not be null");
+            this.text = Objects.requireNonNull(text, "Text must not be null");
+            this.removed = removed;
+        }
+
+        StrictVectorClock getAnchorClock() {
+            return anchorClock;
+        }
+
+        StrictVectorClock getFirstClock() {
+            return firstClock;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        boolean isRemoved() {
+            return removed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            BlockState that = (BlockState) o;
+
+            return new EqualsBuilder()
+                    .append(anchorClock, that.anchorClock)
+                    .append(firstClock, that.firstClock)
+                    .append(text, that.text)
+                    .append(removed, that.removed)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(anchorClock)
+                    .append(firstClock)
+                    .append(text)
+                    .append(removed)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("anchorClock", anchorClock)
+                    .append("firstClock", firstClock)
+                    .append("text", text)
+                    .append("removed", removed)
+                    .toString();
+        }
+    }
+}
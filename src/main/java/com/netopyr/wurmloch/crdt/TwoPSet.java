@@ -1,7 +1,7 @@
 package com.netopyr.wurmloch.crdt;
 
 import io.reactivex.Flowable;
-import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.control.Option;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -12,8 +12,10 @@ import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
 import java.util.AbstractSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -23,7 +25,7 @@ public class TwoPSet<E> extends AbstractSet<E> implements Crdt<TwoPSet<E>, TwoPS
     private final String crdtId;
     private final Set<E> elements = new HashSet<>();
     private final Set<E> tombstone = new HashSet<>();
-    private final Processor<TwoPSetCommand<E>, TwoPSetCommand<E>> commands = ReplayProcessor.create();
+    private final Processor<TwoPSetCommand<E>, TwoPSetCommand<E>> commands = PublishProcessor.<TwoPSetCommand<E>>create().toSerialized();
 
 
     // constructor
@@ -40,23 +42,24 @@ public class TwoPSet<E> extends AbstractSet<E> implements Crdt<TwoPSet<E>, TwoPS
 
     @Override
     public void subscribe(Subscriber<? super TwoPSetCommand<E>> subscriber) {
-        commands.subscribe(subscriber);
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
     }
 
     @Override
     public void subscribeTo(Publisher<? extends TwoPSetCommand<E>> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(command -> {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
             final Option<TwoPSetCommand<E>> newCommand = processCommand(command);
             newCommand.peek(commands::onNext);
-
-        });
+        }));
     }
 
-    private Option<TwoPSetCommand<E>> processCommand(TwoPSetCommand<E> command) {
+    private synchronized Option<TwoPSetCommand<E>> processCommand(TwoPSetCommand<E> command) {
         if (command instanceof TwoPSet.AddCommand) {
             return doAdd(((TwoPSet.AddCommand<E>) command).getElement())? Option.of(command) : Option.none();
         } else if (command instanceof TwoPSet.RemoveCommand) {
             return doRemove(((TwoPSet.RemoveCommand<E>) command).getElement())? Option.of(command) : Option.none();
+        } else if (command instanceof TwoPSet.StateCommand) {
+            return doMerge((TwoPSet.StateCommand<E>) command)? Option.of(command) : Option.none();
         }
         return Option.none();
     }
@@ -64,7 +67,7 @@ public class TwoPSet<E> extends AbstractSet<E> implements Crdt<TwoPSet<E>, TwoPS
 
     // core functionality
     @Override
-    public int size() {
+    public synchronized int size() {
         return elements.size();
     }
 
@@ -84,14 +87,32 @@ public class TwoPSet<E> extends AbstractSet<E> implements Crdt<TwoPSet<E>, TwoPS
 
 
     // implementation
-    private boolean doAdd(E value) {
+    private synchronized boolean doAdd(E value) {
         return !tombstone.contains(value) && elements.add(value);
     }
 
-    private boolean doRemove(E value) {
+    private synchronized boolean doRemove(E value) {
         return tombstone.add(value) | elements.remove(value);
     }
 
+    private synchronized boolean doMerge(StateCommand<E> command) {
+        boolean changed = false;
+        for (final E value : command.getTombstone()) {
+            changed |= doRemove(value);
+        }
+        for (final E value : command.getElements()) {
+            changed |= doAdd(value);
+        }
+        return changed;
+    }
+
+    private synchronized List<TwoPSetCommand<E>> getStateCommands() {
+        if (elements.isEmpty() && tombstone.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new StateCommand<>(crdtId, new HashSet<>(elements), new HashSet<>(tombstone)));
+    }
+
     private class TwoPSetIterator implements Iterator<E> {
 
         final Iterator<E> it = elements.iterator();
@@ -110,8 +131,10 @@ public class TwoPSet<E> extends AbstractSet<E> implements Crdt<TwoPSet<E>, TwoPS
 
         @Override
         public void remove() {
-            it.remove();
-            tombstone.add(lastElement);
+            synchronized (TwoPSet.this) {
+                it.remove();
+                tombstone.add(lastElement);
+            }
             commands.onNext(new RemoveCommand<>(crdtId, lastElement));
         }
     }
@@ -216,4 +239,59 @@ public class TwoPSet<E> extends AbstractSet<E> implements Crdt<TwoPSet<E>, TwoPS
         }
     }
 
+
+    public static final class StateCommand<E> extends TwoPSetCommand<E> {
+
+        private final Set<E> elements;
+        private final Set<E> tombstone;
+
+        StateCommand(String crdtId, Set<E> elements, Set<E> tombstone) {
+            super(crdtId);
+            this.elements = new HashSet<>(elements);
+            this.tombstone = new HashSet<>(tombstone);
+        }
+
+        Set<E> getElements() {
+            return elements;
+        }
+
+        Set<E> getTombstone() {
+            return tombstone;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            StateCommand<?> that = (StateCommand<?>) o;
+
+            return new EqualsBuilder()
+                    .appendSuper(super.equals(o))
+                    .append(elements, that.elements)
+                    .append(tombstone, that.tombstone)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .appendSuper(super.hashCode())
+                    .append(elements)
+                    .append(tombstone)
+                    .toHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .appendSuper(super.toString())
+                    .append("crdtId", getCrdtId())
+                    .append("elements", elements)
+                    .append("tombstone", tombstone)
+                    .toString();
+        }
+    }
+
 }
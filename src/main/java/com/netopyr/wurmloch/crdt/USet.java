@@ -1,7 +1,7 @@
 package com.netopyr.wurmloch.crdt;
 
 import io.reactivex.Flowable;
-import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.processors.PublishProcessor;
 import javaslang.control.Option;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -12,8 +12,10 @@ import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -23,7 +25,7 @@ public class USet<E> extends AbstractSet<E> implements Crdt<USet<E>, USet.USetCo
     // fields
     private final String crdtId;
     private final Set<E> elements = new HashSet<>();
-    private final Processor<USetCommand<E>, USetCommand<E>> commands = ReplayProcessor.create();
+    private final Processor<USetCommand<E>, USetCommand<E>> commands = PublishProcessor.<USetCommand<E>>create().toSerialized();
 
 
     // constructor
@@ -40,16 +42,15 @@ public class USet<E> extends AbstractSet<E> implements Crdt<USet<E>, USet.USetCo
 
     @Override
     public void subscribe(Subscriber<? super USetCommand<E>> subscriber) {
-        commands.subscribe(subscriber);
+        SnapshotHandshake.subscribe(commands, this::getStateCommands, subscriber);
     }
 
     @Override
     public void subscribeTo(Publisher<? extends USetCommand<E>> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(command -> {
+        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new BoundedSubscriber<>(command -> {
             final Option<USetCommand<E>> newCommand = processCommand(command);
             newCommand.peek(commands::onNext);
-
-        });
+        }));
     }
 
     private Option<USetCommand<E>> processCommand(USetCommand<E> command) {
@@ -64,7 +65,7 @@ public class USet<E> extends AbstractSet<E> implements Crdt<USet<E>, USet.USetCo
 
     // core functionality
     @Override
-    public int size() {
+    public synchronized int size() {
         return elements.size();
     }
 
@@ -84,14 +85,22 @@ public class USet<E> extends AbstractSet<E> implements Crdt<USet<E>, USet.USetCo
 
 
     // implementation
-    private boolean doAdd(E value) {
+    private synchronized boolean doAdd(E value) {
         return elements.add(value);
     }
 
-    private boolean doRemove(E value) {
+    private synchronized boolean doRemove(E value) {
         return elements.remove(value);
     }
 
+    private synchronized List<USetCommand<E>> getStateCommands() {
+        final List<USetCommand<E>> result = new ArrayList<>(elements.size());
+        for (final E element : elements) {
+            result.add(new AddCommand<>(crdtId, element));
+        }
+        return result;
+    }
+
     private class TwoPSetIterator implements Iterator<E> {
 
         final Iterator<E> it = elements.iterator();
@@ -110,7 +119,9 @@ public class USet<E> extends AbstractSet<E> implements Crdt<USet<E>, USet.USetCo
 
         @Override
         public void remove() {
-            it.remove();
+            synchronized (USet.this) {
+                it.remove();
+            }
             commands.onNext(new RemoveCommand<>(crdtId, lastElement));
         }
     }
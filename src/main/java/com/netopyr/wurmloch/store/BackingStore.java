@@ -0,0 +1,34 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+
+import java.util.List;
+
+/**
+ * Storage for the state of CRDTs that a {@link CrdtStore} has evicted from memory.
+ * <p>
+ * The state of a CRDT is stored as the commands it sends to a new subscriber, followed by all commands that arrived
+ * while it was evicted. Implementations need to be thread-safe.
+ */
+public interface BackingStore {
+
+    /**
+     * Replaces the stored commands of a CRDT.
+     */
+    void save(String crdtId, List<? extends CrdtCommand> state);
+
+    /**
+     * Appends a command to the stored commands of a CRDT.
+     *
+     * @return the number of commands that were appended since the state was saved
+     */
+    int append(String crdtId, CrdtCommand command);
+
+    /**
+     * Returns the stored commands of a CRDT or an empty list if there are none.
+     */
+    List<CrdtCommand> load(String crdtId);
+
+    void remove(String crdtId);
+
+}
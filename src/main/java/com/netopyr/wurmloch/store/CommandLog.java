@@ -0,0 +1,516 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.codec.CommandCodec;
+import com.netopyr.wurmloch.codec.WireInput;
+import com.netopyr.wurmloch.codec.WireOutput;
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.crdt.Crdt;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the definitions and commands of a {@link CrdtStore}, which allows to rebuild the CRDTs of the
+ * store after a restart.
+ * <p>
+ * The log is split into segment files in a directory. Every record is written as its length, a CRC32 checksum and the
+ * payload encoded with a {@link CommandCodec}. A single writer thread collects the waiting records, writes them and
+ * forces them to disk with one fsync (group commit). The future returned by an append completes after the record is
+ * durable and fails if the record could not be written or the log is closed.
+ * <p>
+ * Every time the log is opened, it starts a new segment. Records after a torn or corrupt record are ignored when
+ * replaying a segment.
+ */
+public class CommandLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x574C4F47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024L * 1024L;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    private static final byte DEFINITION = 1;
+    private static final byte COMMAND = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // fields
+    private final Path directory;
+    private final CommandCodec codec;
+    private final long segmentSize;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final List<Long> recoveredSegments;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile long syncCount;
+
+    // owned by the writer thread
+    private final WireOutput output = new WireOutput();
+    private final CRC32 checksum = new CRC32();
+    private final List<Entry> pending = new ArrayList<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;
+    private long checkpointSegment;
+    private IOException failure;
+
+
+    // constructor
+    public CommandLog(Path directory) throws IOException {
+        this(directory, new BinaryCommandCodec(), DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_BATCH_SIZE, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a log, which starts a new segment when the current one reaches {@code segmentSize} bytes. The writer
+     * forces up to {@code maxBatchSize} records to disk with a single fsync. With a linger time of 0 it only batches
+     * the records that arrived while the previous fsync was running, otherwise it waits up to the linger time for more
+     * records.
+     */
+    public CommandLog(Path directory, CommandCodec codec, long segmentSize, int maxBatchSize, long maxLinger, TimeUnit unit) throws IOException {
+        this.directory = Objects.requireNonNull(directory, "Directory must not be null");
+        this.codec = Objects.requireNonNull(codec, "Codec must not be null");
+        Objects.requireNonNull(unit, "Unit must not be null");
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("SegmentSize must be greater than " + HEADER_SIZE);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("MaxBatchSize must be positive");
+        }
+        if (maxLinger < 0L) {
+            throw new IllegalArgumentException("MaxLinger must not be negative");
+        }
+        this.segmentSize = segmentSize;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = unit.toNanos(maxLinger);
+        Files.createDirectories(directory);
+        this.recoveredSegments = listSegments(directory);
+        openSegment(recoveredSegments.isEmpty() ? 1L : recoveredSegments.get(recoveredSegments.size() - 1) + 1L);
+        this.writer = new Thread(this::run, "wurmloch-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+
+    // core functionality
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the number of times the writer forced records to disk.
+     */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public CompletableFuture<Void> appendDefinition(String crdtId, Class<? extends Crdt> crdtClass) {
+        return enqueue(new Entry(Kind.DEFINITION,
+                Objects.requireNonNull(crdtId, "CrdtId must not be null"),
+                Objects.requireNonNull(crdtClass, "CrdtClass must not be null").getName(),
+                null));
+    }
+
+    public CompletableFuture<Void> append(CrdtCommand command) {
+        return enqueue(new Entry(Kind.COMMAND, null, null, Objects.requireNonNull(command, "Command must not be null")));
+    }
+
+    /**
+     * Returns a future, which completes after all records appended before this call are durable. It fails if the log
+     * failed before or is closed.
+     */
+    public CompletableFuture<Void> awaitDurable() {
+        return enqueue(new Entry(Kind.BARRIER, null, null, null));
+    }
+
+    /**
+     * Reads the segments, which existed when the log was opened, and passes their records in the order they were
+     * written. Definitions of classes, which cannot be found, are skipped.
+     *
+     * @return the number of records read
+     * @throws IOException if a segment cannot be read or contains a record that cannot be decoded
+     */
+    @SuppressWarnings("rawtypes")
+    public long replay(BiConsumer<String, Class<? extends Crdt>> onDefinition, Consumer<CrdtCommand> onCommand) throws IOException {
+        Objects.requireNonNull(onDefinition, "OnDefinition must not be null");
+        Objects.requireNonNull(onCommand, "OnCommand must not be null");
+        long result = 0L;
+        for (final long number : recoveredSegments) {
+            final Path path = segmentPath(number);
+            if (Files.exists(path)) {
+                result += replaySegment(path, onDefinition, onCommand);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(new Entry(Kind.CLOSE, null, null, null));
+        }
+        if (Thread.currentThread() != writer) {
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    // checkpoints
+    /**
+     * Starts a new segment. The records appended after this call together with the state of the store must be
+     * sufficient to rebuild it, because {@link #completeCheckpoint()} deletes all older segments.
+     */
+    CompletableFuture<Void> beginCheckpoint() {
+        return enqueue(new Entry(Kind.BEGIN_CHECKPOINT, null, null, null));
+    }
+
+    CompletableFuture<Void> completeCheckpoint() {
+        return enqueue(new Entry(Kind.COMPLETE_CHECKPOINT, null, null, null));
+    }
+
+
+    // implementation
+    private synchronized CompletableFuture<Void> enqueue(Entry entry) {
+        if (closed) {
+            entry.future.completeExceptionally(new IllegalStateException("CommandLog is closed"));
+        } else {
+            queue.add(entry);
+        }
+        return entry.future;
+    }
+
+    private void run() {
+        final List<Entry> batch = new ArrayList<>(maxBatchSize);
+        boolean running = true;
+        try {
+            while (running) {
+                batch.add(queue.take());
+                collect(batch);
+                running = process(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void collect(List<Entry> batch) throws InterruptedException {
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        if (maxLingerNanos == 0L) {
+            return;
+        }
+        final long deadline = System.nanoTime() + maxLingerNanos;
+        while (batch.size() < maxBatchSize && batch.get(batch.size() - 1).kind != Kind.CLOSE) {
+            final long remaining = deadline - System.nanoTime();
+            final Entry entry = remaining > 0L ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (entry == null) {
+                return;
+            }
+            batch.add(entry);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private boolean process(List<Entry> batch) {
+        for (final Entry entry : batch) {
+            if (entry.kind == Kind.CLOSE) {
+                sync();
+                entry.future.complete(null);
+                return false;
+            }
+            if (failure != null) {
+                entry.future.completeExceptionally(failure);
+                continue;
+            }
+            try {
+                switch (entry.kind) {
+                    case DEFINITION:
+                    case COMMAND:
+                        write(entry);
+                        break;
+                    case BARRIER:
+                        // completed in order with the records written before it
+                        pending.add(entry);
+                        break;
+                    case BEGIN_CHECKPOINT:
+                        roll();
+                        checkpointSegment = segment;
+                        pending.add(entry);
+                        break;
+                    case COMPLETE_CHECKPOINT:
+                        sync();
+                        deleteSegmentsBefore(checkpointSegment);
+                        entry.future.complete(null);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected entry " + entry.kind);
+                }
+            } catch (IOException ex) {
+                fail(ex);
+                entry.future.completeExceptionally(ex);
+            }
+        }
+        sync();
+        return true;
+    }
+
+    private void write(Entry entry) throws IOException {
+        if (segmentBytes + buffer.position() >= segmentSize) {
+            roll();
+        }
+        output.clear();
+        try {
+            output.writeByte(entry.kind == Kind.DEFINITION ? DEFINITION : COMMAND);
+            if (entry.kind == Kind.DEFINITION) {
+                output.writeInternedString(entry.crdtId);
+                output.writeInternedString(entry.className);
+            } else {
+                codec.encode(entry.command, output);
+            }
+        } catch (RuntimeException ex) {
+            // the interned strings of the failed record were never written, the reader would get out of sync
+            if (output.size() > 1) {
+                roll();
+            }
+            entry.future.completeExceptionally(ex);
+            return;
+        }
+        final int length = output.size();
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+            writeBuffer();
+            if (buffer.capacity() < RECORD_HEADER_SIZE + length) {
+                buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+            }
+        }
+        final int start = buffer.position();
+        buffer.putInt(length);
+        buffer.putInt(0);
+        output.writeTo(buffer);
+        final ByteBuffer payload = buffer.duplicate();
+        ((Buffer) payload).position(start + RECORD_HEADER_SIZE);
+        ((Buffer) payload).limit(buffer.position());
+        checksum.reset();
+        checksum.update(payload);
+        buffer.putInt(start + 4, (int) checksum.getValue());
+        pending.add(entry);
+    }
+
+    private void sync() {
+        if (failure == null && !pending.isEmpty()) {
+            try {
+                writeBuffer();
+                channel.force(false);
+                syncCount++;
+            } catch (IOException ex) {
+                fail(ex);
+                return;
+            }
+        }
+        for (final Entry entry : pending) {
+            entry.future.complete(null);
+        }
+        pending.clear();
+    }
+
+    private void fail(IOException ex) {
+        failure = ex;
+        for (final Entry entry : pending) {
+            entry.future.completeExceptionally(ex);
+        }
+        pending.clear();
+        ((Buffer) buffer).clear();
+    }
+
+    private void writeBuffer() throws IOException {
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) {
+            segmentBytes += channel.write(buffer);
+        }
+        ((Buffer) buffer).clear();
+    }
+
+    private void roll() throws IOException {
+        writeBuffer();
+        channel.force(false);
+        closeChannel();
+        openSegment(segment + 1L);
+        output.reset();
+    }
+
+    private void openSegment(long number) throws IOException {
+        final FileChannel newChannel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION);
+            ((Buffer) header).flip();
+            while (header.hasRemaining()) {
+                newChannel.write(header);
+            }
+            newChannel.force(true);
+        } catch (IOException ex) {
+            newChannel.close();
+            throw ex;
+        }
+        syncDirectory();
+        channel = newChannel;
+        segment = number;
+        segmentBytes = HEADER_SIZE;
+    }
+
+    private void deleteSegmentsBefore(long number) throws IOException {
+        final List<Long> segments = listSegments(directory);
+        // delete the newest segments first, so that a crash leaves a prefix of the log
+        Collections.reverse(segments);
+        for (final long existing : segments) {
+            if (existing < number) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+        }
+        syncDirectory();
+    }
+
+    private void syncDirectory() {
+        // makes new and deleted segments durable, which is not supported on all platforms
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private long replaySegment(Path path, BiConsumer<String, Class<? extends Crdt>> onDefinition, Consumer<CrdtCommand> onCommand) throws IOException {
+        final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            return 0L;
+        }
+        final CRC32 crc = new CRC32();
+        final WireInput input = new WireInput(data);
+        long result = 0L;
+        while (data.remaining() >= RECORD_HEADER_SIZE) {
+            final int length = data.getInt();
+            final int expected = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                break;
+            }
+            final ByteBuffer payload = data.slice();
+            ((Buffer) payload).limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            ((Buffer) data).position(data.position() + length);
+            input.setInput(payload);
+            try {
+                if (input.readByte() == DEFINITION) {
+                    final String crdtId = input.readInternedString();
+                    final Class<? extends Crdt> crdtClass = resolve(input.readInternedString());
+                    if (crdtClass != null) {
+                        onDefinition.accept(crdtId, crdtClass);
+                    }
+                } else {
+                    onCommand.accept(codec.decode(input));
+                }
+            } catch (IllegalArgumentException | BufferUnderflowException ex) {
+                throw new IOException("Cannot decode record in " + path, ex);
+            }
+            result++;
+        }
+        return result;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        final List<Long> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (final Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    result.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Class<? extends Crdt> resolve(String className) {
+        try {
+            final Class<?> type = Class.forName(className, false, CommandLog.class.getClassLoader());
+            return Crdt.class.isAssignableFrom(type) ? type.asSubclass(Crdt.class) : null;
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+
+    private enum Kind {
+        DEFINITION, COMMAND, BARRIER, BEGIN_CHECKPOINT, COMPLETE_CHECKPOINT, CLOSE
+    }
+
+    private static final class Entry {
+
+        private final Kind kind;
+        private final String crdtId;
+        private final String className;
+        private final CrdtCommand command;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Entry(Kind kind, String crdtId, String className, CrdtCommand command) {
+            this.kind = kind;
+            this.crdtId = crdtId;
+            this.className = className;
+            this.command = command;
+        }
+    }
+}
@@ -9,11 +9,12 @@ import org.reactivestreams.Publisher;
 public class CrdtDefinition {
 
     private final String crdtId;
+    @SuppressWarnings("rawtypes")
     private final Class<? extends Crdt> crdtClass;
     private final Publisher<? extends CrdtCommand> publisher;
 
-    @SuppressWarnings("unchecked")
-    CrdtDefinition(String crdtId, Class<? extends Crdt> crdtClass, Publisher<? extends CrdtCommand> publisher) {
+    @SuppressWarnings("rawtypes")
+    public CrdtDefinition(String crdtId, Class<? extends Crdt> crdtClass, Publisher<? extends CrdtCommand> publisher) {
         this.crdtId = crdtId;
         this.crdtClass = crdtClass;
         this.publisher = publisher;
@@ -23,6 +24,7 @@ public class CrdtDefinition {
         return crdtId;
     }
 
+    @SuppressWarnings("rawtypes")
     public Class<? extends Crdt> getCrdtClass() {
         return crdtClass;
     }
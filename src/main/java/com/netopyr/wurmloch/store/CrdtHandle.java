@@ -0,0 +1,89 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.Crdt;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A typed reference to a CRDT of a {@link CrdtStore}, which avoids the lookup and the type check on repeated access.
+ * <p>
+ * The handle resolves the CRDT on first access and keeps the instance once it was found. If the store evicts CRDTs,
+ * the handle resolves the CRDT again after an eviction. Every access is reported to the eviction policy, so a CRDT
+ * that is only used through a handle is not considered idle.
+ *
+ * @param <T> the type of the CRDT
+ */
+@SuppressWarnings("rawtypes")
+public final class CrdtHandle<T extends Crdt> {
+
+    private final CrdtStore store;
+    private final Class<T> crdtClass;
+    private final String crdtId;
+    private volatile T crdt;
+    private volatile long evictionCount;
+
+    CrdtHandle(CrdtStore store, Class<T> crdtClass, String crdtId) {
+        this.store = Objects.requireNonNull(store, "Store must not be null");
+        this.crdtClass = Objects.requireNonNull(crdtClass, "CrdtClass must not be null");
+        this.crdtId = Objects.requireNonNull(crdtId, "CrdtId must not be null");
+    }
+
+    public String getCrdtId() {
+        return crdtId;
+    }
+
+    public Class<T> getCrdtClass() {
+        return crdtClass;
+    }
+
+    /**
+     * Returns the CRDT or {@code null} if the store does not contain a CRDT of this type and id yet.
+     */
+    public T getOrNull() {
+        T result = crdt;
+        final long currentEvictionCount = store.getEvictionCount();
+        if (result == null || evictionCount != currentEvictionCount) {
+            result = store.getCrdt(crdtClass, crdtId);
+            crdt = result;
+            evictionCount = currentEvictionCount;
+        } else {
+            store.onAccess(crdtId);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the CRDT.
+     *
+     * @throws NoSuchElementException if the store does not contain a CRDT of this type and id
+     */
+    public T get() {
+        final T result = getOrNull();
+        if (result == null) {
+            throw new NoSuchElementException("No " + crdtClass.getSimpleName() + " with id " + crdtId);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the action to the CRDT on the thread that owns it.
+     *
+     * @see CrdtStore#submit(Class, String, Function)
+     */
+    public <R> CompletableFuture<R> submit(Function<? super T, ? extends R> action) {
+        return store.submit(crdtClass, crdtId, action);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("crdtId", crdtId)
+                .append("crdtClass", crdtClass)
+                .toString();
+    }
+}
@@ -1,39 +1,80 @@
 package com.netopyr.wurmloch.store;
 
+import com.netopyr.wurmloch.crdt.BoundedSubscriber;
 import com.netopyr.wurmloch.crdt.Crdt;
 import com.netopyr.wurmloch.crdt.CrdtCommand;
 import com.netopyr.wurmloch.crdt.GCounter;
 import com.netopyr.wurmloch.crdt.GSet;
 import com.netopyr.wurmloch.crdt.LWWRegister;
 import com.netopyr.wurmloch.crdt.MVRegister;
+import com.netopyr.wurmloch.crdt.ORSWOT;
 import com.netopyr.wurmloch.crdt.ORSet;
 import com.netopyr.wurmloch.crdt.PNCounter;
 import com.netopyr.wurmloch.crdt.RGA;
+import com.netopyr.wurmloch.crdt.TextRGA;
+import com.netopyr.wurmloch.crdt.SnapshotHandshake;
 import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.processors.BehaviorProcessor;
-import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.processors.UnicastProcessor;
+import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subscribers.DefaultSubscriber;
-import javaslang.collection.HashMap;
-import javaslang.collection.Map;
 import javaslang.control.Option;
 import org.reactivestreams.Processor;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @SuppressWarnings({"WeakerAccess", "unused", "SameParameterValue"})
 public class CrdtStore implements Publisher<CrdtDefinition> {
 
     // fields
-    private final String nodeId;
-    private final Processor<CrdtDefinition, CrdtDefinition> definitions = ReplayProcessor.create();
-    private Map<CrdtStore, CrdtStoreSubscriber> subscribers = HashMap.empty();
+    private static final int MAX_APPENDED_COMMANDS = 1024;
+    private static final int DEFAULT_REPLICATION_CAPACITY = 1024;
 
-    private Map<String, Crdt> crdts = HashMap.empty();
-    private Map<Class<? extends Crdt>, BiFunction<String, String, ? extends Crdt>> factories = HashMap.empty();
+    private final String nodeId;
+    private final boolean lazy;
+    private final EvictionPolicy evictionPolicy;
+    private final BackingStore backingStore;
+    private final ShardedExecutor executor;
+    private final ThreadFactory linkThreads;
+    private final int linkCapacity;
+    private final int replicationCapacity;
+    private final OverflowStrategy overflowStrategy;
+    private final CommandLog commandLog;
+    private final ReplicationMetrics replicationMetrics = new ReplicationMetrics();
+    private final Processor<CrdtDefinition, CrdtDefinition> definitions = PublishProcessor.<CrdtDefinition>create().toSerialized();
+    private final ConcurrentMap<CrdtStore, CrdtStoreSubscriber> subscribers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Crdt> crdts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<? extends Crdt>, BiFunction<String, String, ? extends Crdt>> factories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<CrdtDefinition>> pendingDefinitions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ManagedCrdt> managedCrdts = new ConcurrentHashMap<>();
+    private final AtomicReference<Throwable> commandLogFailure = new AtomicReference<>();
+    private final AtomicLong evictionCount = new AtomicLong();
 
 
     // constructor
@@ -42,29 +83,184 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
     }
 
     public CrdtStore(String nodeId) {
+        this(nodeId, false);
+    }
+
+    /**
+     * Creates a store, which in lazy mode only records the CRDTs announced by connected stores. A remote CRDT is
+     * created and subscribed when it is looked up or created locally for the first time. Until then it is not
+     * announced to the subscribers of this store either.
+     *
+     * @param lazy {@code true} if remote CRDTs should be created on first access
+     */
+    public CrdtStore(String nodeId, boolean lazy) {
+        this(nodeId, lazy, null, null, null, null, 0, 0, null, null);
+    }
+
+    /**
+     * Creates a store, which keeps only the CRDTs selected by the eviction policy in memory. The state of all other
+     * CRDTs is kept in the backing store and commands from connected stores are appended to it. An evicted CRDT is
+     * loaded again when it is looked up. CRDTs announced by connected stores start out evicted.
+     * <p>
+     * A CRDT must not be used after it was evicted. Use a {@link CrdtHandle} to keep a reference to a CRDT.
+     *
+     * @param evictionPolicy the policy that selects the CRDTs to evict
+     * @param backingStore the storage for the state of evicted CRDTs, e.g. an {@link EncodedBackingStore}
+     */
+    public CrdtStore(String nodeId, EvictionPolicy evictionPolicy, BackingStore backingStore) {
+        this(nodeId, false,
+                Objects.requireNonNull(evictionPolicy, "EvictionPolicy must not be null"),
+                Objects.requireNonNull(backingStore, "BackingStore must not be null"),
+                null, null, 0, 0, null, null);
+    }
+
+    /**
+     * Creates a store, which processes the commands from connected stores of each CRDT on the thread that owns the
+     * CRDT in the given executor. Local mutations should be run with {@link #submit(Class, String, Function)} to
+     * use a CRDT from a single thread only.
+     *
+     * @param executor the executor that owns the CRDTs of this store
+     */
+    public CrdtStore(String nodeId, ShardedExecutor executor) {
+        this(nodeId, executor, DEFAULT_REPLICATION_CAPACITY, OverflowStrategy.BLOCK);
+    }
+
+    /**
+     * Creates a store, which processes the commands from connected stores like {@link #CrdtStore(String,
+     * ShardedExecutor)}. The commands of each remote CRDT wait in a queue until the owning thread processes them.
+     * The overflow strategy decides what happens when a queue is full. {@link #getReplicationMetrics()} reports the
+     * state of the queues.
+     *
+     * @param executor the executor that owns the CRDTs of this store
+     * @param replicationCapacity the number of commands a queue holds
+     * @param overflowStrategy the strategy applied to a command that arrives while its queue is full
+     */
+    public CrdtStore(String nodeId, ShardedExecutor executor, int replicationCapacity, OverflowStrategy overflowStrategy) {
+        this(nodeId, false, null, null, Objects.requireNonNull(executor, "Executor must not be null"), null, 0,
+                replicationCapacity, Objects.requireNonNull(overflowStrategy, "OverflowStrategy must not be null"), null);
+        if (replicationCapacity < 1) {
+            throw new IllegalArgumentException("ReplicationCapacity must be positive");
+        }
+    }
+
+    /**
+     * Creates a store, which receives the definitions of each connected store and the commands of each remote CRDT on
+     * a dedicated thread like {@link #CrdtStore(String, ThreadFactory, int, OverflowStrategy)}. A full queue is
+     * resynced like with {@link OverflowStrategy#BLOCK}.
+     */
+    public CrdtStore(String nodeId, ThreadFactory linkThreads, int linkCapacity) {
+        this(nodeId, linkThreads, linkCapacity, OverflowStrategy.BLOCK);
+    }
+
+    /**
+     * Creates a store, which receives the definitions of each connected store and the commands of each remote CRDT on
+     * a dedicated thread. The commands are passed to these threads through bounded queues. An emitting thread never
+     * waits for a full queue, the overflow strategy is applied like on the threads of a {@link ShardedExecutor}.
+     * {@link #getReplicationMetrics()} reports the state of the queues. With
+     * {@link VirtualThreads#threadFactory(String)} a store can have thousands of links on JDK 21 and later.
+     *
+     * @param linkThreads the factory for the threads of the links
+     * @param linkCapacity the number of commands a link queues before the overflow strategy is applied
+     * @param overflowStrategy the strategy applied to a command that arrives while its queue is full
+     */
+    public CrdtStore(String nodeId, ThreadFactory linkThreads, int linkCapacity, OverflowStrategy overflowStrategy) {
+        this(nodeId, false, null, null, null, Objects.requireNonNull(linkThreads, "LinkThreads must not be null"), linkCapacity,
+                linkCapacity, Objects.requireNonNull(overflowStrategy, "OverflowStrategy must not be null"), null);
+        if (linkCapacity < 1) {
+            throw new IllegalArgumentException("LinkCapacity must be positive");
+        }
+    }
+
+    /**
+     * Creates a store, which writes the definitions and commands of its CRDTs to a command log. The CRDTs in the log
+     * are rebuilt before the constructor returns. Only CRDTs with a default factory can be rebuilt.
+     * {@link #checkpoint()} replaces the log with the current state of the store.
+     * <p>
+     * The log is written behind: a command is appended after it was applied and sent to connected stores, and the
+     * modifying methods of a CRDT do not wait for the log. Callers, which need a command to survive a crash, have to
+     * wait for {@link #awaitDurable()}.
+     *
+     * @param commandLog the log, which must not be used by another store
+     * @throws IOException if the log cannot be read
+     */
+    public CrdtStore(String nodeId, CommandLog commandLog) throws IOException {
+        this(nodeId, false, null, null, null, null, 0, 0, null,
+                Objects.requireNonNull(commandLog, "CommandLog must not be null"));
+        recover();
+    }
+
+    private CrdtStore(String nodeId, boolean lazy, EvictionPolicy evictionPolicy, BackingStore backingStore,
+                      ShardedExecutor executor, ThreadFactory linkThreads, int linkCapacity,
+                      int replicationCapacity, OverflowStrategy overflowStrategy, CommandLog commandLog) {
         this.nodeId = nodeId;
+        this.lazy = lazy;
+        this.evictionPolicy = evictionPolicy;
+        this.backingStore = backingStore;
+        this.executor = executor;
+        this.linkThreads = linkThreads;
+        this.linkCapacity = linkCapacity;
+        this.replicationCapacity = replicationCapacity;
+        this.overflowStrategy = overflowStrategy;
+        this.commandLog = commandLog;
         registerDefaultFactories();
     }
 
-    @SuppressWarnings("unchecked")
+    // the class literals of generic CRDTs are raw types
+    @SuppressWarnings({"unchecked", "rawtypes"})
     private void registerDefaultFactories() {
         registerFactory(LWWRegister.class, (BiFunction<String, String, LWWRegister>) LWWRegister::new);
         registerFactory(MVRegister.class, (BiFunction<String, String, MVRegister>) MVRegister::new);
         registerFactory(GCounter.class, GCounter::new);
         registerFactory(PNCounter.class, PNCounter::new);
         registerFactory(GSet.class, (nodeId, crdtId) -> new GSet(crdtId));
-        registerFactory(ORSet.class, (nodeId, crdtId) -> new ORSet(crdtId));
+        registerFactory(ORSet.class, (BiFunction<String, String, ORSet>) ORSet::new);
+        registerFactory(ORSWOT.class, (BiFunction<String, String, ORSWOT>) ORSWOT::new);
         registerFactory(RGA.class, (BiFunction<String, String, RGA>) RGA::new);
+        registerFactory(TextRGA.class, TextRGA::new);
     }
 
 
     // find- and factory-methods
     public <T extends Crdt<T, ? extends CrdtCommand>> void registerFactory(Class<T> crdtClass, BiFunction<String, String, T> builder) {
-        factories = factories.put(crdtClass, builder);
+        factories.put(crdtClass, builder);
     }
 
     public Option<? extends Crdt> findCrdt(String crdtId) {
-        return crdts.get(crdtId);
+        return Option.of(lookup(crdtId));
+    }
+
+    /**
+     * Returns the CRDT with the given id, or {@code null} if there is none or if it is not of the given type.
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Crdt> T getCrdt(Class<T> crdtClass, String crdtId) {
+        final Crdt crdt = lookup(crdtId);
+        return crdtClass.isInstance(crdt) ? crdtClass.cast(crdt) : null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public <T extends Crdt> CrdtHandle<T> handle(Class<T> crdtClass, String crdtId) {
+        return new CrdtHandle<>(this, crdtClass, crdtId);
+    }
+
+    /**
+     * Applies the action to the CRDT with the given id on the thread that owns the CRDT. Without an executor, the
+     * action runs on the current thread.
+     *
+     * @return the result of the action, which fails with a {@link NoSuchElementException} if there is no CRDT of the
+     * given type and id
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Crdt, R> CompletableFuture<R> submit(Class<T> crdtClass, String crdtId, Function<? super T, ? extends R> action) {
+        Objects.requireNonNull(action, "Action must not be null");
+        final Supplier<R> task = () -> {
+            final T crdt = getCrdt(crdtClass, crdtId);
+            if (crdt == null) {
+                throw new NoSuchElementException("No " + crdtClass.getSimpleName() + " with id " + crdtId);
+            }
+            return action.apply(crdt);
+        };
+        return executor != null ? executor.submit(crdtId, task) : ShardedExecutor.runNow(task);
     }
 
     public <T extends Crdt> T createCrdt(Class<T> crdtClass) {
@@ -75,11 +271,11 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
     public <T extends Crdt> T createCrdt(Class<T> crdtClass, String crdtId) {
         Objects.requireNonNull(crdtClass, "CrdtClass must not be null");
         Objects.requireNonNull(crdtId, "CrdtId must not be null");
-        final Option<BiFunction<String, String, ? extends Crdt>> factory = factories.get(crdtClass);
-        if (factory.isEmpty()) {
+        final BiFunction<String, String, ? extends Crdt> factory = factories.get(crdtClass);
+        if (factory == null) {
             throw new IllegalArgumentException("Factory for class " + crdtClass + " not defined");
         }
-        final T result = (T) factory.get().apply(nodeId, crdtId);
+        final T result = (T) factory.apply(nodeId, crdtId);
         register(result);
         return result;
     }
@@ -98,8 +294,7 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
 
     @SuppressWarnings("unchecked")
     public <T> Option<LWWRegister<T>> findLWWRegister(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof LWWRegister ? Option.of((LWWRegister<T>) crtd) : Option.none());
+        return Option.of(getCrdt(LWWRegister.class, crtdId));
     }
 
     public <T> MVRegister<T> createMVRegister() {
@@ -115,8 +310,7 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
 
     @SuppressWarnings("unchecked")
     public <T> Option<MVRegister<T>> findMVRegister(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof MVRegister ? Option.of((MVRegister<T>) crtd) : Option.none());
+        return Option.of(getCrdt(MVRegister.class, crtdId));
     }
 
 
@@ -132,8 +326,7 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
     }
 
     public Option<GCounter> findGCounter(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof GCounter ? Option.of((GCounter) crtd) : Option.none());
+        return Option.of(getCrdt(GCounter.class, crtdId));
     }
 
 
@@ -149,8 +342,7 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
     }
 
     public Option<PNCounter> findPNCounter(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof PNCounter ? Option.of((PNCounter) crtd) : Option.none());
+        return Option.of(getCrdt(PNCounter.class, crtdId));
     }
 
 
@@ -167,8 +359,7 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
 
     @SuppressWarnings("unchecked")
     public <E> Option<GSet<E>> findGSet(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof GSet ? Option.of((GSet<E>) crtd) : Option.none());
+        return Option.of(getCrdt(GSet.class, crtdId));
     }
 
 
@@ -178,15 +369,14 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
 
     public <E> ORSet<E> createORSet(String id) {
         Objects.requireNonNull(id, "id must not be null");
-        final ORSet<E> result = new ORSet<>(id);
+        final ORSet<E> result = new ORSet<>(nodeId, id);
         register(result);
         return result;
     }
 
     @SuppressWarnings("unchecked")
     public <E> Option<ORSet<E>> findORSet(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof ORSet ? Option.of((ORSet<E>) crtd) : Option.none());
+        return Option.of(getCrdt(ORSet.class, crtdId));
     }
 
 
@@ -203,67 +393,503 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
 
     @SuppressWarnings("unchecked")
     public <E> Option<RGA<E>> findRGA(String crtdId) {
-        final Option<? extends Crdt> option = findCrdt(crtdId);
-        return option.flatMap(crtd -> crtd instanceof RGA ? Option.of((RGA<E>) crtd) : Option.none());
+        return Option.of(getCrdt(RGA.class, crtdId));
+    }
+
+    public TextRGA createTextRGA() {
+        return createTextRGA(UUID.randomUUID().toString());
+    }
+
+    public TextRGA createTextRGA(String id) {
+        Objects.requireNonNull(id, "id must not be null");
+        final TextRGA result = new TextRGA(nodeId, id);
+        register(result);
+        return result;
+    }
+
+    public Option<TextRGA> findTextRGA(String crtdId) {
+        return Option.of(getCrdt(TextRGA.class, crtdId));
     }
 
 
     // implementation
     @SuppressWarnings("unchecked")
     private void register(Crdt crdt) {
-        crdts = crdts.put(crdt.getCrdtId(), crdt);
+        if (evictionPolicy != null) {
+            registerManaged(crdt);
+            return;
+        }
+        crdts.put(crdt.getCrdtId(), crdt);
         definitions.onNext(new CrdtDefinition(crdt.getCrdtId(), crdt.getClass(), crdt));
+        if (lazy) {
+            materialize(crdt.getCrdtId());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Crdt registerIfAbsent(Crdt crdt) {
+        final Crdt existingCrdt = crdts.putIfAbsent(crdt.getCrdtId(), crdt);
+        if (existingCrdt != null) {
+            return existingCrdt;
+        }
+        definitions.onNext(new CrdtDefinition(crdt.getCrdtId(), crdt.getClass(), crdt));
+        return crdt;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<CrdtDefinition> getDefinitions() {
+        final List<CrdtDefinition> result = new ArrayList<>();
+        if (evictionPolicy != null) {
+            for (final ManagedCrdt managed : managedCrdts.values()) {
+                result.add(new CrdtDefinition(managed.crdtId, managed.crdtClass, managed));
+            }
+        } else {
+            for (final Crdt crdt : crdts.values()) {
+                result.add(new CrdtDefinition(crdt.getCrdtId(), crdt.getClass(), crdt));
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Crdt lookup(String crdtId) {
+        if (evictionPolicy != null) {
+            return lookupManaged(crdtId);
+        }
+        final Crdt crdt = crdts.get(crdtId);
+        return crdt != null || !lazy ? crdt : materialize(crdtId);
+    }
+
+    public ReplicationMetrics getReplicationMetrics() {
+        return replicationMetrics;
+    }
+
+    /**
+     * Returns the first error, which prevented a record of this store from reaching the command log. The record was
+     * lost, so the store cannot be fully rebuilt from the log anymore.
+     */
+    public Option<Throwable> getCommandLogFailure() {
+        return Option.of(commandLogFailure.get());
+    }
+
+    /**
+     * Returns a future, which completes after all definitions and commands recorded so far are durable. The records of
+     * all CRDTs are forced to disk together, so waiting for it does not require an fsync per command. The future fails
+     * if a record was lost, see {@link #getCommandLogFailure()}.
+     */
+    public CompletableFuture<Void> awaitDurable() {
+        if (commandLog == null) {
+            throw new IllegalStateException("Store has no command log");
+        }
+        return commandLog.awaitDurable().thenRun(() -> {
+            final Throwable failure = commandLogFailure.get();
+            if (failure != null) {
+                throw new CompletionException(failure);
+            }
+        });
+    }
+
+    /**
+     * Writes the state of all CRDTs to a new segment of the command log and deletes the older segments once the state
+     * is durable.
+     *
+     * @return a future, which completes after the older segments were deleted
+     */
+    @SuppressWarnings("rawtypes")
+    public synchronized CompletableFuture<Void> checkpoint() {
+        if (commandLog == null) {
+            throw new IllegalStateException("Store has no command log");
+        }
+        watch(commandLog.beginCheckpoint());
+        for (final Crdt crdt : crdts.values()) {
+            watch(commandLog.appendDefinition(crdt.getCrdtId(), crdt.getClass()));
+            for (final CrdtCommand command : captureState(crdt)) {
+                watch(commandLog.append(command));
+            }
+        }
+        final CompletableFuture<Void> result = commandLog.completeCheckpoint();
+        watch(result);
+        return result;
+    }
+
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    // a handle, which returns its cached CRDT, reports the access like a lookup does
+    void onAccess(String crdtId) {
+        if (evictionPolicy != null) {
+            evictionPolicy.onAccess(crdtId);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Crdt materialize(String crdtId) {
+        final List<CrdtDefinition> pending = pendingDefinitions.remove(crdtId);
+        if (pending == null) {
+            return crdts.get(crdtId);
+        }
+        Crdt crdt = crdts.get(crdtId);
+        if (crdt == null) {
+            final BiFunction<String, String, ? extends Crdt> factory = factories.get(pending.get(0).getCrdtClass());
+            if (factory == null) {
+                return null;
+            }
+            crdt = registerIfAbsent(factory.apply(nodeId, crdtId));
+        }
+        for (final CrdtDefinition definition : pending) {
+            crdt.subscribeTo(definition.getPublisher());
+        }
+        return crdt;
+    }
+
+    private void addPending(CrdtDefinition definition) {
+        pendingDefinitions.compute(definition.getCrdtId(), (crdtId, pending) -> {
+            final List<CrdtDefinition> result = pending == null ? new ArrayList<>(1) : pending;
+            result.add(definition);
+            return result;
+        });
+    }
+
+
+    // command log
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void recover() throws IOException {
+        final Map<String, List<CrdtCommand>> replayed = new HashMap<>();
+        commandLog.replay(
+                (crdtId, crdtClass) -> {
+                    final BiFunction<String, String, ? extends Crdt> factory = factories.get(crdtClass);
+                    if (factory != null) {
+                        registerIfAbsent(factory.apply(nodeId, crdtId));
+                    }
+                },
+                command -> {
+                    if (crdts.containsKey(command.getCrdtId())) {
+                        replayed.computeIfAbsent(command.getCrdtId(), crdtId -> new ArrayList<>()).add(command);
+                    }
+                });
+        // the commands of different CRDTs are independent, every CRDT receives its commands in the logged order
+        for (final Map.Entry<String, List<CrdtCommand>> entry : replayed.entrySet()) {
+            crdts.get(entry.getKey()).subscribeTo(Flowable.fromIterable(entry.getValue()));
+        }
+        final Set<String> recovered = new HashSet<>(crdts.keySet());
+        Flowable.fromPublisher(this).subscribe(definition -> record(definition, recovered.remove(definition.getCrdtId())));
+    }
+
+    private void record(CrdtDefinition definition, boolean recovered) {
+        if (!recovered) {
+            watch(commandLog.appendDefinition(definition.getCrdtId(), definition.getCrdtClass()));
+        }
+        // the state a recovered CRDT sends to a new subscriber is already in the log
+        final Subscriber<CrdtCommand> recorder = new CommandRecorder();
+        definition.getPublisher().subscribe(recovered ? SnapshotHandshake.liveOnly(recorder) : recorder);
+    }
+
+    private void watch(CompletableFuture<Void> append) {
+        append.whenComplete((ignored, error) -> {
+            if (error != null) {
+                commandLogFailure.compareAndSet(null, error);
+            }
+        });
+    }
+
+
+    // eviction
+    @SuppressWarnings("rawtypes")
+    private Crdt lookupManaged(String crdtId) {
+        final ManagedCrdt managed = managedCrdts.get(crdtId);
+        if (managed == null) {
+            return null;
+        }
+        final Crdt resident = managed.crdt;
+        if (resident != null) {
+            evictionPolicy.onAccess(crdtId);
+            return resident;
+        }
+        final Crdt crdt = managed.load();
+        if (crdt != null) {
+            evictionPolicy.onLoad(crdtId);
+            evictVictims();
+        }
+        return crdt;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void registerManaged(Crdt crdt) {
+        final String crdtId = crdt.getCrdtId();
+        final ManagedCrdt newManaged = new ManagedCrdt(crdtId, crdt.getClass());
+        final ManagedCrdt existingManaged = managedCrdts.putIfAbsent(crdtId, newManaged);
+        final ManagedCrdt managed = existingManaged == null ? newManaged : existingManaged;
+        managed.attach(crdt);
+        if (existingManaged == null) {
+            definitions.onNext(new CrdtDefinition(crdtId, crdt.getClass(), managed));
+        }
+        evictionPolicy.onLoad(crdtId);
+        evictVictims();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private ManagedCrdt findOrCreateManaged(String crdtId, Class<? extends Crdt> crdtClass) {
+        final ManagedCrdt existingManaged = managedCrdts.get(crdtId);
+        if (existingManaged != null) {
+            return existingManaged;
+        }
+        final ManagedCrdt newManaged = new ManagedCrdt(crdtId, crdtClass);
+        newManaged.startRecording();
+        final ManagedCrdt concurrentManaged = managedCrdts.putIfAbsent(crdtId, newManaged);
+        if (concurrentManaged != null) {
+            newManaged.stopRecording();
+            return concurrentManaged;
+        }
+        definitions.onNext(new CrdtDefinition(crdtId, crdtClass, newManaged));
+        return newManaged;
+    }
+
+    private void evictVictims() {
+        for (final String crdtId : evictionPolicy.selectVictims()) {
+            final ManagedCrdt managed = managedCrdts.get(crdtId);
+            if (managed != null) {
+                managed.evict();
+            }
+            evictionPolicy.onEvict(crdtId);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<CrdtCommand> captureState(Crdt crdt) {
+        // the snapshot handshake of a CRDT emits its state synchronously when subscribing
+        final List<CrdtCommand> state = Collections.synchronizedList(new ArrayList<>());
+        final Disposable subscription = Flowable.fromPublisher((Publisher<CrdtCommand>) crdt).subscribe(state::add);
+        subscription.dispose();
+        synchronized (state) {
+            return new ArrayList<>(state);
+        }
+    }
+
+    // appends commands after they were applied, awaitDurable() waits for them
+    private final class CommandRecorder extends DefaultSubscriber<CrdtCommand> {
+
+        @Override
+        public void onNext(CrdtCommand command) {
+            watch(commandLog.append(command));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            commandLogFailure.compareAndSet(null, throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * The stable identity of a CRDT in a store with eviction. Connected stores send commands to and receive commands
+     * from this object, which forwards them to the CRDT while it is resident and to the backing store otherwise.
+     */
+    @SuppressWarnings("rawtypes")
+    private final class ManagedCrdt implements Publisher<CrdtCommand> {
+
+        private final String crdtId;
+        private final Class<? extends Crdt> crdtClass;
+        private final FlowableProcessor<CrdtCommand> incoming = PublishProcessor.<CrdtCommand>create().toSerialized();
+        private final FlowableProcessor<CrdtCommand> outgoing = PublishProcessor.<CrdtCommand>create().toSerialized();
+
+        private volatile Crdt crdt;
+        private BehaviorProcessor<Boolean> detachProcessor;
+        private Disposable recorder;
+
+        private ManagedCrdt(String crdtId, Class<? extends Crdt> crdtClass) {
+            this.crdtId = crdtId;
+            this.crdtClass = crdtClass;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super CrdtCommand> subscriber) {
+            SnapshotHandshake.subscribe(outgoing, this::snapshot, subscriber);
+        }
+
+        private synchronized List<CrdtCommand> snapshot() {
+            return crdt != null ? captureState(crdt) : backingStore.load(crdtId);
+        }
+
+        private Crdt load() {
+            final Crdt newCrdt;
+            final BehaviorProcessor<Boolean> newDetachProcessor;
+            synchronized (this) {
+                final BiFunction<String, String, ? extends Crdt> factory = factories.get(crdtClass);
+                if (crdt != null || factory == null) {
+                    return crdt;
+                }
+                newCrdt = factory.apply(nodeId, crdtId);
+                newDetachProcessor = doAttach(newCrdt);
+            }
+            forward(newCrdt, newDetachProcessor);
+            return newCrdt;
+        }
+
+        private void attach(Crdt newCrdt) {
+            forward(newCrdt, doAttach(newCrdt));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void forward(Crdt newCrdt, BehaviorProcessor<Boolean> newDetachProcessor) {
+            // outside of the lock, because connected stores lock their managed CRDT when receiving commands
+            Flowable.fromPublisher((Publisher<CrdtCommand>) newCrdt).takeUntil(newDetachProcessor).subscribe(outgoing::onNext);
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized BehaviorProcessor<Boolean> doAttach(Crdt newCrdt) {
+            if (detachProcessor != null) {
+                detachProcessor.onNext(true);
+            }
+            final BehaviorProcessor<Boolean> newDetachProcessor = BehaviorProcessor.create();
+            final Flowable<CrdtCommand> liveCommands = incoming.takeUntil(newDetachProcessor);
+            newCrdt.subscribeTo(subscriber -> SnapshotHandshake.subscribe(liveCommands, () -> {
+                stopRecording();
+                final List<CrdtCommand> stored = backingStore.load(crdtId);
+                backingStore.remove(crdtId);
+                return stored;
+            }, subscriber));
+            detachProcessor = newDetachProcessor;
+            crdt = newCrdt;
+            return newDetachProcessor;
+        }
+
+        private synchronized void evict() {
+            if (crdt != null) {
+                startRecording();
+                backingStore.save(crdtId, captureState(crdt));
+                detachProcessor.onNext(true);
+                detachProcessor = null;
+                // the instance is released before the count changes, a handle that sees the old count cannot get it
+                crdt = null;
+                evictionCount.incrementAndGet();
+            }
+        }
+
+        private synchronized void startRecording() {
+            recorder = incoming.subscribe(this::record);
+        }
+
+        private synchronized void stopRecording() {
+            if (recorder != null) {
+                recorder.dispose();
+                recorder = null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private synchronized void record(CrdtCommand command) {
+            if (crdt != null) {
+                // the command was dispatched to the recorder shortly before the CRDT was loaded
+                crdt.subscribeTo(Flowable.just(command));
+            } else if (backingStore.append(crdtId, command) > MAX_APPENDED_COMMANDS) {
+                compact();
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void compact() {
+            final BiFunction<String, String, ? extends Crdt> factory = factories.get(crdtClass);
+            if (factory != null) {
+                final Crdt temporary = factory.apply(nodeId, crdtId);
+                temporary.subscribeTo(Flowable.fromIterable(backingStore.load(crdtId)));
+                backingStore.save(crdtId, captureState(temporary));
+            }
+        }
     }
 
 
     // subscribe
+    /**
+     * Sends the definitions of the current CRDTs followed by the definitions of all CRDTs added later. Only the
+     * definitions of live CRDTs are kept, not the history of all definitions.
+     */
     @Override
     public void subscribe(Subscriber<? super CrdtDefinition> subscriber) {
-        definitions.subscribe(subscriber);
+        Objects.requireNonNull(subscriber, "Subscriber must not be null");
+        // subscribing before taking the snapshot ensures that a concurrently added CRDT is not missed
+        final UnicastProcessor<CrdtDefinition> liveDefinitions = UnicastProcessor.create();
+        final Disposable subscription = Flowable.fromPublisher(definitions)
+                .subscribe(liveDefinitions::onNext, liveDefinitions::onError, liveDefinitions::onComplete);
+        final Map<String, Publisher<?>> snapshot = new HashMap<>();
+        final List<CrdtDefinition> current = getDefinitions();
+        for (final CrdtDefinition definition : current) {
+            snapshot.put(definition.getCrdtId(), definition.getPublisher());
+        }
+        Flowable.fromIterable(current)
+                .concatWith(liveDefinitions.filter(definition -> snapshot.get(definition.getCrdtId()) != definition.getPublisher()))
+                .doOnCancel(subscription::dispose)
+                .subscribe(subscriber);
     }
 
     public void subscribeTo(Publisher<? extends CrdtDefinition> publisher) {
-        Flowable.fromPublisher(publisher).onTerminateDetach().subscribe(new CrdtStoreSubscriber());
+        Flowable.fromPublisher(link(publisher)).onTerminateDetach().subscribe(new CrdtStoreSubscriber());
     }
 
     public void connect(CrdtStore other) {
-        if (!subscribers.containsKey(other)) {
-            final CrdtStoreSubscriber subscriber = new CrdtStoreSubscriber();
-            other.subscribe(subscriber);
-            subscribers = subscribers.put(other, subscriber);
+        final CrdtStoreSubscriber subscriber = new CrdtStoreSubscriber();
+        if (subscribers.putIfAbsent(other, subscriber) == null) {
+            link(other).subscribe(subscriber);
             other.connect(this);
         }
     }
 
     public void disconnect(CrdtStore other) {
-        subscribers.get(other).peek(
-                subscriber -> {
-                    subscriber.dispose();
-                    subscribers = subscribers.remove(other);
-                    other.disconnect(this);
-                }
-        );
+        final CrdtStoreSubscriber subscriber = subscribers.remove(other);
+        if (subscriber != null) {
+            subscriber.dispose();
+            other.disconnect(this);
+        }
+    }
+
+    private <T> Publisher<T> link(Publisher<T> publisher) {
+        return linkThreads != null ? ThreadedLink.relay(publisher, linkThreads, linkCapacity) : publisher;
     }
 
     protected class CrdtStoreSubscriber extends DefaultSubscriber<CrdtDefinition> {
 
         private final Processor<Boolean, Boolean> cancelProcessor = BehaviorProcessor.create();
 
-        @SuppressWarnings("unchecked")
+        @SuppressWarnings({"unchecked", "rawtypes"})
         @Override
         public void onNext(CrdtDefinition definition) {
             final String crdtId = definition.getCrdtId();
-            final Flowable<? extends CrdtCommand> publisher = Flowable.fromPublisher(definition.getPublisher()).takeUntil(cancelProcessor);
-            final Option<? extends Crdt> existingCrdt = findCrdt(crdtId);
-            if (existingCrdt.isDefined()) {
-                existingCrdt.get().subscribeTo(publisher);
-            } else {
-                final Class<? extends Crdt> crdtClass = definition.getCrdtClass();
-                factories.get(crdtClass)
-                        .map(factory -> factory.apply(nodeId, crdtId))
-                        .peek(CrdtStore.this::register)
-                        .peek(crdt -> crdt.subscribeTo(publisher));
+            Flowable<? extends CrdtCommand> publisher = Flowable.fromPublisher(definition.getPublisher()).takeUntil(cancelProcessor);
+            if (executor != null) {
+                publisher = Flowable.fromPublisher(new ReplicationQueue<>(publisher, replicationCapacity, overflowStrategy,
+                        SnapshotHandshake.isComplete(definition.getCrdtClass()), executor.scheduler(crdtId), replicationMetrics));
+            } else if (linkThreads != null) {
+                publisher = Flowable.fromPublisher(link(new ReplicationQueue<>(publisher, replicationCapacity, overflowStrategy,
+                        SnapshotHandshake.isComplete(definition.getCrdtClass()), false, Schedulers.trampoline(), replicationMetrics)));
             }
+            if (evictionPolicy != null) {
+                if (factories.containsKey(definition.getCrdtClass())) {
+                    final ManagedCrdt managed = findOrCreateManaged(crdtId, definition.getCrdtClass());
+                    publisher.subscribe(new BoundedSubscriber<>(managed.incoming::onNext));
+                }
+                return;
+            }
+            Crdt crdt = crdts.get(crdtId);
+            if (crdt == null && lazy) {
+                // the CRDT only needs the current state when it is touched, which the handshake of its publisher sends
+                addPending(new CrdtDefinition(crdtId, definition.getCrdtClass(), publisher));
+                if (crdts.containsKey(crdtId)) {
+                    materialize(crdtId);
+                }
+                return;
+            }
+            if (crdt == null) {
+                // two threads may receive the same definition, only the first registered instance is used
+                final BiFunction<String, String, ? extends Crdt> factory = factories.get(definition.getCrdtClass());
+                if (factory == null) {
+                    return;
+                }
+                crdt = registerIfAbsent(factory.apply(nodeId, crdtId));
+            }
+            crdt.subscribeTo(publisher);
         }
 
         @Override
@@ -279,6 +905,7 @@ public class CrdtStore implements Publisher<CrdtDefinition> {
         public void dispose() {
             cancelProcessor.onNext(true);
             cancelProcessor.onComplete();
+            cancel();
         }
     }
 }
@@ -0,0 +1,106 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.codec.CommandCodec;
+import com.netopyr.wurmloch.codec.WireInput;
+import com.netopyr.wurmloch.codec.WireOutput;
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link BackingStore} that keeps the commands of evicted CRDTs encoded with a {@link CommandCodec}. An evicted CRDT
+ * therefore only occupies a byte array instead of command objects, which usually needs a fraction of the memory.
+ * <p>
+ * The saved state and every appended command are encoded as separate records with their own interned strings. The
+ * codec is shared by all CRDTs and needs to be thread-safe like {@link BinaryCommandCodec}.
+ */
+public class EncodedBackingStore implements BackingStore {
+
+    // fields
+    private final CommandCodec codec;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+
+    // constructor
+    public EncodedBackingStore() {
+        this(new BinaryCommandCodec());
+    }
+
+    public EncodedBackingStore(CommandCodec codec) {
+        this.codec = Objects.requireNonNull(codec, "Codec must not be null");
+    }
+
+
+    // core functionality
+    @Override
+    public void save(String crdtId, List<? extends CrdtCommand> state) {
+        entries.put(crdtId, new Entry(encode(state)));
+    }
+
+    @Override
+    public int append(String crdtId, CrdtCommand command) {
+        final byte[] record = encode(Collections.singletonList(command));
+        final Entry entry = entries.computeIfAbsent(crdtId, key -> new Entry(new byte[0]));
+        synchronized (entry) {
+            final byte[] bytes = Arrays.copyOf(entry.bytes, entry.bytes.length + record.length);
+            System.arraycopy(record, 0, bytes, entry.bytes.length, record.length);
+            entry.bytes = bytes;
+            return ++entry.appended;
+        }
+    }
+
+    @Override
+    public List<CrdtCommand> load(String crdtId) {
+        final Entry entry = entries.get(crdtId);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        final byte[] bytes;
+        synchronized (entry) {
+            bytes = entry.bytes;
+        }
+        final List<CrdtCommand> result = new ArrayList<>();
+        final WireInput input = new WireInput(bytes);
+        while (input.hasRemaining()) {
+            input.reset();
+            final int count = input.readVarInt();
+            for (int i = 0; i < count; i++) {
+                result.add(codec.decode(input));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void remove(String crdtId) {
+        entries.remove(crdtId);
+    }
+
+
+    // implementation
+    private byte[] encode(List<? extends CrdtCommand> commands) {
+        final WireOutput output = new WireOutput();
+        output.writeVarInt(commands.size());
+        for (final CrdtCommand command : commands) {
+            codec.encode(command, output);
+        }
+        return output.toByteArray();
+    }
+
+    private static final class Entry {
+
+        private byte[] bytes;
+        private int appended;
+
+        private Entry(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.netopyr.wurmloch.store;
+
+import java.util.Collection;
+
+/**
+ * Decides which CRDTs a {@link CrdtStore} keeps in memory.
+ * <p>
+ * {@link #onAccess(String)} is called on every lookup of a resident CRDT and needs to be cheap and thread-safe.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a resident CRDT is looked up.
+     */
+    void onAccess(String crdtId);
+
+    /**
+     * Called when a CRDT becomes resident, because it was created or loaded from the {@link BackingStore}.
+     */
+    void onLoad(String crdtId);
+
+    /**
+     * Called when a CRDT was evicted.
+     */
+    void onEvict(String crdtId);
+
+    /**
+     * Returns the ids of the CRDTs that should be evicted now. Called after a CRDT became resident.
+     */
+    Collection<String> selectVictims();
+
+}
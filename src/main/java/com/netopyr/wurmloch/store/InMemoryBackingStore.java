@@ -0,0 +1,64 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link BackingStore} that keeps the commands of evicted CRDTs as objects on the heap. The state commands often
+ * hold the same objects as the evicted CRDT, so eviction saves little memory. This store is meant for tests, use an
+ * {@link EncodedBackingStore} or a store that writes to disk otherwise.
+ */
+public class InMemoryBackingStore implements BackingStore {
+
+    // fields
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+
+    // core functionality
+    @Override
+    public void save(String crdtId, List<? extends CrdtCommand> state) {
+        entries.put(crdtId, new Entry(state));
+    }
+
+    @Override
+    public int append(String crdtId, CrdtCommand command) {
+        final Entry entry = entries.computeIfAbsent(crdtId, key -> new Entry(Collections.emptyList()));
+        synchronized (entry) {
+            entry.commands.add(command);
+            return ++entry.appended;
+        }
+    }
+
+    @Override
+    public List<CrdtCommand> load(String crdtId) {
+        final Entry entry = entries.get(crdtId);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        synchronized (entry) {
+            return new ArrayList<>(entry.commands);
+        }
+    }
+
+    @Override
+    public void remove(String crdtId) {
+        entries.remove(crdtId);
+    }
+
+
+    // implementation
+    private static final class Entry {
+
+        private final List<CrdtCommand> commands;
+        private int appended;
+
+        private Entry(List<? extends CrdtCommand> state) {
+            this.commands = new ArrayList<>(state);
+        }
+    }
+}
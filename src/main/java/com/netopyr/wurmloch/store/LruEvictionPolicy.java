@@ -0,0 +1,66 @@
+package com.netopyr.wurmloch.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link EvictionPolicy} that keeps at most a given number of CRDTs in memory and evicts the least recently used.
+ * <p>
+ * Accesses only record a timestamp. Once the limit is exceeded, the policy evicts down to seven eighths of the limit,
+ * so the sorting of the timestamps is amortized over many loads.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    // fields
+    private final int maxResident;
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentMap<String, Long> lastAccess = new ConcurrentHashMap<>();
+
+
+    // constructor
+    public LruEvictionPolicy(int maxResident) {
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("MaxResident must be positive");
+        }
+        this.maxResident = maxResident;
+    }
+
+
+    // core functionality
+    @Override
+    public void onAccess(String crdtId) {
+        lastAccess.replace(crdtId, clock.incrementAndGet());
+    }
+
+    @Override
+    public void onLoad(String crdtId) {
+        lastAccess.put(crdtId, clock.incrementAndGet());
+    }
+
+    @Override
+    public void onEvict(String crdtId) {
+        lastAccess.remove(crdtId);
+    }
+
+    @Override
+    public Collection<String> selectVictims() {
+        final int size = lastAccess.size();
+        if (size <= maxResident) {
+            return Collections.emptyList();
+        }
+        final List<Map.Entry<String, Long>> candidates = new ArrayList<>(lastAccess.entrySet());
+        candidates.sort(Map.Entry.comparingByValue());
+        final int count = Math.min(candidates.size(), size - maxResident + maxResident / 8);
+        final List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(candidates.get(i).getKey());
+        }
+        return result;
+    }
+}
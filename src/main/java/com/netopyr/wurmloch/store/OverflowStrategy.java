@@ -0,0 +1,26 @@
+package com.netopyr.wurmloch.store;
+
+/**
+ * Decides what happens when the replication queue of a CRDT is full.
+ */
+public enum OverflowStrategy {
+
+    /**
+     * The emitting thread waits until the queue has space again, but at most one second. Afterwards the replica is
+     * resynced like with {@link #DROP_AND_RESYNC}, because the emitter may hold a lock the replica needs. Threads of a {@link ShardedExecutor} and emitters
+     * into the links of a store with link threads must not wait and resync the replica like {@link #DROP_AND_RESYNC}
+     * instead.
+     */
+    BLOCK,
+
+    /**
+     * A state-based command is joined with the last queued command. Other commands block like {@link #BLOCK}.
+     */
+    COALESCE,
+
+    /**
+     * All queued commands are dropped and the current state of the CRDT is requested from its replica again. CRDTs,
+     * whose state does not replace the dropped commands, block like {@link #BLOCK}.
+     */
+    DROP_AND_RESYNC
+}
@@ -0,0 +1,105 @@
+package com.netopyr.wurmloch.store;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The state of the replication queues of a {@link CrdtStore}. All values are totals over the queues of all CRDTs.
+ */
+public final class ReplicationMetrics {
+
+    // fields
+    private final LongAdder queueDepth = new LongAdder();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+
+    // core functionality
+    /**
+     * Returns the number of commands waiting in the replication queues.
+     */
+    public long getQueueDepth() {
+        return queueDepth.sum();
+    }
+
+    /**
+     * Returns the largest number of commands a single replication queue held.
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Returns how often an emitting thread had to wait for a full queue.
+     */
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    /**
+     * Returns the number of commands that were queued beyond the capacity, because their thread must not block.
+     */
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getResyncCount() {
+        return resyncs.sum();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("queueDepth", getQueueDepth())
+                .append("maxQueueDepth", getMaxQueueDepth())
+                .append("blocked", getBlockedCount())
+                .append("overflowed", getOverflowCount())
+                .append("coalesced", getCoalescedCount())
+                .append("dropped", getDroppedCount())
+                .append("resyncs", getResyncCount())
+                .toString();
+    }
+
+
+    // implementation
+    void onEnqueue(int depth) {
+        queueDepth.increment();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void onDequeue(int count) {
+        queueDepth.add(-count);
+    }
+
+    void onBlocked() {
+        blocked.increment();
+    }
+
+    void onOverflow() {
+        overflowed.increment();
+    }
+
+    void onCoalesced() {
+        coalesced.increment();
+    }
+
+    void onResync(int droppedCommands) {
+        dropped.add(droppedCommands);
+        resyncs.increment();
+    }
+}
@@ -0,0 +1,340 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.CommandCoalescing;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.SnapshotHandshake;
+import io.reactivex.Scheduler;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue between the commands of a remote CRDT and the replica, which processes them on the thread of a
+ * scheduler.
+ * <p>
+ * The commands of a CRDT are a hot stream, which cannot be paused by withholding demand. The queue therefore requests
+ * all commands from its source and applies the {@link OverflowStrategy} when it is full. Downstream it only emits as
+ * many commands as were requested.
+ * <p>
+ * Threads of a {@link ShardedExecutor} never wait for a full queue, because two shards that replicate to each other
+ * could wait for each other forever. If a command cannot be coalesced, they resync the replica instead. A queue, which
+ * is created as non-blocking, treats all emitters like that. The command is
+ * only queued beyond the capacity if the snapshot of the CRDT is incomplete (see
+ * {@link SnapshotHandshake#isComplete(Class)}). Such CRDTs are never resynced, with
+ * {@link OverflowStrategy#DROP_AND_RESYNC} they block like {@link OverflowStrategy#BLOCK}.
+ * <p>
+ * Other emitters wait at most one second for space. The emitter may hold a lock, which the replica needs to process
+ * the queued commands, e.g. the monitor of a CRDT that emits while it is locked. After the wait the command is handled
+ * like the command of a shard thread.
+ */
+final class ReplicationQueue<T extends CrdtCommand> implements Publisher<T> {
+
+    private static final int MAX_DRAIN_BATCH = 64;
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    // fields
+    private final Publisher<? extends T> source;
+    private final int capacity;
+    private final OverflowStrategy strategy;
+    private final boolean resyncable;
+    private final boolean blocking;
+    private final Scheduler scheduler;
+    private final ReplicationMetrics metrics;
+
+
+    // constructor
+    ReplicationQueue(Publisher<? extends T> source, int capacity, OverflowStrategy strategy, boolean resyncable, Scheduler scheduler, ReplicationMetrics metrics) {
+        this(source, capacity, strategy, resyncable, true, scheduler, metrics);
+    }
+
+    ReplicationQueue(Publisher<? extends T> source, int capacity, OverflowStrategy strategy, boolean resyncable, boolean blocking, Scheduler scheduler, ReplicationMetrics metrics) {
+        this.source = Objects.requireNonNull(source, "Source must not be null");
+        this.capacity = capacity;
+        this.strategy = Objects.requireNonNull(strategy, "Strategy must not be null");
+        this.resyncable = resyncable;
+        this.blocking = blocking;
+        this.scheduler = Objects.requireNonNull(scheduler, "Scheduler must not be null");
+        this.metrics = Objects.requireNonNull(metrics, "Metrics must not be null");
+    }
+
+
+    // core functionality
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        final Stage stage = new Stage(Objects.requireNonNull(subscriber, "Subscriber must not be null"));
+        subscriber.onSubscribe(stage);
+        stage.connect();
+    }
+
+
+    // implementation
+    private final class Stage implements Subscription {
+
+        private final Subscriber<? super T> downstream;
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private Subscription upstream;
+        private int generation;
+        private long requested;
+        private boolean draining;
+        private boolean resyncing;
+        private boolean done;
+        private Throwable error;
+        private boolean cancelled;
+
+        private Stage(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        private void connect() {
+            final int current;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                current = ++generation;
+            }
+            source.subscribe(new Upstream(current, this));
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("Request needs to be a positive number."));
+                return;
+            }
+            synchronized (this) {
+                requested = requested + n < 0L ? Long.MAX_VALUE : requested + n;
+                if (!startDrain()) {
+                    return;
+                }
+            }
+            scheduler.scheduleDirect(this::drain);
+        }
+
+        @Override
+        public void cancel() {
+            final Subscription current;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                metrics.onDequeue(queue.size());
+                queue.clear();
+                current = upstream;
+                upstream = null;
+                notifyAll();
+            }
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        // upstream
+        private void onSubscribe(int from, Subscription subscription) {
+            final boolean stale;
+            synchronized (this) {
+                stale = cancelled || from != generation;
+                if (!stale) {
+                    upstream = subscription;
+                }
+            }
+            if (stale) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void onNext(int from, T command) {
+            final Subscription previous;
+            synchronized (this) {
+                if (cancelled || from != generation) {
+                    return;
+                }
+                if (queue.size() < capacity || resyncing) {
+                    if (queue.size() >= capacity) {
+                        metrics.onOverflow();
+                    }
+                    enqueue(command);
+                    return;
+                }
+                if (strategy == OverflowStrategy.COALESCE && !queue.isEmpty()) {
+                    final CrdtCommand coalesced = CommandCoalescing.coalesce(queue.peekLast(), command);
+                    if (coalesced != null) {
+                        queue.pollLast();
+                        queue.addLast((T) coalesced);
+                        metrics.onCoalesced();
+                        return;
+                    }
+                }
+                final boolean mayWait = blocking && !ShardedExecutor.isShardThread();
+                if (mayWait && (strategy != OverflowStrategy.DROP_AND_RESYNC || !resyncable)) {
+                    final boolean space = awaitSpace(from);
+                    if (cancelled || from != generation) {
+                        return;
+                    }
+                    if (space) {
+                        enqueue(command);
+                        return;
+                    }
+                    // the emitter may hold a lock, which the replica needs to make space, it must not wait any longer
+                }
+                if (!resyncable) {
+                    // the emitter must not wait and the state of the CRDT does not replace dropped commands
+                    metrics.onOverflow();
+                    enqueue(command);
+                    return;
+                }
+                // the state sent to a new subscriber replaces all dropped commands
+                metrics.onResync(queue.size());
+                metrics.onDequeue(queue.size());
+                queue.clear();
+                previous = upstream;
+                upstream = null;
+                resyncing = true;
+            }
+            if (previous != null) {
+                previous.cancel();
+            }
+            try {
+                connect();
+            } finally {
+                synchronized (this) {
+                    // a CRDT may emit a command before applying it, so the new state does not necessarily contain it
+                    if (!cancelled) {
+                        enqueue(command);
+                    }
+                    resyncing = false;
+                }
+            }
+        }
+
+        private void onTerminate(int from, Throwable throwable) {
+            synchronized (this) {
+                if (cancelled || from != generation) {
+                    return;
+                }
+                done = true;
+                error = throwable;
+                if (!startDrain()) {
+                    return;
+                }
+            }
+            scheduler.scheduleDirect(this::drain);
+        }
+
+        // guarded by this
+        private void enqueue(T command) {
+            queue.addLast(command);
+            metrics.onEnqueue(queue.size());
+            if (startDrain()) {
+                scheduler.scheduleDirect(this::drain);
+            }
+        }
+
+        // returns false if there is still no space after the maximum wait time or if the thread was interrupted
+        private boolean awaitSpace(int from) {
+            metrics.onBlocked();
+            final long deadline = System.nanoTime() + MAX_WAIT_NANOS;
+            while (queue.size() >= capacity && !cancelled && from == generation) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean startDrain() {
+            final boolean ready = queue.isEmpty() ? done : requested > 0L;
+            if (draining || cancelled || !ready) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        // scheduler
+        private void drain() {
+            for (int i = 0; i < MAX_DRAIN_BATCH; i++) {
+                final T command;
+                synchronized (this) {
+                    if (cancelled) {
+                        draining = false;
+                        return;
+                    }
+                    if (queue.isEmpty() && done) {
+                        cancelled = true;
+                        draining = false;
+                    } else if (queue.isEmpty() || requested == 0L) {
+                        draining = false;
+                        return;
+                    }
+                    command = queue.pollFirst();
+                    if (command != null) {
+                        metrics.onDequeue(1);
+                        if (requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                        notifyAll();
+                    }
+                }
+                if (command == null) {
+                    if (error != null) {
+                        downstream.onError(error);
+                    } else {
+                        downstream.onComplete();
+                    }
+                    return;
+                }
+                downstream.onNext(command);
+            }
+            // give the other CRDTs of the thread a chance
+            scheduler.scheduleDirect(this::drain);
+        }
+    }
+
+    private final class Upstream implements Subscriber<T> {
+
+        private final int generation;
+        private final Stage stage;
+
+        private Upstream(int generation, Stage stage) {
+            this.generation = generation;
+            this.stage = stage;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            stage.onSubscribe(generation, subscription);
+        }
+
+        @Override
+        public void onNext(T command) {
+            stage.onNext(generation, command);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            stage.onTerminate(generation, Objects.requireNonNull(throwable, "Throwable must not be null"));
+        }
+
+        @Override
+        public void onComplete() {
+            stage.onTerminate(generation, null);
+        }
+    }
+}
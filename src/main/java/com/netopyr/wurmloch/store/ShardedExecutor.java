@@ -0,0 +1,147 @@
+package com.netopyr.wurmloch.store;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of single-writer threads, each of which owns the CRDTs whose id hashes to its shard.
+ * <p>
+ * A {@link CrdtStore} that uses this executor processes all commands from connected stores of a CRDT on the thread
+ * of its shard. Local mutations are funneled through the same thread with {@link CrdtStore#submit}. An executor can
+ * be shared by several stores and needs to be shut down by its owner.
+ */
+public class ShardedExecutor implements AutoCloseable {
+
+    // fields
+    private static final ThreadLocal<Boolean> SHARD_THREAD = ThreadLocal.withInitial(() -> false);
+
+    private final Shard[] shards;
+
+
+    // constructor
+    public ShardedExecutor(int shardCount) {
+        this(shardCount, defaultThreadFactory());
+    }
+
+    public ShardedExecutor(int shardCount, ThreadFactory threadFactory) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("ShardCount must be positive");
+        }
+        Objects.requireNonNull(threadFactory, "ThreadFactory must not be null");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(threadFactory);
+        }
+    }
+
+    private static ThreadFactory defaultThreadFactory() {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "wurmloch-shard-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+
+    // core functionality
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(String crdtId) {
+        final int hash = crdtId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Returns {@code true} if the current thread owns the CRDT with the given id.
+     */
+    public boolean isOwner(String crdtId) {
+        return shards[shardOf(crdtId)].thread == Thread.currentThread();
+    }
+
+    static boolean isShardThread() {
+        return SHARD_THREAD.get();
+    }
+
+    public void execute(String crdtId, Runnable task) {
+        shards[shardOf(crdtId)].executor.execute(task);
+    }
+
+    /**
+     * Runs the task on the thread that owns the CRDT with the given id. If the current thread is the owner, the task
+     * runs immediately.
+     */
+    public <R> CompletableFuture<R> submit(String crdtId, Supplier<? extends R> task) {
+        if (isOwner(crdtId)) {
+            return runNow(task);
+        }
+        return CompletableFuture.supplyAsync(task::get, shards[shardOf(crdtId)].executor);
+    }
+
+    /**
+     * Returns a scheduler that runs all work on the thread that owns the CRDT with the given id.
+     */
+    public Scheduler scheduler(String crdtId) {
+        return shards[shardOf(crdtId)].scheduler;
+    }
+
+    public void shutdown() {
+        for (final Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (final Shard shard : shards) {
+            if (!shard.executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+
+    // implementation
+    static <R> CompletableFuture<R> runNow(Supplier<? extends R> task) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        try {
+            result.complete(task.get());
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    private static final class Shard {
+
+        private final ExecutorService executor;
+        private final Scheduler scheduler;
+        private volatile Thread thread;
+
+        private Shard(ThreadFactory threadFactory) {
+            this.executor = Executors.newSingleThreadExecutor(runnable -> threadFactory.newThread(() -> {
+                thread = Thread.currentThread();
+                SHARD_THREAD.set(true);
+                runnable.run();
+            }));
+            this.scheduler = Schedulers.from(executor);
+        }
+    }
+}
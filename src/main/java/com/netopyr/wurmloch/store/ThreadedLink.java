@@ -0,0 +1,197 @@
+package com.netopyr.wurmloch.store;
+
+import io.reactivex.Flowable;
+import io.reactivex.exceptions.MissingBackpressureException;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples a stream from the thread that emits it. The items are passed through a bounded queue to a dedicated
+ * thread, which emits them downstream as they are requested.
+ * <p>
+ * The link never blocks an emitter. It requests as many items from its source as fit into the queue and requests
+ * more after the items were emitted downstream. A source, which does not honor backpressure, needs to buffer or drop
+ * the items itself, for example in a {@link ReplicationQueue}. If it sends more items than requested, the link is
+ * cancelled and fails with a {@link MissingBackpressureException}.
+ */
+final class ThreadedLink {
+
+    // fields
+    private static final Subscription CANCELLED = new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+
+    // constructor
+    private ThreadedLink() {
+    }
+
+
+    // core functionality
+    static <T> Flowable<T> relay(Publisher<? extends T> source, ThreadFactory threadFactory, int capacity) {
+        return Flowable.fromPublisher(subscriber -> new Link<T>(subscriber, threadFactory, capacity).start(source));
+    }
+
+
+    // implementation
+    private static final class Link<T> implements Subscriber<T>, Subscription {
+
+        private final Subscriber<? super T> downstream;
+        private final BlockingQueue<Slot> queue = new LinkedBlockingQueue<>();
+        private final int capacity;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Thread worker;
+        private final AtomicReference<Subscription> subscription = new AtomicReference<>();
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+
+        private Link(Subscriber<? super T> downstream, ThreadFactory threadFactory, int capacity) {
+            this.downstream = downstream;
+            this.capacity = capacity;
+            this.worker = threadFactory.newThread(this::drain);
+        }
+
+        private void start(Publisher<? extends T> source) {
+            downstream.onSubscribe(this);
+            if (cancelled) {
+                return;
+            }
+            worker.start();
+            source.subscribe(this);
+        }
+
+        // downstream
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("Request needs to be a positive number."));
+                return;
+            }
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0L ? Long.MAX_VALUE : current + added);
+            LockSupport.unpark(worker);
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancelUpstream();
+            worker.interrupt();
+        }
+
+        // upstream
+        @Override
+        public void onSubscribe(Subscription newSubscription) {
+            if (subscription.compareAndSet(null, newSubscription)) {
+                newSubscription.request(capacity);
+            } else {
+                newSubscription.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (cancelled || done) {
+                return;
+            }
+            if (queued.incrementAndGet() > capacity) {
+                // the source ignored the demand, the upstream is cancelled before the error is passed on
+                done = true;
+                cancelUpstream();
+                queue.add(new Slot(null, new MissingBackpressureException("Link queue is full"), false));
+                return;
+            }
+            queue.add(new Slot(item, null, false));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!cancelled && !done) {
+                done = true;
+                queue.add(new Slot(null, throwable, false));
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!cancelled && !done) {
+                done = true;
+                queue.add(new Slot(null, null, true));
+            }
+        }
+
+        private void cancelUpstream() {
+            final Subscription current = subscription.getAndSet(CANCELLED);
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        // link thread
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            try {
+                while (!cancelled) {
+                    final Slot slot = queue.take();
+                    if (slot.complete) {
+                        downstream.onComplete();
+                        return;
+                    } else if (slot.error != null) {
+                        downstream.onError(slot.error);
+                        return;
+                    }
+                    awaitDemand();
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    queued.decrementAndGet();
+                    subscription.get().request(1L);
+                    downstream.onNext((T) slot.item);
+                }
+            } catch (InterruptedException ex) {
+                // the link was cancelled
+            }
+        }
+
+        private void awaitDemand() throws InterruptedException {
+            while (requested.get() == 0L) {
+                LockSupport.park(this);
+                if (Thread.interrupted() || cancelled) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private final Object item;
+        private final Throwable error;
+        private final boolean complete;
+
+        private Slot(Object item, Throwable error, boolean complete) {
+            this.item = item;
+            this.error = error;
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.netopyr.wurmloch.store;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of JDK 21 and later. The library targets Java 8, therefore the API is called via
+ * reflection.
+ */
+public final class VirtualThreads {
+
+    // fields
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+
+    // constructor
+    private VirtualThreads() {
+    }
+
+
+    // core functionality
+    public static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a factory for virtual threads, which are named with the given prefix and a counter.
+     *
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        Objects.requireNonNull(namePrefix, "NamePrefix must not be null");
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or later");
+        }
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            throw new UnsupportedOperationException("Virtual threads are not accessible", ex);
+        }
+    }
+
+
+    // implementation
+    private static Method findMethod(Class<?> clazz, String name) {
+        try {
+            return clazz.getMethod(name);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
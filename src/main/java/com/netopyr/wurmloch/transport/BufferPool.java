@@ -0,0 +1,61 @@
+package com.netopyr.wurmloch.transport;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers of a fixed size. Requests for larger buffers are served with a dedicated buffer, which is
+ * not returned to the pool.
+ */
+final class BufferPool {
+
+    // fields
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+
+    // constructor
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+
+    // core functionality
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    ByteBuffer acquire(int size) {
+        if (size > bufferSize) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        final ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    int getPooledCount() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,61 @@
+package com.netopyr.wurmloch.transport;
+
+import com.netopyr.wurmloch.crdt.CommandCoalescing;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The commands waiting to be sent over a connection. A command is coalesced with the pending command of the same
+ * CRDT if possible, otherwise it is appended. The order of the commands of a CRDT is retained.
+ */
+final class CommandBatch {
+
+    // fields
+    private final List<CrdtCommand> commands = new ArrayList<>();
+    private final Map<String, Integer> coalescible = new HashMap<>();
+    private long coalescedCount;
+
+
+    // core functionality
+    void add(CrdtCommand command) {
+        final String crdtId = command.getCrdtId();
+        final Integer index = coalescible.get(crdtId);
+        if (index != null) {
+            final CrdtCommand coalesced = CommandCoalescing.coalesce(commands.get(index), command);
+            if (coalesced != null) {
+                commands.set(index, coalesced);
+                coalescedCount++;
+                return;
+            }
+        }
+        if (CommandCoalescing.isCoalescible(command)) {
+            coalescible.put(crdtId, commands.size());
+        } else {
+            coalescible.remove(crdtId);
+        }
+        commands.add(command);
+    }
+
+    int size() {
+        return commands.size();
+    }
+
+    boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    long getCoalescedCommandCount() {
+        return coalescedCount;
+    }
+
+    List<CrdtCommand> drain() {
+        final List<CrdtCommand> result = new ArrayList<>(commands);
+        commands.clear();
+        coalescible.clear();
+        return result;
+    }
+}
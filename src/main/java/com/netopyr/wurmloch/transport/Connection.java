@@ -0,0 +1,368 @@
+package com.netopyr.wurmloch.transport;
+
+import com.netopyr.wurmloch.codec.CommandCodec;
+import com.netopyr.wurmloch.codec.WireInput;
+import com.netopyr.wurmloch.codec.WireOutput;
+import com.netopyr.wurmloch.crdt.Crdt;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.store.CrdtDefinition;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.reactivestreams.Publisher;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A connection between two stores. Both sides send the definitions and commands of their local store and receive the
+ * ones of the remote store.
+ * <p>
+ * A frame consists of its length (4 bytes) followed by the frame type and its payload. Frames are encoded into pooled
+ * direct buffers, which the selector thread writes with a single gathering write. Frames are decoded in place from
+ * the read buffer. Reading, writing and decoding happen on the selector thread of the transport.
+ * <p>
+ * If batching is enabled, the commands are collected for the batch window or until the batch is full and sent in a
+ * single frame. State-based commands of the same CRDT are coalesced while they wait.
+ */
+final class Connection {
+
+    static final int DEFINITION = 1;
+    static final int COMMAND = 2;
+    static final int STATE_REQUEST = 3;
+    static final int BATCH = 4;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_FRAME_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_GATHER = 64;
+
+    // fields
+    private final NioTransport transport;
+    private final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final CommandCodec codec;
+    private final BufferPool pool;
+    private final RemoteCrdtStore remote;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final CommandBatch batch = new CommandBatch();
+    private Disposable scheduledFlush;
+
+    private final WireOutput output = new WireOutput();
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ConcurrentMap<String, Publisher<? extends CrdtCommand>> localCrdts = new ConcurrentHashMap<>();
+    private final CompositeDisposable subscriptions = new CompositeDisposable();
+
+    // only accessed by the selector thread
+    private final WireInput input = new WireInput();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    @SuppressWarnings("rawtypes")
+    private final Map<String, Optional<Class<? extends Crdt>>> crdtClasses = new HashMap<>();
+    private SelectionKey key;
+    private ByteBuffer readBuffer;
+
+
+    // constructor
+    Connection(NioTransport transport, SocketChannel channel, CommandCodec codec, BufferPool pool, long batchWindowNanos, int maxBatchSize) {
+        this.transport = transport;
+        this.channel = channel;
+        this.remoteAddress = channel.socket().getRemoteSocketAddress();
+        this.codec = codec;
+        this.pool = pool;
+        this.remote = new RemoteCrdtStore(this);
+        this.batchWindowNanos = batchWindowNanos;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+
+    // core functionality
+    RemoteCrdtStore getRemote() {
+        return remote;
+    }
+
+    SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    void start(Publisher<CrdtDefinition> localDefinitions) {
+        subscriptions.add(Flowable.fromPublisher(localDefinitions).subscribe(this::sendDefinition, error -> close()));
+    }
+
+    void requestState(String crdtId) {
+        send(STATE_REQUEST, out -> out.writeInternedString(crdtId));
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriptions.dispose();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // nothing left to clean up
+        }
+        transport.onClose(this);
+        remote.onClose();
+    }
+
+
+    // sending
+    private void sendDefinition(CrdtDefinition definition) {
+        final String crdtId = definition.getCrdtId();
+        if (localCrdts.putIfAbsent(crdtId, definition.getPublisher()) != null) {
+            return;
+        }
+        send(DEFINITION, out -> {
+            out.writeInternedString(crdtId);
+            out.writeInternedString(definition.getCrdtClass().getName());
+        });
+        // a CRDT, whose commands cannot be encoded, is not replicated
+        final Disposable subscription = Flowable.fromPublisher(definition.getPublisher())
+                .subscribe(this::sendCommand, error -> {});
+        subscriptions.add(subscription);
+    }
+
+    private void sendCommand(CrdtCommand command) {
+        if (batchWindowNanos == 0L) {
+            send(COMMAND, out -> codec.encode(command, out));
+            return;
+        }
+        synchronized (batch) {
+            batch.add(command);
+            if (batch.size() >= maxBatchSize) {
+                flushBatch();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = Schedulers.computation().scheduleDirect(this::flushBatch, batchWindowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void flushBatch() {
+        // the batch stays locked until its frame is queued, so that the commands of a CRDT are not reordered
+        synchronized (batch) {
+            // the window of the next batch starts with its first command
+            if (scheduledFlush != null) {
+                scheduledFlush.dispose();
+                scheduledFlush = null;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            final List<CrdtCommand> commands = batch.drain();
+            send(BATCH, out -> {
+                for (final CrdtCommand command : commands) {
+                    final int mark = out.size();
+                    try {
+                        codec.encode(command, out);
+                    } catch (IllegalArgumentException ex) {
+                        if (out.size() != mark) {
+                            throw ex;
+                        }
+                        // a command, which cannot be encoded, is not replicated
+                    }
+                }
+            });
+        }
+    }
+
+    long getCoalescedCommandCount() {
+        synchronized (batch) {
+            return batch.getCoalescedCommandCount();
+        }
+    }
+
+    private void sendState(String crdtId) {
+        final Publisher<? extends CrdtCommand> publisher = localCrdts.get(crdtId);
+        if (publisher != null) {
+            // the handshake of a CRDT sends its current state synchronously during subscribe
+            Flowable.fromPublisher(publisher).subscribe(this::sendCommand, error -> {}).dispose();
+        }
+    }
+
+    private void send(int type, Consumer<WireOutput> body) {
+        if (closed.get()) {
+            return;
+        }
+        synchronized (output) {
+            output.clear();
+            output.writeByte(type);
+            try {
+                body.accept(output);
+            } catch (RuntimeException ex) {
+                if (output.size() > 1) {
+                    // the partial frame may have interned strings, which the remote store will never see
+                    close();
+                }
+                throw ex;
+            }
+            final int size = output.size();
+            if (size > MAX_FRAME_SIZE) {
+                // the remote store would reject the frame and it may have interned strings
+                close();
+                throw new IllegalArgumentException("Frame exceeds the maximum size: " + size);
+            }
+            final ByteBuffer frame = pool.acquire(HEADER_SIZE + size);
+            frame.putInt(size);
+            output.writeTo(frame);
+            ((Buffer) frame).flip();
+            // frames must be queued in the order they were encoded, because of the interned strings
+            outbound.add(frame);
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            transport.execute(this::flush);
+        }
+    }
+
+
+    // selector thread
+    void register(Selector selector) throws IOException {
+        readBuffer = pool.acquire(pool.getBufferSize());
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    void flush() {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            while (true) {
+                int count = 0;
+                for (final ByteBuffer frame : outbound) {
+                    gather[count++] = frame;
+                    if (count == MAX_GATHER) {
+                        break;
+                    }
+                }
+                if (count == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    writeScheduled.set(false);
+                    // a frame may have been queued after the last check, the sender relies on this flush
+                    if (outbound.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                channel.write(gather, 0, count);
+                final boolean complete = !gather[count - 1].hasRemaining();
+                Arrays.fill(gather, 0, count, null);
+                ByteBuffer head;
+                while ((head = outbound.peek()) != null && !head.hasRemaining()) {
+                    outbound.poll();
+                    pool.release(head);
+                }
+                if (!complete) {
+                    // the socket buffer is full, continue when the channel becomes writable
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+        }
+    }
+
+    void read() {
+        try {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            ((Buffer) readBuffer).flip();
+            while (readBuffer.remaining() >= HEADER_SIZE) {
+                final int position = readBuffer.position();
+                final int size = readBuffer.getInt(position);
+                if (size < 1 || size > MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame size: " + size);
+                }
+                if (readBuffer.remaining() < HEADER_SIZE + size) {
+                    break;
+                }
+                final ByteBuffer frame = readBuffer.duplicate();
+                ((Buffer) frame).position(position + HEADER_SIZE);
+                ((Buffer) frame).limit(position + HEADER_SIZE + size);
+                ((Buffer) readBuffer).position(position + HEADER_SIZE + size);
+                receive(frame);
+            }
+            prepareNextRead();
+        } catch (IOException | RuntimeException ex) {
+            close();
+        }
+    }
+
+    private void prepareNextRead() {
+        if (!readBuffer.hasRemaining() && readBuffer.capacity() != pool.getBufferSize()) {
+            // a large frame was read completely, switch back to a pooled buffer
+            readBuffer = pool.acquire(pool.getBufferSize());
+            return;
+        }
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            // the buffer is filled with the start of a large frame, it only grows with the data that has arrived
+            final int required = HEADER_SIZE + readBuffer.getInt(0);
+            final ByteBuffer larger = pool.acquire(Math.min(required, 2 * readBuffer.capacity()));
+            ((Buffer) readBuffer).flip();
+            larger.put(readBuffer);
+            pool.release(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    private void receive(ByteBuffer frame) {
+        input.setInput(frame);
+        final int type = input.readByte();
+        switch (type) {
+            case DEFINITION:
+                final String crdtId = input.readInternedString();
+                final String className = input.readInternedString();
+                resolve(className).ifPresent(crdtClass -> remote.onDefinition(crdtId, crdtClass));
+                break;
+            case COMMAND:
+                // commands are decoded even if their CRDT is unknown to keep the interned strings in sync
+                remote.onCommand(codec.decode(input));
+                break;
+            case BATCH:
+                while (input.hasRemaining()) {
+                    remote.onCommand(codec.decode(input));
+                }
+                break;
+            case STATE_REQUEST:
+                sendState(input.readInternedString());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown frame type: " + type);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Optional<Class<? extends Crdt>> resolve(String className) {
+        return crdtClasses.computeIfAbsent(className, name -> {
+            try {
+                final Class<?> type = Class.forName(name, false, Connection.class.getClassLoader());
+                return Crdt.class.isAssignableFrom(type) ? Optional.of(type.asSubclass(Crdt.class)) : Optional.empty();
+            } catch (ClassNotFoundException ex) {
+                return Optional.empty();
+            }
+        });
+    }
+}
@@ -0,0 +1,291 @@
+package com.netopyr.wurmloch.transport;
+
+import com.netopyr.wurmloch.codec.CommandCodec;
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.store.CrdtStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects a {@link CrdtStore} with stores in other processes over TCP.
+ * <p>
+ * A connection is symmetric: each side sends the definitions and commands of its store and subscribes its store to
+ * a {@link RemoteCrdtStore}, which publishes the definitions and commands of the other side. This matches
+ * {@link CrdtStore#connect(CrdtStore)} within a single process. All connections of a transport are served by a single
+ * selector thread.
+ */
+public class NioTransport implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    // fields
+    private final CrdtStore store;
+    private final CommandCodec codec;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final BufferPool pool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final List<ServerSocketChannel> servers = new ArrayList<>();
+    private final AtomicLong closedCoalescedCommandCount = new AtomicLong();
+    private volatile boolean closed;
+
+
+    // constructor
+    public NioTransport(CrdtStore store) throws IOException {
+        this(store, new BinaryCommandCodec());
+    }
+
+    public NioTransport(CrdtStore store, CommandCodec codec) throws IOException {
+        this(store, codec, 0L, 1);
+    }
+
+    /**
+     * Creates a transport, which collects the outgoing commands of each connection for the batch window or until
+     * {@code maxBatchSize} commands are waiting and sends them in a single frame. State-based commands of the same
+     * CRDT are coalesced into the latest state while they wait.
+     */
+    public NioTransport(CrdtStore store, CommandCodec codec, long batchWindow, TimeUnit unit, int maxBatchSize) throws IOException {
+        this(store, codec, toBatchWindowNanos(batchWindow, unit), checkMaxBatchSize(maxBatchSize));
+    }
+
+    private NioTransport(CrdtStore store, CommandCodec codec, long batchWindowNanos, int maxBatchSize) throws IOException {
+        this.store = Objects.requireNonNull(store, "Store must not be null");
+        this.codec = Objects.requireNonNull(codec, "Codec must not be null");
+        this.batchWindowNanos = batchWindowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.selector = Selector.open();
+        this.selectorThread = new Thread(this::run, "wurmloch-nio");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+
+    // core functionality
+    /**
+     * Accepts connections on the given address. A port of 0 picks a free port.
+     *
+     * @return the address the transport is listening on
+     */
+    public synchronized InetSocketAddress listen(InetSocketAddress address) throws IOException {
+        Objects.requireNonNull(address, "Address must not be null");
+        if (closed) {
+            throw new IllegalStateException("Transport is closed");
+        }
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(address);
+        servers.add(server);
+        execute(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException ex) {
+                closeQuietly(server);
+            }
+        });
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Connects to a transport listening on the given address. The connection is established with a blocking connect
+     * on the calling thread, so it does not delay the selector thread, which serves the other connections. The method
+     * must therefore not be called from the selector thread itself.
+     *
+     * @return the store on the other side of the connection
+     */
+    public RemoteCrdtStore connect(InetSocketAddress address) throws IOException {
+        Objects.requireNonNull(address, "Address must not be null");
+        if (closed) {
+            throw new IllegalStateException("Transport is closed");
+        }
+        if (Thread.currentThread() == selectorThread) {
+            throw new IllegalStateException("Connect must not be called from the selector thread");
+        }
+        final SocketChannel channel = SocketChannel.open(address);
+        return open(channel).getRemote();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Returns the number of outgoing commands, which were coalesced with a waiting command of the same CRDT.
+     */
+    public long getCoalescedCommandCount() {
+        long result = closedCoalescedCommandCount.get();
+        for (final Connection connection : connections) {
+            result += connection.getCoalescedCommandCount();
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (final ServerSocketChannel server : servers) {
+                closeQuietly(server);
+            }
+        }
+        for (final Connection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        selector.wakeup();
+        if (Thread.currentThread() != selectorThread) {
+            try {
+                selectorThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    // implementation
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void onClose(Connection connection) {
+        if (connections.remove(connection)) {
+            closedCoalescedCommandCount.addAndGet(connection.getCoalescedCommandCount());
+        }
+    }
+
+    private Connection open(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final Connection connection = new Connection(this, channel, codec, pool, batchWindowNanos, maxBatchSize);
+        connections.add(connection);
+        try {
+            execute(() -> {
+                try {
+                    connection.register(selector);
+                } catch (IOException ex) {
+                    connection.close();
+                }
+            });
+            // the store has to subscribe to the remote store before the first frame is read, otherwise commands are lost
+            store.subscribeTo(connection.getRemote());
+            connection.start(store);
+        } catch (RuntimeException ex) {
+            connection.close();
+            throw ex;
+        }
+        if (closed) {
+            connection.close();
+        }
+        return connection;
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                runTasks();
+                for (final SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid()) {
+                        process(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException ex) {
+            close();
+        } catch (RuntimeException | Error ex) {
+            // the selector cannot serve the connections anymore, release them before the thread dies
+            close();
+            throw ex;
+        } finally {
+            closeQuietly(selector);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                // a failing task must not stop the other connections
+            }
+        }
+    }
+
+    private void process(SelectionKey key) {
+        if (key.isAcceptable()) {
+            accept((ServerSocketChannel) key.channel());
+            return;
+        }
+        final Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (RuntimeException ex) {
+            connection.close();
+        }
+    }
+
+    private void accept(ServerSocketChannel server) {
+        SocketChannel channel = null;
+        try {
+            channel = server.accept();
+            if (channel != null) {
+                open(channel);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // the remote store gave up before the connection was established or the local store rejected it
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private static long toBatchWindowNanos(long batchWindow, TimeUnit unit) {
+        if (batchWindow < 1L) {
+            throw new IllegalArgumentException("BatchWindow needs to be a positive number.");
+        }
+        return Objects.requireNonNull(unit, "Unit must not be null").toNanos(batchWindow);
+    }
+
+    private static int checkMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("MaxBatchSize needs to be a positive number.");
+        }
+        return maxBatchSize;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ex) {
+            // nothing left to clean up
+        }
+    }
+}
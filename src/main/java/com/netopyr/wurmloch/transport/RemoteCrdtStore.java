@@ -0,0 +1,122 @@
+package com.netopyr.wurmloch.transport;
+
+import com.netopyr.wurmloch.crdt.Crdt;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.store.CrdtDefinition;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.processors.UnicastProcessor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A proxy for a {@link com.netopyr.wurmloch.store.CrdtStore} in another process, which publishes the CRDT
+ * definitions and commands received over a connection of a {@link NioTransport}.
+ * <p>
+ * The command stream of a CRDT only contains the commands received after subscribing. If commands of a CRDT were
+ * received before, a new subscriber requests the current state from the remote store. A subscriber of the store
+ * receives the definitions of the CRDTs known so far followed by the definitions received later.
+ */
+public final class RemoteCrdtStore implements Publisher<CrdtDefinition>, AutoCloseable {
+
+    // fields
+    private final Connection connection;
+    private final FlowableProcessor<CrdtDefinition> definitions = PublishProcessor.<CrdtDefinition>create().toSerialized();
+    private final ConcurrentMap<String, RemoteCommands> commands = new ConcurrentHashMap<>();
+    private volatile boolean connected = true;
+
+
+    // constructor
+    RemoteCrdtStore(Connection connection) {
+        this.connection = connection;
+    }
+
+
+    // core functionality
+    @Override
+    public void subscribe(Subscriber<? super CrdtDefinition> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber must not be null");
+        // subscribing before taking the snapshot ensures that a concurrently received definition is not missed
+        final UnicastProcessor<CrdtDefinition> liveDefinitions = UnicastProcessor.create();
+        final Disposable subscription = definitions
+                .subscribe(liveDefinitions::onNext, liveDefinitions::onError, liveDefinitions::onComplete);
+        final Map<String, CrdtDefinition> snapshot = new HashMap<>();
+        for (final RemoteCommands crdtCommands : commands.values()) {
+            snapshot.put(crdtCommands.crdtId, crdtCommands.definition);
+        }
+        Flowable.fromIterable(snapshot.values())
+                .concatWith(liveDefinitions.filter(definition -> snapshot.get(definition.getCrdtId()) != definition))
+                .doOnCancel(subscription::dispose)
+                .subscribe(subscriber);
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+
+    // implementation
+    @SuppressWarnings("rawtypes")
+    void onDefinition(String crdtId, Class<? extends Crdt> crdtClass) {
+        final RemoteCommands newCommands = new RemoteCommands(crdtId, crdtClass);
+        if (commands.putIfAbsent(crdtId, newCommands) == null) {
+            definitions.onNext(newCommands.definition);
+        }
+    }
+
+    void onCommand(CrdtCommand command) {
+        final RemoteCommands crdtCommands = commands.get(command.getCrdtId());
+        if (crdtCommands != null) {
+            crdtCommands.received = true;
+            crdtCommands.processor.onNext(command);
+        }
+    }
+
+    void onClose() {
+        connected = false;
+        for (final RemoteCommands crdtCommands : commands.values()) {
+            crdtCommands.processor.onComplete();
+        }
+        definitions.onComplete();
+    }
+
+    private final class RemoteCommands implements Publisher<CrdtCommand> {
+
+        private final String crdtId;
+        private final CrdtDefinition definition;
+        private final FlowableProcessor<CrdtCommand> processor = PublishProcessor.<CrdtCommand>create().toSerialized();
+        private volatile boolean received;
+
+        @SuppressWarnings("rawtypes")
+        private RemoteCommands(String crdtId, Class<? extends Crdt> crdtClass) {
+            this.crdtId = crdtId;
+            this.definition = new CrdtDefinition(crdtId, crdtClass, this);
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super CrdtCommand> subscriber) {
+            processor.subscribe(subscriber);
+            if (received) {
+                connection.requestState(crdtId);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.netopyr.wurmloch.vectorclock;
+
+/**
+ * The causal relation of a vector clock to another clock.
+ */
+public enum Causality {
+
+    /**
+     * The clock happened before the other clock.
+     */
+    BEFORE,
+
+    /**
+     * The clock happened after the other clock.
+     */
+    AFTER,
+
+    /**
+     * Both clocks are equal.
+     */
+    EQUAL,
+
+    /**
+     * The clocks are concurrent, i.e. neither happened before the other one.
+     */
+    CONCURRENT
+}
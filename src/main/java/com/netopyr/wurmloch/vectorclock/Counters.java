@@ -0,0 +1,135 @@
+package com.netopyr.wurmloch.vectorclock;
+
+import javaslang.Tuple;
+import javaslang.Tuple2;
+import javaslang.collection.HashMap;
+import javaslang.collection.Map;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Operations on the counters of a vector clock, stored in a long-array that is indexed by the node indices of the
+ * {@link NodeRegistry}. The arrays never end with a zero, so that equal clocks always have equal arrays and the
+ * additional entries of a longer array are always greater than the missing entries of a shorter one.
+ */
+final class Counters {
+
+    static final long[] EMPTY = new long[0];
+
+    private Counters() {
+    }
+
+
+    static long[] of(Map<String, Long> entries) {
+        long[] result = EMPTY;
+        for (final Tuple2<String, Long> entry : entries) {
+            if (entry._2 != 0L) {
+                final int index = NodeRegistry.indexOf(entry._1);
+                if (index >= result.length) {
+                    result = Arrays.copyOf(result, index + 1);
+                }
+                result[index] = entry._2;
+            }
+        }
+        return result;
+    }
+
+    static Map<String, Long> toMap(long[] counters) {
+        Map<String, Long> result = HashMap.empty();
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] != 0L) {
+                result = result.put(Tuple.of(NodeRegistry.nodeIdOf(i), counters[i]));
+            }
+        }
+        return result;
+    }
+
+    static int count(long[] counters) {
+        int result = 0;
+        for (final long counter : counters) {
+            if (counter != 0L) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    static void forEach(long[] counters, ObjLongConsumer<String> action) {
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] != 0L) {
+                action.accept(NodeRegistry.nodeIdOf(i), counters[i]);
+            }
+        }
+    }
+
+    static long[] increment(long[] counters, int index) {
+        return increment(counters, index, 1L);
+    }
+
+    static long[] increment(long[] counters, int index, long delta) {
+        final long[] result = Arrays.copyOf(counters, Math.max(counters.length, index + 1));
+        result[index] += delta;
+        return result;
+    }
+
+    static long get(long[] counters, int index) {
+        return index < counters.length ? counters[index] : 0L;
+    }
+
+    static long[] merge(long[] counters, long[] other) {
+        switch (compare(counters, other)) {
+            case AFTER:
+            case EQUAL:
+                return counters;
+            case BEFORE:
+                return other;
+            default:
+                final long[] result = Arrays.copyOf(counters, Math.max(counters.length, other.length));
+                for (int i = 0; i < other.length; i++) {
+                    result[i] = Math.max(result[i], other[i]);
+                }
+                return result;
+        }
+    }
+
+    static long[] meet(long[] counters, long[] other) {
+        switch (compare(counters, other)) {
+            case BEFORE:
+            case EQUAL:
+                return counters;
+            case AFTER:
+                return other;
+            default:
+                int length = Math.min(counters.length, other.length);
+                final long[] result = new long[length];
+                for (int i = 0; i < length; i++) {
+                    result[i] = Math.min(counters[i], other[i]);
+                }
+                while (length > 0 && result[length - 1] == 0L) {
+                    length--;
+                }
+                return length == result.length ? result : Arrays.copyOf(result, length);
+        }
+    }
+
+    static Causality compare(long[] counters, long[] other) {
+        final int common = Math.min(counters.length, other.length);
+        boolean isGreater = counters.length > common;
+        boolean isLess = other.length > common;
+        for (int i = 0; i < common; i++) {
+            if (counters[i] > other[i]) {
+                isGreater = true;
+            } else if (counters[i] < other[i]) {
+                isLess = true;
+            }
+            if (isGreater && isLess) {
+                return Causality.CONCURRENT;
+            }
+        }
+        return isGreater && isLess ? Causality.CONCURRENT
+                : isGreater ? Causality.AFTER
+                : isLess ? Causality.BEFORE
+                : Causality.EQUAL;
+    }
+}
@@ -0,0 +1,52 @@
+package com.netopyr.wurmloch.vectorclock;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns node IDs as small integers, which are used as indices of the counter arrays in the vector clocks.
+ * <p>
+ * The indices are only valid within the current JVM. Whenever a clock leaves the JVM, the node IDs have to be
+ * transferred instead.
+ */
+public final class NodeRegistry {
+
+    private static final ConcurrentMap<String, Integer> indices = new ConcurrentHashMap<>();
+    private static volatile String[] nodeIds = new String[16];
+    private static int size;
+
+
+    private NodeRegistry() {
+    }
+
+
+    public static int indexOf(String nodeId) {
+        final Integer index = indices.get(Objects.requireNonNull(nodeId, "NodeId must not be null"));
+        return index != null ? index : register(nodeId);
+    }
+
+    public static String nodeIdOf(int index) {
+        final String[] current = nodeIds;
+        if (index < 0 || index >= current.length || current[index] == null) {
+            throw new IllegalArgumentException("Index " + index + " has not been assigned to a node");
+        }
+        return current[index];
+    }
+
+
+    private static synchronized int register(String nodeId) {
+        final Integer existing = indices.get(nodeId);
+        if (existing != null) {
+            return existing;
+        }
+        final int index = size++;
+        if (index == nodeIds.length) {
+            nodeIds = Arrays.copyOf(nodeIds, index * 2);
+        }
+        nodeIds[index] = nodeId;
+        indices.put(nodeId, index);
+        return index;
+    }
+}
@@ -2,47 +2,83 @@ package com.netopyr.wurmloch.vectorclock;
 
 import javaslang.collection.HashMap;
 import javaslang.collection.Map;
-import javaslang.collection.Set;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
 public final class StrictVectorClock implements Comparable<StrictVectorClock> {
 
     private final String key;
-    private final Map<String, Long> entries;
+    private final int keyIndex;
+    private final long[] counters;
+    private int hash;
 
     public StrictVectorClock(String key, Map<String, Long> entries) {
-        this.key = key;
-        this.entries = entries;
+        this(key, NodeRegistry.indexOf(key), Counters.of(entries));
     }
     public StrictVectorClock(String key) {
         this(key, HashMap.empty());
     }
+    private StrictVectorClock(String key, int keyIndex, long[] counters) {
+        this.key = key;
+        this.keyIndex = keyIndex;
+        this.counters = counters;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCounter() {
+        return Counters.get(counters, keyIndex);
+    }
+
+    /**
+     * Returns the number of nodes with a counter greater than zero.
+     */
+    public int getEntryCount() {
+        return Counters.count(counters);
+    }
+
+    /**
+     * Calls the action with each node and its counter, if the counter is greater than zero.
+     */
+    public void forEachEntry(ObjLongConsumer<String> action) {
+        Counters.forEach(counters, action);
+    }
 
     public StrictVectorClock increment() {
-        final long counter = entries.get(key).map(value -> value + 1L).getOrElse(1L);
-        return new StrictVectorClock(key, entries.put(key, counter));
+        return new StrictVectorClock(key, keyIndex, Counters.increment(counters, keyIndex));
+    }
+
+    public StrictVectorClock increment(long delta) {
+        if (delta < 0L) {
+            throw new IllegalArgumentException("Delta must not be negative");
+        }
+        return delta == 0L ? this : new StrictVectorClock(key, keyIndex, Counters.increment(counters, keyIndex, delta));
+    }
+
+    public Causality compare(StrictVectorClock other) {
+        return Counters.compare(counters, other.counters);
     }
 
     @Override
     public int compareTo(StrictVectorClock other) {
-        final Set<Long> diffs = calculateDiffs(other);
-        final boolean isGreater = diffs.find(diff -> diff > 0).isDefined();
-        final boolean isLess = diffs.find(diff -> diff < 0).isDefined();
-
-        return (isGreater && isLess) ? key.compareTo(other.key)
-                : isLess ? -1
-                : isGreater ? 1
+        final Causality causality = compare(other);
+        return causality == Causality.BEFORE ? -1
+                : causality == Causality.AFTER ? 1
                 : key.compareTo(other.key);
     }
 
     public StrictVectorClock merge(StrictVectorClock other) {
-        return new StrictVectorClock(key, entries.merge(other.entries, Math::max));
+        final long[] merged = Counters.merge(counters, other.counters);
+        return merged == counters ? this : new StrictVectorClock(key, keyIndex, merged);
     }
 
-    private Set<Long> calculateDiffs(StrictVectorClock other) {
-        final Set<String> allKeys = entries.keySet().addAll(other.entries.keySet());
-        return allKeys.map(key -> entries.get(key).getOrElse(0L) - other.entries.get(key).getOrElse(0L));
+    public StrictVectorClock meet(StrictVectorClock other) {
+        final long[] met = Counters.meet(counters, other.counters);
+        return met == counters ? this : new StrictVectorClock(key, keyIndex, met);
     }
 
     @Override
@@ -53,21 +89,24 @@ public final class StrictVectorClock implements Comparable<StrictVectorClock> {
 
         StrictVectorClock that = (StrictVectorClock) o;
 
-        return calculateDiffs(that).forAll(diff -> diff == 0);
+        return compare(that) == Causality.EQUAL;
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 37)
-                .append(entries)
-                .toHashCode();
+        int result = hash;
+        if (result == 0) {
+            result = Arrays.hashCode(counters);
+            hash = result;
+        }
+        return result;
     }
 
     @Override
     public String toString() {
         return new ToStringBuilder(this)
                 .append("key", key)
-                .append("entries", entries)
+                .append("entries", Counters.toMap(counters))
                 .toString();
     }
 }
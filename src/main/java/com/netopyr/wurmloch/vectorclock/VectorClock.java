@@ -1,46 +1,60 @@
 package com.netopyr.wurmloch.vectorclock;
 
-import javaslang.collection.HashMap;
 import javaslang.collection.Map;
-import javaslang.collection.Set;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
 public final class VectorClock implements Comparable<VectorClock> {
 
-    private final Map<String, Long> entries;
+    private final long[] counters;
 
     public VectorClock(Map<String, Long> entries) {
-        this.entries = entries;
+        this(Counters.of(entries));
     }
     public VectorClock() {
-        this(HashMap.empty());
+        this(Counters.EMPTY);
+    }
+    private VectorClock(long[] counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Returns the number of nodes with a counter greater than zero.
+     */
+    public int getEntryCount() {
+        return Counters.count(counters);
+    }
+
+    /**
+     * Calls the action with each node and its counter, if the counter is greater than zero.
+     */
+    public void forEachEntry(ObjLongConsumer<String> action) {
+        Counters.forEach(counters, action);
     }
 
     public VectorClock increment(String key) {
-        final long counter = entries.get(key).map(value -> value + 1L).getOrElse(1L);
-        return new VectorClock(entries.put(key, counter));
+        return new VectorClock(Counters.increment(counters, NodeRegistry.indexOf(key)));
+    }
+
+    public Causality compare(VectorClock other) {
+        return Counters.compare(counters, other.counters);
     }
 
     @Override
     public int compareTo(VectorClock other) {
-        final Set<Long> diffs = calculateDiffs(other);
-        final boolean isGreater = diffs.find(diff -> diff > 0).isDefined();
-        final boolean isLess = diffs.find(diff -> diff < 0).isDefined();
-
-        return (isGreater && isLess) ? 0
-                : isLess ? -1
-                : isGreater ? 1
+        final Causality causality = compare(other);
+        return causality == Causality.BEFORE ? -1
+                : causality == Causality.AFTER ? 1
                 : 0;
     }
 
     public VectorClock merge(VectorClock other) {
-        return new VectorClock(entries.merge(other.entries, Math::max));
-    }
-
-    private Set<Long> calculateDiffs(VectorClock other) {
-        final Set<String> allKeys = entries.keySet().addAll(other.entries.keySet());
-        return allKeys.map(key -> entries.get(key).getOrElse(0L) - other.entries.get(key).getOrElse(0L));
+        final long[] merged = Counters.merge(counters, other.counters);
+        return merged == counters ? this
+                : merged == other.counters ? other
+                : new VectorClock(merged);
     }
 
     @Override
@@ -51,20 +65,18 @@ public final class VectorClock implements Comparable<VectorClock> {
 
         VectorClock that = (VectorClock) o;
 
-        return calculateDiffs(that).forAll(diff -> diff == 0);
+        return compare(that) == Causality.EQUAL;
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 37)
-                .append(entries)
-                .toHashCode();
+        return Arrays.hashCode(counters);
     }
 
     @Override
     public String toString() {
         return new ToStringBuilder(this)
-                .append("entries", entries)
+                .append("entries", Counters.toMap(counters))
                 .toString();
     }
 }
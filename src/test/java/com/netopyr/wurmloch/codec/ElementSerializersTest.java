@@ -0,0 +1,110 @@
+package com.netopyr.wurmloch.codec;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ElementSerializersTest {
+
+    @Test
+    public void shouldRoundTripStandardElements() {
+        // given:
+        final ElementSerializer<Object> serializer = ElementSerializers.standard();
+        final List<Object> elements = Arrays.asList(null, "A", 42, -42L, true, 3.5, 'c', new byte[] {1, 2});
+        final WireOutput output = new WireOutput();
+
+        // when:
+        for (final Object element : elements) {
+            serializer.write(element, output);
+        }
+
+        // then:
+        final WireInput input = new WireInput(output.toByteArray());
+        assertThat(serializer.read(input), nullValue());
+        assertThat(serializer.read(input), is("A"));
+        assertThat(serializer.read(input), is(42));
+        assertThat(serializer.read(input), is(-42L));
+        assertThat(serializer.read(input), is(true));
+        assertThat(serializer.read(input), is(3.5));
+        assertThat(serializer.read(input), is('c'));
+        assertThat(serializer.read(input), is(new byte[] {1, 2}));
+        assertThat(input.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void shouldRoundTripTypedElements() {
+        // given:
+        final WireOutput output = new WireOutput();
+
+        // when:
+        ElementSerializers.strings().write("A", output);
+        ElementSerializers.longs().write(-1L, output);
+
+        // then:
+        final WireInput input = new WireInput(output.toByteArray());
+        assertThat(ElementSerializers.strings().read(input), is("A"));
+        assertThat(ElementSerializers.longs().read(input), is(-1L));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void writingNonSerializableElementShouldThrow() {
+        ElementSerializers.standard().write(new Object(), new WireOutput());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void writingSerializableElementWithStandardSerializerShouldThrow() {
+        ElementSerializers.standard().write(new ArrayList<>(), new WireOutput());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void readingSerializedObjectWithStandardSerializerShouldThrow() {
+        // given:
+        final WireOutput output = new WireOutput();
+        ElementSerializers.serializable(ArrayList.class).write(new ArrayList<>(), output);
+
+        // when:
+        ElementSerializers.standard().read(new WireInput(output.toByteArray()));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void readingUnknownTagShouldThrow() {
+        // given:
+        final WireOutput output = new WireOutput();
+        output.writeByte(42);
+
+        // when:
+        ElementSerializers.standard().read(new WireInput(output.toByteArray()));
+    }
+
+    @Test
+    public void shouldRoundTripAllowedSerializableElements() {
+        // given:
+        final ElementSerializer<Object> serializer = ElementSerializers.serializable(ArrayList.class, Integer.class, Number.class);
+        final List<Integer> element = new ArrayList<>(Arrays.asList(1, 2));
+        final WireOutput output = new WireOutput();
+
+        // when:
+        serializer.write(element, output);
+
+        // then:
+        assertThat(serializer.read(new WireInput(output.toByteArray())), is(element));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void readingObjectGraphWithClassOutsideAllowListShouldThrow() {
+        // given:
+        final WireOutput output = new WireOutput();
+        final List<Object> element = new ArrayList<>(Arrays.asList(new Date()));
+        ElementSerializers.serializable(ArrayList.class, Date.class).write(element, output);
+
+        // when:
+        ElementSerializers.serializable(ArrayList.class).read(new WireInput(output.toByteArray()));
+    }
+}
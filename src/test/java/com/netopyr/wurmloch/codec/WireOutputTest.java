@@ -0,0 +1,100 @@
+package com.netopyr.wurmloch.codec;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class WireOutputTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroCapacityShouldThrow() {
+        new WireOutput(0);
+    }
+
+    @Test
+    public void shouldWriteSmallVarintsInOneByte() {
+        // given:
+        final WireOutput output = new WireOutput(1);
+
+        // when:
+        output.writeVarLong(127L);
+
+        // then:
+        assertThat(output.size(), is(1));
+
+        // when:
+        output.writeVarLong(128L);
+
+        // then:
+        assertThat(output.size(), is(3));
+    }
+
+    @Test
+    public void shouldRoundTripValues() {
+        // given:
+        final WireOutput output = new WireOutput(1);
+        final long[] values = {0L, 1L, 127L, 128L, 300L, Integer.MAX_VALUE, Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+
+        // when:
+        for (final long value : values) {
+            output.writeVarLong(value);
+            output.writeSignedVarLong(value);
+            output.writeLong(value);
+        }
+        output.writeVarInt(Integer.MAX_VALUE);
+        output.writeBoolean(true);
+        output.writeString("äöü €");
+        output.writeBytes(new byte[] {1, 2, 3});
+
+        // then:
+        final WireInput input = new WireInput(output.toByteArray());
+        for (final long value : values) {
+            assertThat(input.readVarLong(), is(value));
+            assertThat(input.readSignedVarLong(), is(value));
+            assertThat(input.readLong(), is(value));
+        }
+        assertThat(input.readVarInt(), is(Integer.MAX_VALUE));
+        assertThat(input.readBoolean(), is(true));
+        assertThat(input.readString(), is("äöü €"));
+        assertThat(input.readBytes(), is(new byte[] {1, 2, 3}));
+        assertThat(input.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void shouldInternStringsAcrossFrames() {
+        // given:
+        final WireOutput output = new WireOutput();
+        final WireInput input = new WireInput();
+
+        // when:
+        output.writeInternedString("NODE");
+        final byte[] frame1 = output.toByteArray();
+        output.clear();
+        output.writeInternedString("NODE");
+        output.writeInternedString("OTHER");
+        final byte[] frame2 = output.toByteArray();
+
+        // then:
+        assertThat(frame1.length, is(6));
+        input.setInput(ByteBuffer.wrap(frame1));
+        assertThat(input.readInternedString(), is("NODE"));
+        input.setInput(ByteBuffer.wrap(frame2));
+        assertThat(input.readInternedString(), is("NODE"));
+        assertThat(input.readInternedString(), is("OTHER"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void readingUnknownInternedStringShouldThrow() {
+        // given:
+        final WireOutput output = new WireOutput();
+        output.writeInternedString("NODE");
+        output.writeInternedString("NODE");
+        final byte[] bytes = output.toByteArray();
+
+        // when:
+        new WireInput(new byte[] {bytes[bytes.length - 1]}).readInternedString();
+    }
+}
@@ -0,0 +1,265 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.codec.WireInput;
+import com.netopyr.wurmloch.codec.WireOutput;
+import com.netopyr.wurmloch.vectorclock.StrictVectorClock;
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import org.reactivestreams.Publisher;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class BinaryCommandCodecTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullSerializerShouldThrow() {
+        new BinaryCommandCodec(null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void encodingUnknownCommandShouldThrow() {
+        new BinaryCommandCodec().encode(new CrdtCommand(CRDT_ID) {}, new WireOutput());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void decodingUnknownTagShouldThrow() {
+        new BinaryCommandCodec().decode(new WireInput(new byte[] {99, 0, 1, 65}));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void decodingTruncatedCommandShouldThrow() {
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> commands = subscribe(counter);
+        counter.increment();
+        final WireOutput output = new WireOutput();
+        new BinaryCommandCodec().encode(commands.values().get(0), output);
+        final byte[] bytes = output.toByteArray();
+        new BinaryCommandCodec().decode(new WireInput(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void decodingHugeCountShouldThrow() {
+        // RGA_REMOVE_RANGE with Integer.MAX_VALUE clocks, but no data
+        new BinaryCommandCodec().decode(new WireInput(new byte[] {21, 0, 1, 65, -1, -1, -1, -1, 7}));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void readingVarIntLargerThanMaxIntShouldThrow() {
+        new WireInput(new byte[] {-128, -128, -128, -128, 8}).readVarInt();
+    }
+
+    @Test
+    public void shouldRoundTripCounterCommands() {
+        // given:
+        final GCounter gCounter = new GCounter(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> commands = subscribe(gCounter);
+        gCounter.increment();
+        gCounter.increment(300L);
+        final PNCounter pnCounter = new PNCounter(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> pnCommands = subscribe(pnCounter);
+        pnCounter.increment(5L);
+        pnCounter.decrement(2L);
+
+        // then:
+        assertRoundTrip(commandsOf(commands));
+        assertRoundTrip(commandsOf(pnCommands));
+
+        final PNCounter replica = new PNCounter(NODE_ID_2, CRDT_ID);
+        replica.subscribeTo(replay(commandsOf(pnCommands)));
+        assertThat(replica.get(), is(3L));
+    }
+
+    @Test
+    public void shouldRoundTripRegisterCommands() {
+        // given:
+        final LWWRegister<String> lwwRegister = new LWWRegister<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> lwwCommands = subscribe(lwwRegister);
+        lwwRegister.set("1");
+        lwwRegister.set(null);
+        final MVRegister<Long> mvRegister = new MVRegister<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> mvCommands = subscribe(mvRegister);
+        mvRegister.set(42L);
+
+        // then:
+        assertRoundTrip(commandsOf(lwwCommands));
+        assertRoundTrip(commandsOf(mvCommands));
+    }
+
+    @Test
+    public void shouldRoundTripSetCommands() {
+        // given:
+        final GSet<String> gSet = new GSet<>(CRDT_ID);
+        final TestSubscriber<CrdtCommand> gSetCommands = subscribe(gSet);
+        gSet.add("1");
+        final TwoPSet<Integer> twoPSet = new TwoPSet<>(CRDT_ID);
+        final TestSubscriber<CrdtCommand> twoPSetCommands = subscribe(twoPSet);
+        twoPSet.add(1);
+        twoPSet.add(2);
+        twoPSet.remove(1);
+        final TestSubscriber<CrdtCommand> twoPSetCommandsState = subscribe(twoPSet);
+        final USet<String> uSet = new USet<>(CRDT_ID);
+        final TestSubscriber<CrdtCommand> uSetCommands = subscribe(uSet);
+        uSet.add("1");
+        uSet.remove("1");
+
+        // then:
+        assertRoundTrip(commandsOf(gSetCommands));
+        assertRoundTrip(commandsOf(twoPSetCommands, twoPSetCommandsState));
+        assertRoundTrip(commandsOf(uSetCommands));
+    }
+
+    @Test
+    public void shouldRoundTripORSetCommands() {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> history = subscribe(set);
+        set.add("1");
+        set.add("2");
+        set.remove("1");
+        final TestSubscriber<CrdtCommand> state = subscribe(set);
+
+        // when:
+        final List<CrdtCommand> decoded = assertRoundTrip(commandsOf(history, state));
+
+        // then:
+        final ORSet<String> replica = new ORSet<>(NODE_ID_2, CRDT_ID);
+        replica.subscribeTo(replay(decoded));
+        assertThat(replica, containsInAnyOrder("2"));
+    }
+
+    @Test
+    public void shouldRoundTripORSWOTCommands() {
+        // given:
+        final ORSWOT<String> set = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> history = subscribe(set);
+        set.add("1");
+        set.add("2");
+        set.add("1");
+        set.remove("2");
+        final TestSubscriber<CrdtCommand> state = subscribe(set);
+
+        // when:
+        final List<CrdtCommand> decoded = assertRoundTrip(commandsOf(history, state));
+
+        // then:
+        final ORSWOT<String> replica = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        replica.subscribeTo(replay(decoded.subList(decoded.size() - 1, decoded.size())));
+        assertThat(replica, containsInAnyOrder("1"));
+    }
+
+    @Test
+    public void shouldRoundTripRGACommands() {
+        // given:
+        final RGA<String> rga = new RGA<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> history = subscribe(rga);
+        rga.add("A");
+        rga.addAll(Arrays.asList("B", "C", "D"));
+        rga.remove(0);
+        rga.removeRange(0, 2);
+        final TestSubscriber<CrdtCommand> state = subscribe(rga);
+        final List<CrdtCommand> commands = commandsOf(history, state);
+        commands.add(new RGA.AckCommand<>(CRDT_ID, NODE_ID_2, new StrictVectorClock(NODE_ID_2).increment()));
+
+        // when:
+        final List<CrdtCommand> decoded = assertRoundTrip(commands);
+
+        // then:
+        final RGA<String> replica = new RGA<>(NODE_ID_2, CRDT_ID);
+        replica.subscribeTo(replay(decoded.subList(0, decoded.size() - 1)));
+        assertThat(replica, contains("D"));
+    }
+
+    @Test
+    public void shouldRoundTripTextRGACommands() {
+        // given:
+        final TextRGA text = new TextRGA(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> history = subscribe(text);
+        text.append("Hello World");
+        text.insert(5, ",ä");
+        text.delete(0, 2);
+        final TestSubscriber<CrdtCommand> state = subscribe(text);
+
+        // when:
+        final List<CrdtCommand> decoded = assertRoundTrip(commandsOf(history, state));
+
+        // then:
+        final TextRGA replica = new TextRGA(NODE_ID_2, CRDT_ID);
+        replica.subscribeTo(replay(decoded));
+        assertThat(replica.toString(), is(text.toString()));
+    }
+
+    @Test
+    public void shouldInternIdsAcrossCommands() {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> commands = subscribe(counter);
+        counter.increment();
+        counter.increment();
+        final BinaryCommandCodec codec = new BinaryCommandCodec();
+        final WireOutput output = new WireOutput();
+
+        // when:
+        codec.encode(commands.values().get(0), output);
+        final int firstSize = output.size();
+        output.clear();
+        codec.encode(commands.values().get(1), output);
+
+        // then:
+        assertThat(output.size(), lessThan(firstSize));
+        assertThat(output.size(), is(5));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static TestSubscriber<CrdtCommand> subscribe(Crdt crdt) {
+        final TestSubscriber<CrdtCommand> subscriber = TestSubscriber.create();
+        crdt.subscribe(subscriber);
+        return subscriber;
+    }
+
+    @SafeVarargs
+    private static List<CrdtCommand> commandsOf(TestSubscriber<CrdtCommand>... subscribers) {
+        final List<CrdtCommand> result = new ArrayList<>();
+        for (final TestSubscriber<CrdtCommand> subscriber : subscribers) {
+            result.addAll(subscriber.values());
+        }
+        return result;
+    }
+
+    private static List<CrdtCommand> assertRoundTrip(List<CrdtCommand> commands) {
+        final BinaryCommandCodec encoder = new BinaryCommandCodec();
+        final BinaryCommandCodec decoder = new BinaryCommandCodec();
+        final WireOutput output = new WireOutput();
+        final WireInput input = new WireInput();
+        final List<CrdtCommand> result = new ArrayList<>();
+        for (final CrdtCommand command : commands) {
+            output.clear();
+            encoder.encode(command, output);
+            input.setInput(ByteBuffer.wrap(output.toByteArray()));
+            result.add(decoder.decode(input));
+            assertThat(input.hasRemaining(), is(false));
+        }
+        assertThat(result, equalTo(commands));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends CrdtCommand> Publisher<T> replay(List<CrdtCommand> commands) {
+        return (Publisher<T>) Flowable.fromIterable(commands);
+    }
+}
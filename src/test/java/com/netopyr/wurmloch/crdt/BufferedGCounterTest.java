@@ -0,0 +1,152 @@
+package com.netopyr.wurmloch.crdt;
+
+import com.netopyr.wurmloch.crdt.GCounter.UpdateCommand;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class BufferedGCounterTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithNonPositiveThresholdShouldThrow() {
+        new BufferedGCounter(NODE_ID_1, CRDT_ID, 0L, 1L, TimeUnit.SECONDS);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithNonPositiveIntervalShouldThrow() {
+        new BufferedGCounter(NODE_ID_1, CRDT_ID, 1L, 0L, TimeUnit.SECONDS);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void incrementingByANegativeValueShouldFail() {
+        final BufferedGCounter counter = new BufferedGCounter(NODE_ID_1, CRDT_ID, 10L, 1L, TimeUnit.SECONDS);
+        counter.increment(-1L);
+    }
+
+
+    @Test
+    public void itShouldIncludePendingIncrementsInValue() {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedGCounter counter = new BufferedGCounter(NODE_ID_1, CRDT_ID, false, 100L, 1L, TimeUnit.SECONDS, scheduler);
+
+        // when
+        counter.increment();
+        counter.increment(41L);
+
+        // then
+        assertThat(counter.get(), is(42L));
+        assertThat(counter.getStateCommand().getEntries().isEmpty(), is(true));
+    }
+
+
+    @Test
+    public void itShouldPublishWhenThresholdIsReached() {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<UpdateCommand> subscriber = TestSubscriber.create();
+        final BufferedGCounter counter1 = new BufferedGCounter(NODE_ID_1, CRDT_ID, false, 10L, 1L, TimeUnit.SECONDS, scheduler);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+        counter1.subscribe(subscriber);
+
+        // when
+        for (int i = 0; i < 9; i++) {
+            counter1.increment();
+        }
+
+        // then
+        assertThat(counter2.get(), is(0L));
+
+        // when
+        counter1.increment();
+
+        // then
+        assertThat(counter1.get(), is(10L));
+        assertThat(counter2.get(), is(10L));
+        assertThat(subscriber.valueCount(), is(1));
+    }
+
+
+    @Test
+    public void itShouldPublishWhenIntervalElapses() {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedGCounter counter1 = new BufferedGCounter(NODE_ID_1, CRDT_ID, false, 100L, 1L, TimeUnit.SECONDS, scheduler);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+        counter1.increment(5L);
+
+        // when
+        scheduler.advanceTimeBy(999L, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(counter2.get(), is(0L));
+
+        // when
+        scheduler.advanceTimeBy(1L, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(counter1.get(), is(5L));
+        assertThat(counter2.get(), is(5L));
+    }
+
+
+    @Test
+    public void itShouldFlushWhenDisposed() {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedGCounter counter1 = new BufferedGCounter(NODE_ID_1, CRDT_ID, false, 100L, 1L, TimeUnit.SECONDS, scheduler);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+        counter1.increment(5L);
+
+        // when
+        counter1.dispose();
+
+        // then
+        assertThat(counter1.isDisposed(), is(true));
+        assertThat(counter2.get(), is(5L));
+    }
+
+
+    @Test
+    public void itShouldCountConcurrentIncrements() throws InterruptedException {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedGCounter counter1 = new BufferedGCounter(NODE_ID_1, CRDT_ID, true, 1000L, 1L, TimeUnit.SECONDS, scheduler);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    counter1.increment();
+                }
+            }));
+        }
+
+        // when
+        threads.forEach(Thread::start);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        counter1.flush();
+
+        // then
+        assertThat(counter1.get(), is(80_000L));
+        assertThat(counter2.get(), is(80_000L));
+    }
+}
@@ -0,0 +1,108 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.schedulers.TestScheduler;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class BufferedPNCounterTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithNonPositiveThresholdShouldThrow() {
+        new BufferedPNCounter(NODE_ID_1, CRDT_ID, 0L, 1L, TimeUnit.SECONDS);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void decrementingByANegativeValueShouldFail() {
+        final BufferedPNCounter counter = new BufferedPNCounter(NODE_ID_1, CRDT_ID, 10L, 1L, TimeUnit.SECONDS);
+        counter.decrement(-1L);
+    }
+
+
+    @Test
+    public void itShouldPublishWhenThresholdIsReached() {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedPNCounter counter1 = new BufferedPNCounter(NODE_ID_1, CRDT_ID, false, 10L, 1L, TimeUnit.SECONDS, scheduler);
+        final PNCounter counter2 = new PNCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+
+        // when
+        counter1.increment(6L);
+        counter1.decrement(3L);
+
+        // then
+        assertThat(counter1.get(), is(3L));
+        assertThat(counter2.get(), is(0L));
+
+        // when
+        counter1.decrement();
+
+        // then
+        assertThat(counter1.get(), is(2L));
+        assertThat(counter2.get(), is(2L));
+    }
+
+
+    @Test
+    public void itShouldPublishWhenIntervalElapses() {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedPNCounter counter1 = new BufferedPNCounter(NODE_ID_1, CRDT_ID, false, 100L, 1L, TimeUnit.SECONDS, scheduler);
+        final PNCounter counter2 = new PNCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+        counter1.increment(5L);
+        counter1.decrement(7L);
+
+        // when
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+
+        // then
+        assertThat(counter1.get(), is(-2L));
+        assertThat(counter2.get(), is(-2L));
+    }
+
+
+    @Test
+    public void itShouldCountConcurrentUpdates() throws InterruptedException {
+        // given
+        final TestScheduler scheduler = new TestScheduler();
+        final BufferedPNCounter counter1 = new BufferedPNCounter(NODE_ID_1, CRDT_ID, true, 1000L, 1L, TimeUnit.SECONDS, scheduler);
+        final PNCounter counter2 = new PNCounter(NODE_ID_2, CRDT_ID);
+        counter2.subscribeTo(counter1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final boolean increment = i % 2 == 0;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (increment) {
+                        counter1.increment(2L);
+                    } else {
+                        counter1.decrement();
+                    }
+                }
+            }));
+        }
+
+        // when
+        threads.forEach(Thread::start);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        counter1.dispose();
+
+        // then
+        assertThat(counter1.get(), is(40_000L));
+        assertThat(counter2.get(), is(40_000L));
+    }
+}
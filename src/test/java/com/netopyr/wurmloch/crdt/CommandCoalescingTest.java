@@ -0,0 +1,119 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import org.reactivestreams.Publisher;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class CommandCoalescingTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test
+    public void shouldJoinCounterUpdates() {
+        // given:
+        final GCounter counter1 = new GCounter(NODE_ID_1, CRDT_ID);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID);
+        final TestSubscriber<CrdtCommand> subscriber1 = subscribe(counter1);
+        final TestSubscriber<CrdtCommand> subscriber2 = subscribe(counter2);
+        counter1.increment(3L);
+        counter2.increment(4L);
+
+        // when:
+        final CrdtCommand result = CommandCoalescing.coalesce(last(subscriber1), last(subscriber2));
+
+        // then:
+        final GCounter target = new GCounter("N_3", CRDT_ID);
+        target.subscribeTo(Flowable.just((GCounter.UpdateCommand) result));
+        assertThat(target.get(), is(7L));
+    }
+
+    @Test
+    public void shouldReplaceOlderRegisterValue() {
+        // given:
+        final LWWRegister<String> register = new LWWRegister<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> subscriber = subscribe(register);
+        register.set("A");
+        final CrdtCommand first = last(subscriber);
+        register.set("B");
+        final CrdtCommand second = last(subscriber);
+
+        // when:
+        final CrdtCommand result = CommandCoalescing.coalesce(first, second);
+
+        // then:
+        assertThat(result, is(second));
+    }
+
+    @Test
+    public void shouldNotCoalesceConcurrentRegisterValues() {
+        // given:
+        final LWWRegister<String> register1 = new LWWRegister<>(NODE_ID_1, CRDT_ID);
+        final LWWRegister<String> register2 = new LWWRegister<>(NODE_ID_2, CRDT_ID);
+        final TestSubscriber<CrdtCommand> subscriber1 = subscribe(register1);
+        final TestSubscriber<CrdtCommand> subscriber2 = subscribe(register2);
+        register1.set("A");
+        register2.set("B");
+
+        // when:
+        final CrdtCommand result = CommandCoalescing.coalesce(last(subscriber1), last(subscriber2));
+
+        // then:
+        assertThat(result, nullValue());
+    }
+
+    @Test
+    public void shouldNotCoalesceOperationBasedCommands() {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID);
+        final TestSubscriber<CrdtCommand> subscriber = subscribe(set);
+        set.add("A");
+        final CrdtCommand first = last(subscriber);
+        set.add("B");
+
+        // when:
+        final CrdtCommand result = CommandCoalescing.coalesce(first, last(subscriber));
+
+        // then:
+        assertThat(CommandCoalescing.isCoalescible(first), is(false));
+        assertThat(result, nullValue());
+    }
+
+    @Test
+    public void shouldNotCoalesceCommandsOfDifferentCrdts() {
+        // given:
+        final GCounter counter1 = new GCounter(NODE_ID_1, CRDT_ID);
+        final GCounter counter2 = new GCounter(NODE_ID_1, "ID_2");
+        final TestSubscriber<CrdtCommand> subscriber1 = subscribe(counter1);
+        final TestSubscriber<CrdtCommand> subscriber2 = subscribe(counter2);
+        counter1.increment();
+        counter2.increment();
+
+        // when:
+        final CrdtCommand result = CommandCoalescing.coalesce(last(subscriber1), last(subscriber2));
+
+        // then:
+        assertThat(result, nullValue());
+    }
+
+
+    private static TestSubscriber<CrdtCommand> subscribe(Publisher<? extends CrdtCommand> crdt) {
+        final TestSubscriber<CrdtCommand> subscriber = TestSubscriber.create();
+        Flowable.fromPublisher(crdt).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static CrdtCommand last(TestSubscriber<CrdtCommand> subscriber) {
+        final List<CrdtCommand> values = subscriber.values();
+        return values.get(values.size() - 1);
+    }
+}
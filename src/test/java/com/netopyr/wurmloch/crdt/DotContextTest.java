@@ -0,0 +1,61 @@
+package com.netopyr.wurmloch.crdt;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DotContextTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+
+
+    @Test
+    public void itShouldGenerateConsecutiveDots() {
+        // given
+        final DotContext context = new DotContext();
+        final int nodeIndex = new Dot(NODE_ID_1, 1L).getNodeIndex();
+
+        // when
+        final Dot dot1 = context.next(nodeIndex);
+        final Dot dot2 = context.next(nodeIndex);
+
+        // then
+        assertThat(dot1, is(new Dot(NODE_ID_1, 1L)));
+        assertThat(dot2, is(new Dot(NODE_ID_1, 2L)));
+        assertThat(context.contains(dot1), is(true));
+        assertThat(context.contains(dot2), is(true));
+        assertThat(context.contains(new Dot(NODE_ID_1, 3L)), is(false));
+        assertThat(context.contains(new Dot(NODE_ID_2, 1L)), is(false));
+    }
+
+
+    @Test
+    public void itShouldCompactDotsOnceGapsAreClosed() {
+        // given
+        final DotContext context = new DotContext();
+
+        // when
+        final boolean added3 = context.add(new Dot(NODE_ID_2, 3L));
+        final boolean added2 = context.add(new Dot(NODE_ID_2, 2L));
+
+        // then
+        assertThat(added3, is(true));
+        assertThat(added2, is(true));
+        assertThat(context.getCloudSize(), is(2));
+        assertThat(context.contains(new Dot(NODE_ID_2, 1L)), is(false));
+        assertThat(context.contains(new Dot(NODE_ID_2, 3L)), is(true));
+
+        // when
+        final boolean added1 = context.add(new Dot(NODE_ID_2, 1L));
+
+        // then
+        assertThat(added1, is(true));
+        assertThat(context.getCloudSize(), is(0));
+        assertThat(context.contains(new Dot(NODE_ID_2, 1L)), is(true));
+        assertThat(context.contains(new Dot(NODE_ID_2, 2L)), is(true));
+        assertThat(context.contains(new Dot(NODE_ID_2, 3L)), is(true));
+        assertThat(context.add(new Dot(NODE_ID_2, 2L)), is(false));
+    }
+}
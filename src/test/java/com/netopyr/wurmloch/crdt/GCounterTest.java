@@ -170,6 +170,131 @@ public class GCounterTest {
     }
 
 
+    @Test
+    public void itShouldSendDeltasInDeltaStateMode() {
+        // given
+        final TestSubscriber<UpdateCommand> outCommands2 = TestSubscriber.create();
+        final GCounter counter1 = new GCounter(NODE_ID_1, CRDT_ID, true);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID, true);
+        counter1.increment(5L);
+        counter2.increment(3L);
+        counter2.subscribeTo(counter1);
+        counter2.subscribe(outCommands2);
+
+        // when
+        counter2.increment();
+
+        // then
+        assertThat(counter2.get(), is(9L));
+        assertThat(outCommands2.values(), contains(
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 5L, NODE_ID_2, 3L)),
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_2, 4L))
+        ));
+
+        // when
+        counter1.increment(2L);
+
+        // then
+        assertThat(counter2.get(), is(11L));
+        assertThat(outCommands2.values(), contains(
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 5L, NODE_ID_2, 3L)),
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_2, 4L)),
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 7L))
+        ));
+    }
+
+
+    @Test
+    public void itShouldInitializeLateSubscribersWithStateInDeltaStateMode() {
+        // given
+        final GCounter counter1 = new GCounter(NODE_ID_1, CRDT_ID, true);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID, true);
+        final GCounter counter3 = new GCounter("N_3", CRDT_ID, true);
+        counter1.subscribeTo(counter2);
+        counter1.increment(42L);
+        counter2.increment(10L);
+
+        // when
+        counter3.subscribeTo(counter1);
+
+        // then
+        assertThat(counter3.get(), is(52L));
+    }
+
+
+    @Test
+    public void itShouldJoinCommands() {
+        // given
+        final TestSubscriber<UpdateCommand> outCommands = TestSubscriber.create();
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID, true);
+        counter.subscribe(outCommands);
+        counter.increment(2L);
+        counter.increment(3L);
+        final UpdateCommand remoteState = new GCounter(NODE_ID_2, CRDT_ID).getStateCommand();
+
+        // when
+        final UpdateCommand joined = outCommands.values().get(1).join(outCommands.values().get(2)).join(remoteState);
+
+        // then
+        assertThat(joined, new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 5L)));
+    }
+
+
+    @Test
+    public void liveOnlySubscriberShouldOnlyReceiveLaterCommands() {
+        // given
+        final TestSubscriber<UpdateCommand> outCommands = TestSubscriber.create();
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        counter.increment(2L);
+
+        // when
+        counter.subscribe(SnapshotHandshake.liveOnly(outCommands));
+        counter.increment(3L);
+
+        // then
+        assertThat(outCommands.values(), contains(
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 5L))
+        ));
+    }
+
+
+    @Test(timeOut = 10_000L)
+    public void connectedCountersShouldNotDeadlockWhenIncrementedConcurrently() throws Exception {
+        // given:
+        final GCounter counter1 = new GCounter(NODE_ID_1, CRDT_ID);
+        final GCounter counter2 = new GCounter(NODE_ID_2, CRDT_ID);
+        counter1.subscribeTo(counter2);
+        counter2.subscribeTo(counter1);
+
+        // when:
+        final Thread thread1 = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                counter1.increment();
+            }
+        });
+        final Thread thread2 = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                counter2.increment();
+            }
+        });
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        // then:
+        assertThat(counter1.get(), is(20_000L));
+        assertThat(counter2.get(), is(20_000L));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void joiningCommandsOfDifferentCrdtsShouldFail() {
+        final UpdateCommand command1 = new GCounter(NODE_ID_1, CRDT_ID).getStateCommand();
+        final UpdateCommand command2 = new GCounter(NODE_ID_1, "ID_2").getStateCommand();
+        command1.join(command2);
+    }
+
+
     private class UpdateCommandMatcher extends CustomMatcher<CrdtCommand> {
 
         private final String crdtId;
@@ -209,4 +209,28 @@ public class GSetTest {
             return false;
         }
     }
+
+
+    @Test
+    public void shouldSendStateInsteadOfHistoryToLateSubscribers() {
+        // given:
+        final GSet<String> set1 = new GSet<>("ID_1");
+        final GSet<String> set2 = new GSet<>("ID_1");
+        final TestSubscriber<GSet.AddCommand<String>> subscriber = TestSubscriber.create();
+        set1.add("1");
+        set1.add("2");
+        set1.add("1");
+
+        // when:
+        set1.subscribe(subscriber);
+
+        // then:
+        assertThat(subscriber.valueCount(), is(2));
+
+        // when:
+        set2.subscribeTo(set1);
+
+        // then:
+        assertThat(set2, containsInAnyOrder("1", "2"));
+    }
 }
@@ -0,0 +1,291 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+public class ORSWOTTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String NODE_ID_3 = "N_3";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullReplicaShouldThrow() {
+        new ORSWOT<>(null, CRDT_ID);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullIdShouldThrow() {
+        new ORSWOT<>(NODE_ID_1, null);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void subscribingToNullPublisherShouldThrow() {
+        final ORSWOT<String> set = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        set.subscribeTo(null);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void subscribingNullSubscriberShouldThrow() {
+        final ORSWOT<String> set = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        set.subscribe(null);
+    }
+
+
+    @Test
+    public void itShouldAddAndRemoveElements() {
+        // given
+        final ORSWOT<String> set = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+
+        // when
+        final boolean added1 = set.add("1");
+        final boolean added2 = set.add("2");
+        final boolean added3 = set.add("1");
+
+        // then
+        assertThat(added1, is(true));
+        assertThat(added2, is(true));
+        assertThat(added3, is(false));
+        assertThat(set, containsInAnyOrder("1", "2"));
+        assertThat(set.contains("1"), is(true));
+
+        // when
+        final boolean removed1 = set.remove("1");
+        final boolean removed2 = set.remove("1");
+
+        // then
+        assertThat(removed1, is(true));
+        assertThat(removed2, is(false));
+        assertThat(set, containsInAnyOrder("2"));
+        assertThat(set.contains("1"), is(false));
+    }
+
+
+    @Test
+    public void itShouldRemoveElementsWithIterator() {
+        // given
+        final ORSWOT<String> set = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        set.addAll(Arrays.asList("1", "2", "3"));
+        final Iterator<String> it = set.iterator();
+
+        // when
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+
+        // then
+        assertThat(set, is(empty()));
+    }
+
+
+    @Test
+    public void itShouldSendCommands() {
+        // given
+        final TestSubscriber<ORSWOT.ORSWOTCommand<String>> subscriber = TestSubscriber.create();
+        final ORSWOT<String> set = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        set.subscribe(subscriber);
+
+        // when
+        set.add("1");
+        set.add("1");
+        set.remove("1");
+
+        // then
+        subscriber.assertNotComplete();
+        subscriber.assertNoErrors();
+        assertThat(subscriber.valueCount(), is(3));
+        assertThat(subscriber.values().get(0), is(instanceOf(ORSWOT.AddCommand.class)));
+        assertThat(subscriber.values().get(1), is(instanceOf(ORSWOT.AddCommand.class)));
+        assertThat(subscriber.values().get(2), is(instanceOf(ORSWOT.RemoveCommand.class)));
+    }
+
+
+    @Test
+    public void itShouldSynchronizeReplicas() {
+        // given
+        final ORSWOT<String> set1 = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final ORSWOT<String> set2 = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set1);
+
+        // when
+        set1.add("1");
+        set2.add("2");
+        set1.add("3");
+
+        // then
+        assertThat(set1, containsInAnyOrder("1", "2", "3"));
+        assertThat(set2, containsInAnyOrder("1", "2", "3"));
+
+        // when
+        set2.remove("1");
+        set1.remove("2");
+
+        // then
+        assertThat(set1, containsInAnyOrder("3"));
+        assertThat(set2, containsInAnyOrder("3"));
+    }
+
+
+    @Test
+    public void itShouldLetConcurrentAddWin() {
+        // given
+        final TestSubscriber<ORSWOT.ORSWOTCommand<String>> outCommands1 = TestSubscriber.create();
+        final TestSubscriber<ORSWOT.ORSWOTCommand<String>> outCommands2 = TestSubscriber.create();
+        final ORSWOT<String> set1 = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final ORSWOT<String> set2 = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        set1.subscribe(outCommands1);
+        set2.subscribe(outCommands2);
+        set1.add("1");
+        set2.subscribeTo(PublishProcessor.fromIterable(outCommands1.values()));
+
+        // when
+        set1.remove("1");
+        set2.add("1");
+        set1.subscribeTo(PublishProcessor.fromIterable(outCommands2.values()));
+        set2.subscribeTo(PublishProcessor.fromIterable(outCommands1.values()));
+
+        // then
+        assertThat(set1, containsInAnyOrder("1"));
+        assertThat(set2, containsInAnyOrder("1"));
+    }
+
+
+    @Test
+    public void itShouldIgnoreAddsArrivingAfterTheirRemove() {
+        // given
+        final TestSubscriber<ORSWOT.ORSWOTCommand<String>> outCommands1 = TestSubscriber.create();
+        final ORSWOT<String> set1 = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final ORSWOT<String> set2 = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        final PublishProcessor<ORSWOT.ORSWOTCommand<String>> inCommands2 = PublishProcessor.create();
+        final TestSubscriber<ORSWOT.ORSWOTCommand<String>> outCommands2 = TestSubscriber.create();
+        set1.subscribe(outCommands1);
+        set2.subscribeTo(inCommands2);
+        set2.subscribe(outCommands2);
+        set1.add("1");
+        set1.remove("1");
+
+        // when
+        inCommands2.onNext(outCommands1.values().get(1));
+        inCommands2.onNext(outCommands1.values().get(0));
+
+        // then
+        assertThat(set2, is(empty()));
+        assertThat(outCommands2.valueCount(), is(1));
+    }
+
+
+    @Test
+    public void itShouldConvergeWithThreeReplicas() {
+        // given
+        final ORSWOT<String> set1 = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final ORSWOT<String> set2 = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        final ORSWOT<String> set3 = new ORSWOT<>(NODE_ID_3, CRDT_ID);
+        set1.add("1");
+        set2.add("1");
+        set2.add("2");
+        set3.add("3");
+        set3.remove("3");
+
+        // when
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set3);
+        set3.subscribeTo(set1);
+        set2.subscribeTo(set1);
+        set3.subscribeTo(set2);
+        set1.subscribeTo(set3);
+
+        // then
+        assertThat(set1, containsInAnyOrder("1", "2"));
+        assertThat(set2, containsInAnyOrder("1", "2"));
+        assertThat(set3, containsInAnyOrder("1", "2"));
+
+        // when
+        set3.remove("1");
+
+        // then
+        assertThat(set1, containsInAnyOrder("2"));
+        assertThat(set2, containsInAnyOrder("2"));
+        assertThat(set3, containsInAnyOrder("2"));
+    }
+
+
+    @Test
+    public void itShouldSendTheStateInsteadOfTheHistoryToLateSubscribers() {
+        // given
+        final ORSWOT<String> set1 = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final ORSWOT<String> set2 = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        final TestSubscriber<ORSWOT.ORSWOTCommand<String>> subscriber = TestSubscriber.create();
+        set1.add("1");
+        set1.add("2");
+        set1.add("3");
+        set1.remove("2");
+        set2.add("2");
+        set2.add("4");
+
+        // when
+        set1.subscribe(subscriber);
+
+        // then
+        assertThat(subscriber.valueCount(), is(1));
+        assertThat(subscriber.values().get(0), instanceOf(ORSWOT.StateCommand.class));
+
+        // when
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set1);
+
+        // then
+        assertThat(set1, containsInAnyOrder("1", "2", "3", "4"));
+        assertThat(set2, containsInAnyOrder("1", "2", "3", "4"));
+
+        // when
+        set2.remove("1");
+        set1.add("5");
+
+        // then
+        assertThat(set1, containsInAnyOrder("2", "3", "4", "5"));
+        assertThat(set2, containsInAnyOrder("2", "3", "4", "5"));
+    }
+
+    @Test(timeOut = 10_000L)
+    public void connectedSetsShouldNotDeadlockWhenModifiedConcurrently() throws Exception {
+        // given:
+        final ORSWOT<String> set1 = new ORSWOT<>(NODE_ID_1, CRDT_ID);
+        final ORSWOT<String> set2 = new ORSWOT<>(NODE_ID_2, CRDT_ID);
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set1);
+
+        // when:
+        final Thread thread1 = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                set1.add("a" + i);
+            }
+        });
+        final Thread thread2 = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                set2.add("b" + i);
+            }
+        });
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        // then:
+        assertThat(set1.size(), is(2000));
+        assertThat(set2.size(), is(2000));
+    }
+}
@@ -1,5 +1,6 @@
 package com.netopyr.wurmloch.crdt;
 
+import io.reactivex.Flowable;
 import io.reactivex.processors.ReplayProcessor;
 import io.reactivex.subscribers.TestSubscriber;
 import org.hamcrest.CustomMatcher;
@@ -7,11 +8,11 @@ import org.reactivestreams.Processor;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
@@ -20,6 +21,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.instanceOf;
 
 public class ORSetTest {
 
@@ -136,6 +138,51 @@ public class ORSetTest {
         assertThat(set, empty());
     }
 
+    @Test
+    public void shouldCheckContainment() {
+        // given:
+        final ORSet<String> set = new ORSet<>("ID_1");
+
+        // then:
+        assertThat(set.contains("1"), is(false));
+
+        // when:
+        set.add("1");
+        set.add("1");
+
+        // then:
+        assertThat(set.contains("1"), is(true));
+        assertThat(set.contains("2"), is(false));
+
+        // when:
+        set.remove("1");
+
+        // then:
+        assertThat(set.contains("1"), is(false));
+    }
+
+    @Test
+    public void shouldRemoveElementsByValue() {
+        // given:
+        final ORSet<String> set = new ORSet<>("ID_1");
+        set.addAll(Arrays.asList("1", "2", "3"));
+        set.add("2");
+
+        // when:
+        final boolean result1 = set.remove("2");
+
+        // then:
+        assertThat(result1, is(true));
+        assertThat(set, containsInAnyOrder("1", "3"));
+
+        // when:
+        final boolean result2 = set.remove("2");
+
+        // then:
+        assertThat(result2, is(false));
+        assertThat(set, containsInAnyOrder("1", "3"));
+    }
+
     // CRDT functionality
 
     @SuppressWarnings("unchecked")
@@ -196,9 +243,9 @@ public class ORSetTest {
         set.subscribeTo(inputStream);
         set.subscribe(subscriber);
 
-        final ORSet.AddCommand<String> command1 = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("1", UUID.randomUUID()));
-        final ORSet.AddCommand<String> command2 = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("2", UUID.randomUUID()));
-        final ORSet.AddCommand<String> command3 = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("1", UUID.randomUUID()));
+        final ORSet.AddCommand<String> command1 = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("1", new Dot("N_2", 1L)));
+        final ORSet.AddCommand<String> command2 = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("2", new Dot("N_2", 2L)));
+        final ORSet.AddCommand<String> command3 = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("1", new Dot("N_2", 3L)));
 
         // when:
         inputStream.onNext(command1);
@@ -221,8 +268,8 @@ public class ORSetTest {
         set.subscribeTo(inputStream);
         set.subscribe(subscriber);
 
-        final ORSet.Element<String> elem1 = new ORSet.Element<>("1", UUID.randomUUID());
-        final ORSet.Element<String> elem2 = new ORSet.Element<>("1", UUID.randomUUID());
+        final ORSet.Element<String> elem1 = new ORSet.Element<>("1", new Dot("N_2", 1L));
+        final ORSet.Element<String> elem2 = new ORSet.Element<>("1", new Dot("N_2", 2L));
         final Set<ORSet.Element<String>> elements = new HashSet<>(Arrays.asList(elem1, elem2));
         final ORSet.AddCommand<String> command1 = new ORSet.AddCommand<>(set.getCrdtId(), elem1);
         final ORSet.AddCommand<String> command2 = new ORSet.AddCommand<>(set.getCrdtId(), elem2);
@@ -249,7 +296,7 @@ public class ORSetTest {
         set.subscribeTo(inputStream);
         set.subscribe(subscriber);
 
-        final ORSet.AddCommand<String> command = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("1", UUID.randomUUID()));
+        final ORSet.AddCommand<String> command = new ORSet.AddCommand<>(set.getCrdtId(), new ORSet.Element<>("1", new Dot("N_2", 1L)));
 
         // when:
         inputStream.onNext(command);
@@ -264,7 +311,51 @@ public class ORSetTest {
 
     @Test
     public void shouldHandleRemoveCommandArrivesBeforeAddCommand() {
+        // given:
+        final Processor<ORSet.ORSetCommand<String>, ORSet.ORSetCommand<String>> inputStream = ReplayProcessor.create();
+        final TestSubscriber<CrdtCommand> subscriber = TestSubscriber.create();
+        final ORSet<String> set = new ORSet<>("N_1", "ID_1");
+        set.subscribeTo(inputStream);
+        set.subscribe(subscriber);
+
+        final ORSet.Element<String> elem = new ORSet.Element<>("1", new Dot("N_2", 1L));
+        final ORSet.RemoveCommand<String> command1 = new ORSet.RemoveCommand<>(set.getCrdtId(), new HashSet<>(Collections.singletonList(elem)));
+        final ORSet.AddCommand<String> command2 = new ORSet.AddCommand<>(set.getCrdtId(), elem);
 
+        // when:
+        inputStream.onNext(command1);
+        inputStream.onNext(command2);
+
+        // then:
+        assertThat(set, empty());
+        assertThat(subscriber.valueCount(), is(1));
+        subscriber.assertNotComplete();
+        subscriber.assertNoErrors();
+    }
+
+    @Test
+    public void shouldTagAddsOfDifferentNodesDistinctly() {
+        // given:
+        final ORSet<String> set1 = new ORSet<>("N_1", "ID_1");
+        final ORSet<String> set2 = new ORSet<>("N_2", "ID_1");
+        set1.add("1");
+        set2.add("1");
+
+        // when:
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set1);
+        set1.remove("1");
+
+        // then:
+        assertThat(set1, empty());
+        assertThat(set2, empty());
+
+        // when:
+        set2.add("1");
+
+        // then:
+        assertThat(set1, containsInAnyOrder("1"));
+        assertThat(set2, containsInAnyOrder("1"));
     }
 
     // Observable functionality
@@ -320,4 +411,60 @@ public class ORSetTest {
             return false;
         }
     }
+
+
+    @Test
+    public void shouldSendStateInsteadOfHistoryToLateSubscribers() {
+        // given:
+        final ORSet<String> set1 = new ORSet<>("N_1", "ID_1");
+        final ORSet<String> set2 = new ORSet<>("N_2", "ID_1");
+        final TestSubscriber<ORSet.ORSetCommand<String>> subscriber = TestSubscriber.create();
+        set1.add("1");
+        set1.add("2");
+        set1.add("3");
+        set1.remove("2");
+        set2.add("2");
+        set2.add("4");
+
+        // when:
+        set1.subscribe(subscriber);
+
+        // then:
+        assertThat(subscriber.valueCount(), is(1));
+        assertThat(subscriber.values().get(0), instanceOf(ORSet.StateCommand.class));
+
+        // when:
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set1);
+
+        // then:
+        assertThat(set1, containsInAnyOrder("1", "2", "3", "4"));
+        assertThat(set2, containsInAnyOrder("1", "2", "3", "4"));
+
+        // when:
+        set2.remove("1");
+
+        // then:
+        assertThat(set1, containsInAnyOrder("2", "3", "4"));
+        assertThat(set2, containsInAnyOrder("2", "3", "4"));
+    }
+
+    @Test
+    public void shouldNotReuseDotsAfterRebuildingFromState() {
+        // given:
+        final ORSet<String> original = new ORSet<>("N_1", "ID_1");
+        original.add("a");
+        original.remove("a");
+        final TestSubscriber<ORSet.ORSetCommand<String>> state = TestSubscriber.create();
+        original.subscribe(state);
+        final ORSet<String> rebuilt = new ORSet<>("N_1", "ID_1");
+        rebuilt.subscribeTo(Flowable.fromIterable(state.values()));
+
+        // when:
+        final boolean added = rebuilt.add("b");
+
+        // then:
+        assertThat(added, is(true));
+        assertThat(rebuilt, contains("b"));
+    }
 }
@@ -0,0 +1,137 @@
+package com.netopyr.wurmloch.crdt;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class OrderStatisticTreeTest {
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void gettingFromEmptyTreeShouldFail() {
+        new OrderStatisticTree<TestNode>().get(0);
+    }
+
+    @Test
+    public void itShouldInsertNodesAfterAnchors() {
+        // given
+        final OrderStatisticTree<TestNode> tree = new OrderStatisticTree<>();
+        final TestNode a = new TestNode();
+        final TestNode b = new TestNode();
+        final TestNode c = new TestNode();
+
+        // when
+        tree.insertAfter(null, a, 1);
+        tree.insertAfter(a, c, 1);
+        tree.insertAfter(a, b, 1);
+
+        // then
+        assertThat(tree.getTotalWeight(), is(3));
+        assertThat(tree.get(0), is(sameInstance(a)));
+        assertThat(tree.get(1), is(sameInstance(b)));
+        assertThat(tree.get(2), is(sameInstance(c)));
+        assertThat(tree.rank(c), is(2));
+    }
+
+    @Test
+    public void itShouldSkipNodesWithoutWeight() {
+        // given
+        final OrderStatisticTree<TestNode> tree = new OrderStatisticTree<>();
+        final TestNode a = new TestNode();
+        final TestNode b = new TestNode();
+        final TestNode c = new TestNode();
+        tree.insertAfter(null, a, 1);
+        tree.insertAfter(a, b, 1);
+        tree.insertAfter(b, c, 1);
+
+        // when
+        tree.setWeight(b, 0);
+
+        // then
+        assertThat(tree.getTotalWeight(), is(2));
+        assertThat(tree.get(1), is(sameInstance(c)));
+        assertThat(tree.rank(c), is(1));
+    }
+
+    @Test
+    public void itShouldRemoveNodes() {
+        // given
+        final OrderStatisticTree<TestNode> tree = new OrderStatisticTree<>();
+        final TestNode a = new TestNode();
+        final TestNode b = new TestNode();
+        final TestNode c = new TestNode();
+        tree.insertAfter(null, a, 1);
+        tree.insertAfter(a, b, 1);
+        tree.insertAfter(b, c, 1);
+
+        // when
+        tree.remove(b);
+
+        // then
+        assertThat(tree.getTotalWeight(), is(2));
+        assertThat(tree.get(0), is(sameInstance(a)));
+        assertThat(tree.get(1), is(sameInstance(c)));
+
+        // when
+        tree.remove(a);
+        tree.remove(c);
+
+        // then
+        assertThat(tree.getTotalWeight(), is(0));
+    }
+
+    @Test
+    public void itShouldMatchAListUnderRandomOperations() {
+        // given
+        final Random random = new Random(42L);
+        final OrderStatisticTree<TestNode> tree = new OrderStatisticTree<>();
+        final List<TestNode> all = new ArrayList<>();
+        final List<TestNode> visible = new ArrayList<>();
+        final TestNode start = new TestNode();
+        tree.insertAfter(null, start, 0);
+        all.add(start);
+
+        for (int i = 0; i < 5000; i++) {
+            // when
+            if (visible.isEmpty() || random.nextInt(3) > 0) {
+                final int anchorIndex = random.nextInt(all.size());
+                final TestNode node = new TestNode();
+                tree.insertAfter(all.get(anchorIndex), node, 1);
+                all.add(anchorIndex + 1, node);
+            } else if (random.nextBoolean()) {
+                final TestNode node = visible.get(random.nextInt(visible.size()));
+                tree.setWeight(node, 0);
+                node.hidden = true;
+            } else {
+                final TestNode node = visible.get(random.nextInt(visible.size()));
+                tree.remove(node);
+                all.remove(node);
+            }
+            visible.clear();
+            for (final TestNode node : all) {
+                if (node != start && !node.hidden) {
+                    visible.add(node);
+                }
+            }
+
+            // then
+            assertThat(tree.getTotalWeight(), is(visible.size()));
+            if (visible.isEmpty()) {
+                continue;
+            }
+            final int probe = random.nextInt(visible.size());
+            assertThat(tree.get(probe), is(sameInstance(visible.get(probe))));
+            assertThat(tree.rank(visible.get(probe)), is(probe));
+        }
+    }
+
+
+    private static final class TestNode extends OrderStatisticTree.Node<TestNode> {
+        private boolean hidden;
+    }
+}
@@ -188,6 +188,49 @@ public class PNCounterTest {
     }
 
 
+    @Test
+    public void itShouldSendDeltasInDeltaStateMode() {
+        // given
+        final TestSubscriber<PNCounter.UpdateCommand> outCommands2 = TestSubscriber.create();
+        final PNCounter counter1 = new PNCounter(NODE_ID_1, CRDT_ID, true);
+        final PNCounter counter2 = new PNCounter(NODE_ID_2, CRDT_ID, true);
+        counter1.increment(5L);
+        counter2.decrement(3L);
+        counter2.subscribeTo(counter1);
+        counter2.subscribe(outCommands2);
+
+        // when
+        counter2.increment();
+        counter1.decrement(2L);
+
+        // then
+        assertThat(counter1.get(), is(3L));
+        assertThat(counter2.get(), is(1L));
+        assertThat(outCommands2.values(), contains(
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 5L), HashMap.of(NODE_ID_2, 3L)),
+                new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_2, 1L), HashMap.empty()),
+                new UpdateCommandMatcher(CRDT_ID, HashMap.empty(), HashMap.of(NODE_ID_1, 2L))
+        ));
+    }
+
+
+    @Test
+    public void itShouldJoinCommands() {
+        // given
+        final TestSubscriber<PNCounter.UpdateCommand> outCommands = TestSubscriber.create();
+        final PNCounter counter = new PNCounter(NODE_ID_1, CRDT_ID, true);
+        counter.subscribe(outCommands);
+        counter.increment(2L);
+        counter.decrement(3L);
+
+        // when
+        final PNCounter.UpdateCommand joined = outCommands.values().get(1).join(outCommands.values().get(2));
+
+        // then
+        assertThat(joined, new UpdateCommandMatcher(CRDT_ID, HashMap.of(NODE_ID_1, 2L), HashMap.of(NODE_ID_1, 3L)));
+    }
+
+
     private class UpdateCommandMatcher extends CustomMatcher<CrdtCommand> {
 
         private final String crdtId;
@@ -2,14 +2,18 @@ package com.netopyr.wurmloch.crdt;
 
 import io.reactivex.processors.ReplayProcessor;
 import io.reactivex.subscribers.TestSubscriber;
+import javaslang.collection.Vector;
 import org.reactivestreams.Processor;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 
 public class RGATest {
@@ -174,6 +178,225 @@ public class RGATest {
     }
 
 
+    @Test
+    public void itShouldRemoveElementsWithIterator() {
+        // given
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID);
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(rga1);
+        rga1.addAll(Arrays.asList("A", "B", "C", "D"));
+        rga1.remove(1);
+
+        // when
+        final Iterator<String> it = rga1.iterator();
+        while (it.hasNext()) {
+            if ("C".equals(it.next())) {
+                it.remove();
+            }
+        }
+
+        // then
+        assertThat(rga1, contains("A", "D"));
+        assertThat(rga2, contains("A", "D"));
+    }
+
+
+    @Test
+    public void itShouldTakeSnapshots() {
+        // given
+        final RGA<String> rga = new RGA<>(NODE_ID_1, CRDT_ID);
+        rga.addAll(Arrays.asList("A", "B", "C"));
+
+        // when
+        final Vector<String> snapshot = rga.snapshot();
+        rga.remove(0);
+        rga.add("D");
+
+        // then
+        assertThat(snapshot, contains("A", "B", "C"));
+        assertThat(rga, contains("B", "C", "D"));
+    }
+
+
+    @Test
+    public void itShouldAddRangesWithASingleCommand() {
+        // given
+        final TestSubscriber<RGA.RGACommand<String>> outCommands1 = TestSubscriber.create();
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID);
+        rga1.subscribe(outCommands1);
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(rga1);
+        rga1.addAll(Arrays.asList("A", "E"));
+
+        // when
+        rga2.addAll(1, Arrays.asList("B", "C", "D"));
+
+        // then
+        assertThat(rga1, contains("A", "B", "C", "D", "E"));
+        assertThat(rga2, contains("A", "B", "C", "D", "E"));
+        assertThat(outCommands1.valueCount(), is(2));
+        assertThat(outCommands1.values().get(1), is(instanceOf(RGA.AddRightRangeCommand.class)));
+    }
+
+
+    @Test
+    public void itShouldAddRangesConcurrently() {
+        // given
+        final Processor<RGA.RGACommand<String>, RGA.RGACommand<String>> inCommands1 = ReplayProcessor.create();
+        final TestSubscriber<RGA.RGACommand<String>> outCommands1 = TestSubscriber.create();
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID);
+        rga1.subscribeTo(inCommands1);
+        rga1.subscribe(outCommands1);
+
+        final Processor<RGA.RGACommand<String>, RGA.RGACommand<String>> inCommands2 = ReplayProcessor.create();
+        final TestSubscriber<RGA.RGACommand<String>> outCommands2 = TestSubscriber.create();
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID);
+        rga2.subscribeTo(inCommands2);
+        rga2.subscribe(outCommands2);
+
+        rga1.addAll(Arrays.asList("A", "B"));
+        inCommands2.onNext(outCommands1.values().get(0));
+
+        // when
+        rga1.addAll(1, Arrays.asList("C1", "D1"));
+        rga2.addAll(1, Arrays.asList("C2", "D2"));
+        inCommands2.onNext(outCommands1.values().get(1));
+        inCommands1.onNext(outCommands2.values().get(1));
+
+        // then
+        assertThat(rga1, contains("A", "C2", "D2", "C1", "D1", "B"));
+        assertThat(rga2, contains("A", "C2", "D2", "C1", "D1", "B"));
+    }
+
+
+    @Test
+    public void itShouldRemoveRangesWithASingleCommand() {
+        // given
+        final TestSubscriber<RGA.RGACommand<String>> outCommands1 = TestSubscriber.create();
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID);
+        rga1.subscribe(outCommands1);
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(rga1);
+        rga1.addAll(Arrays.asList("A", "B", "C", "D", "E"));
+        rga1.remove(2);
+
+        // when
+        rga2.removeRange(1, 3);
+
+        // then
+        assertThat(rga1, contains("A", "E"));
+        assertThat(rga2, contains("A", "E"));
+        final int commandCount = outCommands1.valueCount();
+        assertThat(outCommands1.values().get(commandCount - 1), is(instanceOf(RGA.RemoveRangeCommand.class)));
+
+        // when
+        rga1.clear();
+
+        // then
+        assertThat(rga1, is(empty()));
+        assertThat(rga2, is(empty()));
+    }
+
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void compactingWithoutCompactionModeShouldFail() {
+        final RGA<String> rga = new RGA<>(NODE_ID_1, CRDT_ID);
+        rga.compact();
+    }
+
+
+    @Test
+    public void itShouldPurgeTombstonesOnceAllReplicasAcknowledged() {
+        // given
+        final List<String> replicaIds = Arrays.asList(NODE_ID_1, NODE_ID_2);
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID, replicaIds);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID, replicaIds);
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(rga1);
+        rga1.addAll(Arrays.asList("A", "B", "C", "D"));
+        rga2.remove(1);
+        rga1.remove(1);
+
+        // when
+        rga1.compact();
+
+        // then
+        assertThat(rga1.getVertexCount(), is(5));
+
+        // when
+        rga2.compact();
+        rga1.compact();
+
+        // then
+        assertThat(rga1, contains("A", "D"));
+        assertThat(rga2, contains("A", "D"));
+        assertThat(rga1.getVertexCount(), is(3));
+        assertThat(rga2.getVertexCount(), is(3));
+
+        // when
+        rga1.add(1, "E");
+        rga2.add(1, "F");
+
+        // then
+        assertThat(rga1, contains("A", "F", "E", "D"));
+        assertThat(rga2, contains("A", "F", "E", "D"));
+    }
+
+
+    @Test
+    public void itShouldNotPurgeTombstonesBeforeAllReplicasAcknowledged() {
+        // given
+        final List<String> replicaIds = Arrays.asList(NODE_ID_1, NODE_ID_2, "N_3");
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID, replicaIds);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID, replicaIds);
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(rga1);
+        rga1.addAll(Arrays.asList("A", "B", "C"));
+        rga1.remove(1);
+
+        // when
+        rga1.compact();
+        rga2.compact();
+        rga1.compact();
+
+        // then
+        assertThat(rga1, contains("A", "C"));
+        assertThat(rga1.getVertexCount(), is(4));
+    }
+
+
+    @Test
+    public void itShouldIgnoreReplayedCommandsOfPurgedVertices() {
+        // given
+        final List<String> replicaIds = Arrays.asList(NODE_ID_1, NODE_ID_2);
+        final TestSubscriber<RGA.RGACommand<String>> outCommands1 = TestSubscriber.create();
+        final Processor<RGA.RGACommand<String>, RGA.RGACommand<String>> inCommands2 = ReplayProcessor.create();
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID, replicaIds);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID, replicaIds);
+        rga1.subscribe(outCommands1);
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(inCommands2);
+        rga1.subscribe(inCommands2);
+        rga1.addAll(Arrays.asList("A", "B", "C"));
+        rga1.remove(1);
+        rga1.compact();
+        rga2.compact();
+        rga2.compact();
+
+        // when
+        for (final RGA.RGACommand<String> command : outCommands1.values()) {
+            inCommands2.onNext(command);
+        }
+
+        // then
+        assertThat(rga2, contains("A", "C"));
+        assertThat(rga2.getVertexCount(), is(3));
+    }
+
+
     @Test
     public void itShouldAddElementsConcurrently() {
         int i1 = 0;
@@ -253,16 +476,6 @@ public class RGATest {
 
         rga1.addAll(Arrays.asList("B0", "C0", "C1", "C2", "B1", "B2", "A1", "A2", "D1", "D2", "D0"));
         inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
         int i2 = i1;
 
         // when
@@ -411,10 +624,6 @@ public class RGATest {
 
         rga1.addAll(Arrays.asList("A", "B", "C", "D", "E"));
         inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
-        inCommands2.onNext(outCommands1.values().get(i1++));
         int i2 = i1;
 
         // when
@@ -497,4 +706,42 @@ public class RGATest {
         assertThat(rga1, contains("A3", "B1", "B3", "D", "C2"));
         assertThat(rga2, contains("A3", "B1", "B3", "D", "C2"));
     }
+
+
+    @Test
+    public void itShouldSendTheStateInsteadOfTheHistoryToLateSubscribers() {
+        // given
+        final RGA<String> rga1 = new RGA<>(NODE_ID_1, CRDT_ID);
+        final RGA<String> rga2 = new RGA<>(NODE_ID_2, CRDT_ID);
+        final TestSubscriber<RGA.RGACommand<String>> subscriber = TestSubscriber.create();
+        rga1.addAll(Arrays.asList("A", "B", "C", "D"));
+        rga1.add(2, "X");
+        rga1.remove(1);
+        rga1.removeRange(2, 4);
+        rga2.addAll(Arrays.asList("1", "2"));
+        rga2.remove(0);
+
+        // when
+        rga1.subscribe(subscriber);
+
+        // then
+        assertThat(subscriber.valueCount(), is(1));
+        assertThat(subscriber.values().get(0), instanceOf(RGA.StateCommand.class));
+
+        // when
+        rga1.subscribeTo(rga2);
+        rga2.subscribeTo(rga1);
+
+        // then
+        assertThat(rga1.size(), is(3));
+        assertThat(rga2, contains(rga1.toArray()));
+
+        // when
+        rga2.add(1, "Y");
+        rga1.remove(0);
+
+        // then
+        assertThat(rga1.size(), is(3));
+        assertThat(rga2, contains(rga1.toArray()));
+    }
 }
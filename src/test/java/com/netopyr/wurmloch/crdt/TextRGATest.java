@@ -0,0 +1,304 @@
+package com.netopyr.wurmloch.crdt;
+
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class TextRGATest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullReplicaShouldThrow() {
+        new TextRGA(null, CRDT_ID);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullIdShouldThrow() {
+        new TextRGA(NODE_ID_1, null);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void insertingOutOfBoundsShouldFail() {
+        new TextRGA(NODE_ID_1, CRDT_ID).insert(1, "A");
+    }
+
+
+    @Test
+    public void itShouldInsertAndDeleteText() {
+        // given
+        final TextRGA text = new TextRGA(NODE_ID_1, CRDT_ID);
+
+        // when
+        text.append("Hello World").insert(5, ",").append("!");
+
+        // then
+        assertThat(text.toString(), is("Hello, World!"));
+        assertThat(text.length(), is(13));
+        assertThat(text.charAt(7), is('W'));
+        assertThat(text.subSequence(3, 9).toString(), is("lo, Wo"));
+
+        // when
+        text.delete(5, 12);
+
+        // then
+        assertThat(text.toString(), is("Hello!"));
+        assertThat(text.subSequence(4, 6).toString(), is("o!"));
+    }
+
+
+    @Test
+    public void itShouldStoreConsecutiveInsertsInOneBlock() {
+        // given
+        final TextRGA text = new TextRGA(NODE_ID_1, CRDT_ID);
+
+        // when
+        for (final char c : "Hello World".toCharArray()) {
+            text.append(String.valueOf(c));
+        }
+
+        // then
+        assertThat(text.toString(), is("Hello World"));
+        assertThat(text.getBlockCount(), is(1));
+
+        // when
+        text.delete(2, 4);
+
+        // then
+        assertThat(text.toString(), is("Heo World"));
+        assertThat(text.getBlockCount(), is(3));
+    }
+
+
+    @Test
+    public void itShouldSynchronizeReplicas() {
+        // given
+        final TextRGA text1 = new TextRGA(NODE_ID_1, CRDT_ID);
+        final TextRGA text2 = new TextRGA(NODE_ID_2, CRDT_ID);
+        text1.subscribeTo(text2);
+        text2.subscribeTo(text1);
+
+        // when
+        text1.append("Hello World");
+        text2.insert(5, " beautiful");
+        text1.delete(0, 6);
+
+        // then
+        assertThat(text1.toString(), is("beautiful World"));
+        assertThat(text2.toString(), is("beautiful World"));
+    }
+
+
+    @Test
+    public void itShouldBehaveLikeAnRGAOfCharacters() {
+        final Random random = new Random(7L);
+        for (int run = 0; run < 20; run++) {
+            // given
+            final Replicas<TextRGA.TextRGACommand> texts = new Replicas<>();
+            final TextRGA text1 = new TextRGA(NODE_ID_1, CRDT_ID);
+            final TextRGA text2 = new TextRGA(NODE_ID_2, CRDT_ID);
+            texts.connect(text1, text2);
+
+            final Replicas<RGA.RGACommand<Character>> rgas = new Replicas<>();
+            final RGA<Character> rga1 = new RGA<>(NODE_ID_1, CRDT_ID);
+            final RGA<Character> rga2 = new RGA<>(NODE_ID_2, CRDT_ID);
+            rgas.connect(rga1, rga2);
+
+            for (int step = 0; step < 200; step++) {
+                // when
+                final int action = random.nextInt(6);
+                if (action < 4) {
+                    final boolean first = action % 2 == 0;
+                    final TextRGA text = first ? text1 : text2;
+                    final RGA<Character> rga = first ? rga1 : rga2;
+                    if (text.length() > 0 && random.nextInt(3) == 0) {
+                        final int start = random.nextInt(text.length());
+                        final int end = start + 1 + random.nextInt(Math.min(5, text.length() - start));
+                        text.delete(start, end);
+                        rga.removeRange(start, end);
+                    } else {
+                        final int position = random.nextInt(text.length() + 1);
+                        final String value = randomString(random);
+                        text.insert(position, value);
+                        rga.addAll(position, toCharacters(value));
+                    }
+                } else {
+                    texts.deliver(action == 4);
+                    rgas.deliver(action == 4);
+                }
+
+                // then
+                assertThat(text1.toString(), is(toString(rga1)));
+                assertThat(text2.toString(), is(toString(rga2)));
+            }
+
+            // when
+            texts.deliverAll();
+            rgas.deliverAll();
+
+            // then
+            assertThat(text1.toString(), is(toString(rga1)));
+            assertThat(text2.toString(), is(text1.toString()));
+            assertThat(toString(rga2), is(toString(rga1)));
+        }
+    }
+
+
+    private static String randomString(Random random) {
+        final int length = 1 + random.nextInt(4);
+        final StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            result.append((char) ('a' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    private static List<Character> toCharacters(String value) {
+        final List<Character> result = new ArrayList<>();
+        for (final char c : value.toCharArray()) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    private static String toString(List<Character> rga) {
+        final StringBuilder result = new StringBuilder();
+        for (final Character c : rga) {
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    private static final class Replicas<C extends CrdtCommand> {
+
+        private final TestSubscriber<C> outCommands1 = TestSubscriber.create();
+        private final TestSubscriber<C> outCommands2 = TestSubscriber.create();
+        private final PublishProcessor<C> inCommands1 = PublishProcessor.create();
+        private final PublishProcessor<C> inCommands2 = PublishProcessor.create();
+        private int delivered1;
+        private int delivered2;
+
+        private <T extends Crdt<T, C>> void connect(Crdt<T, C> replica1, Crdt<T, C> replica2) {
+            replica1.subscribe(outCommands1);
+            replica2.subscribe(outCommands2);
+            replica1.subscribeTo(inCommands1);
+            replica2.subscribeTo(inCommands2);
+        }
+
+        private void deliver(boolean toSecond) {
+            if (toSecond && delivered1 < outCommands1.valueCount()) {
+                inCommands2.onNext(outCommands1.values().get(delivered1++));
+            } else if (!toSecond && delivered2 < outCommands2.valueCount()) {
+                inCommands1.onNext(outCommands2.values().get(delivered2++));
+            }
+        }
+
+        private void deliverAll() {
+            while (delivered1 < outCommands1.valueCount() || delivered2 < outCommands2.valueCount()) {
+                deliver(true);
+                deliver(false);
+            }
+        }
+    }
+
+
+    @Test
+    public void itShouldSendTheStateInsteadOfTheHistoryToLateSubscribers() {
+        // given
+        final TextRGA text1 = new TextRGA(NODE_ID_1, CRDT_ID);
+        final TextRGA text2 = new TextRGA(NODE_ID_2, CRDT_ID);
+        final TestSubscriber<TextRGA.TextRGACommand> subscriber = TestSubscriber.create();
+        text1.append("Hello World").insert(5, ",").delete(0, 1).append("!");
+        text2.append("Good morning").delete(4, 12);
+
+        // when
+        text1.subscribe(subscriber);
+
+        // then
+        assertThat(subscriber.valueCount(), is(1));
+        assertThat(subscriber.values().get(0), instanceOf(TextRGA.StateCommand.class));
+
+        // when
+        text1.subscribeTo(text2);
+        text2.subscribeTo(text1);
+
+        // then
+        assertThat(text1.length(), is("ello, World!Good".length()));
+        assertThat(text2.toString(), is(text1.toString()));
+
+        // when
+        text2.insert(5, " there");
+        text1.delete(0, 4);
+
+        // then
+        assertThat(text2.toString(), is(text1.toString()));
+    }
+
+
+    @Test
+    public void itShouldConvergeWithReplicasThatJoinLate() {
+        final Random random = new Random(11L);
+        for (int run = 0; run < 20; run++) {
+            // given
+            final Replicas<TextRGA.TextRGACommand> texts = new Replicas<>();
+            final TextRGA text1 = new TextRGA(NODE_ID_1, CRDT_ID);
+            final TextRGA text2 = new TextRGA(NODE_ID_2, CRDT_ID);
+            for (int step = 0; step < 50; step++) {
+                final TextRGA text = random.nextBoolean() ? text1 : text2;
+                if (text.length() > 0 && random.nextInt(3) == 0) {
+                    final int start = random.nextInt(text.length());
+                    text.delete(start, start + 1 + random.nextInt(Math.min(5, text.length() - start)));
+                } else {
+                    text.insert(random.nextInt(text.length() + 1), randomString(random));
+                }
+            }
+
+            // when
+            texts.connect(text1, text2);
+            texts.deliverAll();
+
+            // then
+            assertThat(text2.toString(), is(text1.toString()));
+        }
+    }
+
+    @Test(timeOut = 10_000L)
+    public void connectedTextsShouldNotDeadlockWhenEditedConcurrently() throws Exception {
+        // given:
+        final TextRGA text1 = new TextRGA(NODE_ID_1, CRDT_ID);
+        final TextRGA text2 = new TextRGA(NODE_ID_2, CRDT_ID);
+        text1.subscribeTo(text2);
+        text2.subscribeTo(text1);
+
+        // when:
+        final Thread thread1 = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                text1.append("a");
+            }
+        });
+        final Thread thread2 = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                text2.insert(0, "b");
+            }
+        });
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        // then:
+        assertThat(text1.length(), is(2000));
+        assertThat(text2.toString(), is(text1.toString()));
+    }
+}
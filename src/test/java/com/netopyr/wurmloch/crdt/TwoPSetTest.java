@@ -18,6 +18,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.instanceOf;
 
 public class TwoPSetTest {
 
@@ -303,4 +304,34 @@ public class TwoPSetTest {
             return false;
         }
     }
+
+
+    @Test
+    public void shouldSendStateInsteadOfHistoryToLateSubscribers() {
+        // given:
+        final TwoPSet<String> set1 = new TwoPSet<>("ID_1");
+        final TwoPSet<String> set2 = new TwoPSet<>("ID_1");
+        final TestSubscriber<TwoPSet.TwoPSetCommand<String>> subscriber = TestSubscriber.create();
+        set1.add("1");
+        set1.add("2");
+        set1.add("3");
+        set1.remove("2");
+        set2.add("2");
+        set2.add("4");
+
+        // when:
+        set1.subscribe(subscriber);
+
+        // then:
+        assertThat(subscriber.valueCount(), is(1));
+        assertThat(subscriber.values().get(0), instanceOf(TwoPSet.StateCommand.class));
+
+        // when:
+        set1.subscribeTo(set2);
+        set2.subscribeTo(set1);
+
+        // then:
+        assertThat(set1, containsInAnyOrder("1", "3", "4"));
+        assertThat(set2, containsInAnyOrder("1", "3", "4"));
+    }
 }
@@ -0,0 +1,253 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.crdt.Crdt;
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GCounter;
+import io.reactivex.Flowable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class CommandLogTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String CRDT_ID = "ID_1";
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("wurmloch-log");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+
+    @Test
+    public void shouldReplayRecordsAfterReopen() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final List<CrdtCommand> commands = record(counter);
+        try (CommandLog log = new CommandLog(directory)) {
+            log.appendDefinition(CRDT_ID, GCounter.class);
+            counter.increment();
+            counter.increment(3L);
+            for (final CrdtCommand command : commands) {
+                log.append(command);
+            }
+        }
+
+        // when:
+        final Map<String, Class<? extends Crdt>> definitions = new LinkedHashMap<>();
+        final List<CrdtCommand> replayed = new ArrayList<>();
+        final long count;
+        try (CommandLog log = new CommandLog(directory)) {
+            count = log.replay(definitions::put, replayed::add);
+        }
+
+        // then:
+        assertThat(count, is(3L));
+        assertThat(definitions.get(CRDT_ID), is(GCounter.class));
+        assertThat(valueOf(replayed), is(4L));
+    }
+
+    @Test
+    public void shouldCompleteAppendsAfterSync() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final List<CrdtCommand> commands = record(counter);
+        for (int i = 0; i < 1000; i++) {
+            counter.increment();
+        }
+
+        // when:
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        final long syncCount;
+        try (CommandLog log = new CommandLog(directory, new BinaryCommandCodec(), 1024L * 1024L, 64, 10L, TimeUnit.MILLISECONDS)) {
+            for (final CrdtCommand command : commands) {
+                futures.add(log.append(command));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            syncCount = log.getSyncCount();
+        }
+
+        // then:
+        assertThat(syncCount, greaterThan(0L));
+        assertThat(syncCount, lessThan(1000L));
+    }
+
+    @Test
+    public void shouldCompleteAwaitDurableAfterEarlierAppends() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final List<CrdtCommand> commands = record(counter);
+        for (int i = 0; i < 100; i++) {
+            counter.increment();
+        }
+
+        try (CommandLog log = new CommandLog(directory, new BinaryCommandCodec(), 1024L * 1024L, 16, 0L, TimeUnit.MILLISECONDS)) {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (final CrdtCommand command : commands) {
+                futures.add(log.append(command));
+            }
+
+            // when:
+            log.awaitDurable().get(10, TimeUnit.SECONDS);
+
+            // then:
+            for (final CompletableFuture<Void> future : futures) {
+                assertThat(future.isDone() && !future.isCompletedExceptionally(), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void shouldRollSegments() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final List<CrdtCommand> commands = record(counter);
+        for (int i = 0; i < 100; i++) {
+            counter.increment();
+        }
+
+        // when:
+        try (CommandLog log = new CommandLog(directory, new BinaryCommandCodec(), 256L, 16, 0L, TimeUnit.MILLISECONDS)) {
+            for (final CrdtCommand command : commands) {
+                log.append(command);
+            }
+        }
+
+        // then:
+        assertThat(listSegments().size(), greaterThan(2));
+        final List<CrdtCommand> replayed = new ArrayList<>();
+        try (CommandLog log = new CommandLog(directory)) {
+            log.replay((crdtId, crdtClass) -> {}, replayed::add);
+        }
+        assertThat(replayed.size(), is(100));
+        assertThat(valueOf(replayed), is(100L));
+    }
+
+    @Test
+    public void shouldIgnoreTornTail() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final List<CrdtCommand> commands = record(counter);
+        counter.increment();
+        counter.increment();
+        try (CommandLog log = new CommandLog(directory)) {
+            for (final CrdtCommand command : commands) {
+                log.append(command);
+            }
+        }
+        final Path segment = listSegments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1L);
+        }
+
+        // when:
+        final List<CrdtCommand> replayed = new ArrayList<>();
+        try (CommandLog log = new CommandLog(directory)) {
+            log.replay((crdtId, crdtClass) -> {}, replayed::add);
+        }
+
+        // then:
+        assertThat(replayed.size(), is(1));
+        assertThat(valueOf(replayed), is(1L));
+    }
+
+    @Test
+    public void shouldDeleteOlderSegmentsOnCheckpoint() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final List<CrdtCommand> commands = record(counter);
+        counter.increment();
+
+        // when:
+        try (CommandLog log = new CommandLog(directory)) {
+            log.append(commands.get(0));
+            log.beginCheckpoint();
+            log.append(commands.get(0));
+            log.completeCheckpoint().get(10, TimeUnit.SECONDS);
+        }
+
+        // then:
+        assertThat(listSegments().size(), is(1));
+        final List<CrdtCommand> replayed = new ArrayList<>();
+        try (CommandLog log = new CommandLog(directory)) {
+            log.replay((crdtId, crdtClass) -> {}, replayed::add);
+        }
+        assertThat(replayed.size(), is(1));
+    }
+
+    @Test(expectedExceptions = ExecutionException.class)
+    public void appendingToClosedLogShouldFail() throws Exception {
+        final CommandLog log = new CommandLog(directory);
+        log.close();
+        log.appendDefinition(CRDT_ID, GCounter.class).get();
+    }
+
+    @Test(expectedExceptions = ExecutionException.class)
+    public void awaitDurableOnClosedLogShouldFail() throws Exception {
+        final CommandLog log = new CommandLog(directory);
+        log.close();
+        log.awaitDurable().get();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroMaxBatchSizeShouldThrow() throws IOException {
+        new CommandLog(directory, new BinaryCommandCodec(), 1024L, 0, 0L, TimeUnit.MILLISECONDS);
+    }
+
+
+    private static List<CrdtCommand> record(GCounter counter) {
+        final List<CrdtCommand> commands = new ArrayList<>();
+        Flowable.fromPublisher(counter).subscribe(commands::add);
+        return commands;
+    }
+
+    private static long valueOf(List<CrdtCommand> commands) {
+        final GCounter replica = new GCounter("N_2", CRDT_ID);
+        replica.subscribeTo(Flowable.fromIterable(commands).cast(GCounter.UpdateCommand.class));
+        return replica.get();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        final List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                if (Files.size(path) > 8L) {
+                    result.add(path);
+                }
+            }
+        }
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+}
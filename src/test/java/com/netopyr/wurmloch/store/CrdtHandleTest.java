@@ -0,0 +1,100 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.GSet;
+import org.testng.annotations.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class CrdtHandleTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void handleWithNullClassShouldThrow() {
+        new CrdtStore(NODE_ID_1).handle(null, CRDT_ID);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void handleWithNullIdShouldThrow() {
+        new CrdtStore(NODE_ID_1).handle(GSet.class, null);
+    }
+
+    @Test(expectedExceptions = NoSuchElementException.class)
+    public void gettingMissingCrdtShouldThrow() {
+        new CrdtStore(NODE_ID_1).handle(GSet.class, CRDT_ID).get();
+    }
+
+
+    @Test
+    public void shouldResolveCrdtOnceItExists() {
+        // given:
+        final CrdtStore store = new CrdtStore(NODE_ID_1);
+        final CrdtHandle<GSet> handle = store.handle(GSet.class, CRDT_ID);
+
+        // then:
+        assertThat(handle.getOrNull(), is(nullValue()));
+
+        // when:
+        final GSet<String> expected = store.createGSet(CRDT_ID);
+
+        // then:
+        assertThat(handle.getOrNull(), is(sameInstance(expected)));
+        assertThat(handle.get(), is(sameInstance(expected)));
+    }
+
+    @Test
+    public void shouldNotResolveCrdtOfDifferentType() {
+        // given:
+        final CrdtStore store = new CrdtStore(NODE_ID_1);
+        store.createORSet(CRDT_ID);
+
+        // when:
+        final CrdtHandle<GSet> handle = store.handle(GSet.class, CRDT_ID);
+
+        // then:
+        assertThat(handle.getOrNull(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldResolveCrdtOfConnectedStore() {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        final CrdtHandle<GSet> handle = store2.handle(GSet.class, CRDT_ID);
+        store1.connect(store2);
+
+        // when:
+        final GSet<String> set1 = store1.createGSet(CRDT_ID);
+        set1.add("A");
+
+        // then:
+        assertThat(handle.get().contains("A"), is(true));
+    }
+
+    @Test
+    public void shouldReportCachedAccessesToEvictionPolicy() {
+        // given:
+        final BackingStore backingStore = new InMemoryBackingStore();
+        final CrdtStore store = new CrdtStore(NODE_ID_1, new LruEvictionPolicy(2), backingStore);
+        final CrdtHandle<GSet> handle = store.handle(GSet.class, "A");
+        store.<String>createGSet("A").add("1");
+        handle.get();
+        store.<String>createGSet("B").add("2");
+
+        // when:
+        handle.get();
+        store.<String>createGSet("C").add("3");
+
+        // then:
+        assertThat(backingStore.load("A").isEmpty(), is(true));
+        assertThat(backingStore.load("B").isEmpty(), is(false));
+    }
+}
@@ -2,13 +2,36 @@ package com.netopyr.wurmloch.store;
 
 import com.netopyr.wurmloch.crdt.Crdt;
 import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GCounter;
+import com.netopyr.wurmloch.crdt.GSet;
+import com.netopyr.wurmloch.crdt.ORSWOT;
+import com.netopyr.wurmloch.crdt.ORSet;
+import com.netopyr.wurmloch.crdt.RGA;
 import com.netopyr.wurmloch.store.SimpleCrdt.SimpleCommand;
 import io.reactivex.subscribers.TestSubscriber;
 import javaslang.control.Option;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class CrdtStoreTest {
     
@@ -37,6 +60,564 @@ public class CrdtStoreTest {
         assertThat(result2.get(), is(expected));
     }
 
+    @Test
+    public void shouldGetCrdtsByType() {
+        // given:
+        final CrdtStore store = new CrdtStore();
+        store.registerFactory(SimpleCrdt.class, SimpleCrdt::new);
+        final SimpleCrdt expected = store.createCrdt(SimpleCrdt.class, CRDT_ID);
+
+        // then:
+        assertThat(store.getCrdt(SimpleCrdt.class, CRDT_ID), is(expected));
+        assertThat(store.getCrdt(Crdt.class, CRDT_ID), is(expected));
+        assertThat(store.getCrdt(GSet.class, CRDT_ID), is(nullValue()));
+        assertThat(store.getCrdt(SimpleCrdt.class, NODE_ID_1), is(nullValue()));
+    }
+
+    @Test
+    public void shouldSendDefinitionsOfExistingAndNewCrdtsToLateSubscribers() {
+        // given:
+        final CrdtStore store = new CrdtStore(NODE_ID_1);
+        store.createGCounter(CRDT_ID);
+        final TestSubscriber<CrdtDefinition> subscriber = TestSubscriber.create();
+
+        // when:
+        store.subscribe(subscriber);
+        store.createGSet("ID_2");
+
+        // then:
+        subscriber.assertValueCount(2);
+        assertThat(subscriber.values().get(0).getCrdtId(), is(CRDT_ID));
+        assertThat(subscriber.values().get(1).getCrdtId(), is("ID_2"));
+    }
+
+    @Test
+    public void shouldCreateRemoteCrdtsOnFirstAccessInLazyMode() {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, true);
+        final TestSubscriber<CrdtDefinition> store2Subscriber = TestSubscriber.create();
+        store2.subscribe(store2Subscriber);
+        final GSet<String> set1 = store1.createGSet(CRDT_ID);
+        set1.add("A");
+
+        // when:
+        store1.connect(store2);
+        set1.add("B");
+
+        // then:
+        assertThat(store2Subscriber.valueCount(), is(0));
+
+        // when:
+        final GSet<String> set2 = store2.<String>findGSet(CRDT_ID).get();
+
+        // then:
+        assertThat(store2Subscriber.valueCount(), is(1));
+        assertThat(set2, containsInAnyOrder("A", "B"));
+
+        // when:
+        set1.add("C");
+        set2.add("D");
+
+        // then:
+        assertThat(set1, containsInAnyOrder("A", "B", "C", "D"));
+        assertThat(set2, containsInAnyOrder("A", "B", "C", "D"));
+    }
+
+    @Test
+    public void shouldSubscribeLocallyCreatedCrdtsToPendingDefinitionsInLazyMode() {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, true);
+        final GSet<String> set1 = store1.createGSet(CRDT_ID);
+        set1.add("A");
+        store1.connect(store2);
+
+        // when:
+        final GSet<String> set2 = store2.createGSet(CRDT_ID);
+
+        // then:
+        assertThat(set2, containsInAnyOrder("A"));
+    }
+
+    @Test
+    public void shouldEvictAndReloadCrdts() {
+        // given:
+        final BackingStore backingStore = new InMemoryBackingStore();
+        final CrdtStore store = new CrdtStore(NODE_ID_1, new LruEvictionPolicy(2), backingStore);
+        store.<String>createGSet("A").add("1");
+        store.<String>createGSet("B").add("2");
+
+        // when:
+        store.<String>createGSet("C").add("3");
+
+        // then:
+        assertThat(backingStore.load("A").isEmpty(), is(false));
+        assertThat(backingStore.load("B").isEmpty(), is(true));
+
+        // when:
+        final GSet<String> set = store.<String>findGSet("A").get();
+
+        // then:
+        assertThat(set, containsInAnyOrder("1"));
+        assertThat(backingStore.load("A").isEmpty(), is(true));
+        assertThat(backingStore.load("B").isEmpty(), is(false));
+    }
+
+    @Test
+    public void shouldApplyRemoteCommandsToEvictedCrdts() {
+        // given:
+        final BackingStore backingStore = new InMemoryBackingStore();
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, new LruEvictionPolicy(1), backingStore);
+        store1.connect(store2);
+        final GSet<String> set1 = store1.createGSet("A");
+
+        // when:
+        set1.add("1");
+
+        // then:
+        assertThat(backingStore.load("A").isEmpty(), is(false));
+
+        // when:
+        final GSet<String> set2 = store2.<String>findGSet("A").get();
+        set2.add("2");
+
+        // then:
+        assertThat(set1, containsInAnyOrder("1", "2"));
+        assertThat(set2, containsInAnyOrder("1", "2"));
+
+        // when:
+        store2.createGSet("B");
+        set1.add("3");
+
+        // then:
+        assertThat(backingStore.load("A").isEmpty(), is(false));
+        assertThat(store2.<String>findGSet("A").get(), containsInAnyOrder("1", "2", "3"));
+
+        // when:
+        store2.<String>findGSet("A").get().add("4");
+
+        // then:
+        assertThat(set1, containsInAnyOrder("1", "2", "3", "4"));
+    }
+
+    @Test
+    public void shouldResolveHandlesAgainAfterEviction() {
+        // given:
+        final CrdtStore store = new CrdtStore(NODE_ID_1, new LruEvictionPolicy(1), new InMemoryBackingStore());
+        final CrdtHandle<GSet> handle = store.handle(GSet.class, "A");
+        store.<String>createGSet("A").add("1");
+        final GSet first = handle.get();
+
+        // when:
+        store.createGSet("B");
+
+        // then:
+        assertThat(handle.get() == first, is(false));
+        assertThat(handle.get().contains("1"), is(true));
+    }
+
+    @Test
+    public void shouldFunnelMutationsThroughShardThreads() throws Exception {
+        // given:
+        final int threadCount = 8;
+        final int incrementsPerThread = 500;
+        final ShardedExecutor shards = new ShardedExecutor(4);
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1, shards);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, shards);
+        store1.connect(store2);
+        store1.createGCounter(CRDT_ID);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        // when:
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final CrdtStore store = i % 2 == 0 ? store1 : store2;
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < incrementsPerThread; j++) {
+                    store.submit(GCounter.class, CRDT_ID, counter -> {
+                        assertThat(shards.isOwner(CRDT_ID), is(true));
+                        counter.increment();
+                        return null;
+                    }).get(10, TimeUnit.SECONDS);
+                }
+                return null;
+            }));
+        }
+        for (final Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then:
+        // both stores share the owning thread, so commands sent to the other store are queued before these tasks
+        final long expected = threadCount * incrementsPerThread;
+        assertThat(store1.submit(GCounter.class, CRDT_ID, GCounter::get).get(10, TimeUnit.SECONDS), is(expected));
+        assertThat(store2.submit(GCounter.class, CRDT_ID, GCounter::get).get(10, TimeUnit.SECONDS), is(expected));
+
+        shards.shutdown();
+    }
+
+    @Test
+    public void shouldReplicateOverLinkThreads() throws Exception {
+        // given:
+        final ThreadFactory linkThreads = runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1, linkThreads, 16);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, linkThreads, 16);
+        store1.connect(store2);
+        final GCounter counter1 = store1.createGCounter(CRDT_ID);
+
+        // when:
+        for (int i = 0; i < 1000; i++) {
+            counter1.increment();
+        }
+
+        // then:
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (store2.findGCounter(CRDT_ID).map(GCounter::get).getOrElse(0L) < 1000L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(store2.findGCounter(CRDT_ID).get().get(), is(1000L));
+
+        store1.disconnect(store2);
+    }
+
+    @Test(timeOut = 10_000L)
+    public void shouldNotDeadlockWhenReplicasAddToORSetConcurrentlyOverLinkThreads() throws Exception {
+        // given:
+        final ThreadFactory linkThreads = runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1, linkThreads, 1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, linkThreads, 1);
+        store1.connect(store2);
+        final ORSet<String> set1 = store1.createORSet(CRDT_ID);
+        while (store2.findORSet(CRDT_ID).isEmpty()) {
+            Thread.sleep(10L);
+        }
+        final ORSet<String> set2 = store2.<String>findORSet(CRDT_ID).get();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when:
+        final Future<?> adds1 = executor.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                set1.add("A" + i);
+            }
+        });
+        final Future<?> adds2 = executor.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                set2.add("B" + i);
+            }
+        });
+        adds1.get();
+        adds2.get();
+
+        // then:
+        while (set1.size() < 1000 || set2.size() < 1000) {
+            Thread.sleep(10L);
+        }
+        assertThat(set1.size(), is(1000));
+        assertThat(set2.size(), is(1000));
+
+        executor.shutdown();
+        store1.disconnect(store2);
+    }
+
+    @Test(timeOut = 10_000L)
+    public void shouldConvergeWhenReplicasAddToRGAConcurrentlyOverLinkThreads() throws Exception {
+        // given:
+        final ThreadFactory linkThreads = runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1, linkThreads, 1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, linkThreads, 1);
+        store1.connect(store2);
+        final RGA<String> rga1 = store1.createRGA(CRDT_ID);
+        while (store2.findRGA(CRDT_ID).isEmpty()) {
+            Thread.sleep(10L);
+        }
+        final RGA<String> rga2 = store2.<String>findRGA(CRDT_ID).get();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when:
+        final Future<?> adds1 = executor.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                rga1.add(0, "A" + i);
+            }
+        });
+        final Future<?> adds2 = executor.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                rga2.add(0, "B" + i);
+            }
+        });
+        adds1.get();
+        adds2.get();
+
+        // then:
+        while (rga1.size() < 1000 || rga2.size() < 1000) {
+            Thread.sleep(10L);
+        }
+        assertThat(rga1.snapshot(), is(rga2.snapshot()));
+
+        executor.shutdown();
+        store1.disconnect(store2);
+    }
+
+    @Test
+    public void shouldResyncReplicasWhenReplicationQueuesOverflow() throws Exception {
+        // given:
+        final ShardedExecutor shards1 = new ShardedExecutor(2);
+        final ShardedExecutor shards2 = new ShardedExecutor(2);
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1, shards1, 4, OverflowStrategy.DROP_AND_RESYNC);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, shards2, 4, OverflowStrategy.DROP_AND_RESYNC);
+        store1.connect(store2);
+        final GSet<String> set1 = store1.createGSet(CRDT_ID);
+
+        // when:
+        for (int i = 0; i < 1000; i++) {
+            set1.add("element" + i);
+        }
+
+        // then:
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (store2.<String>findGSet(CRDT_ID).map(GSet::size).getOrElse(0) < 1000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(store2.submit(GSet.class, CRDT_ID, GSet::size).get(10, TimeUnit.SECONDS), is(1000));
+        assertThat(store2.getReplicationMetrics().getQueueDepth(), is(0L));
+
+        shards1.shutdown();
+        shards2.shutdown();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroReplicationCapacityShouldThrow() {
+        new CrdtStore(NODE_ID_1, new ShardedExecutor(1), 0, OverflowStrategy.BLOCK);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroLinkCapacityShouldThrow() {
+        new CrdtStore(NODE_ID_1, Thread::new, 0);
+    }
+
+    @Test
+    public void shouldRecoverCrdtsFromCommandLog() throws Exception {
+        // given:
+        final Path directory = Files.createTempDirectory("wurmloch-store");
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            store.createGCounter(CRDT_ID).increment(5L);
+            final ORSet<String> set = store.createORSet("ID_2");
+            set.add("A");
+            set.add("B");
+            set.remove("A");
+        }
+
+        // when:
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+
+            // then:
+            assertThat(store.findGCounter(CRDT_ID).get().get(), is(5L));
+            assertThat(store.<String>findORSet("ID_2").get(), containsInAnyOrder("B"));
+
+            // when:
+            store.findGCounter(CRDT_ID).get().increment();
+        }
+
+        // then:
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            assertThat(store.findGCounter(CRDT_ID).get().get(), is(6L));
+            assertThat(store.<String>findORSet("ID_2").get(), containsInAnyOrder("B"));
+        }
+
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldRecoverCrdtsAfterCheckpoint() throws Exception {
+        // given:
+        final Path directory = Files.createTempDirectory("wurmloch-store");
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            final GSet<String> set = store.createGSet(CRDT_ID);
+            set.add("A");
+
+            // when:
+            store.checkpoint().get(10, TimeUnit.SECONDS);
+            set.add("B");
+        }
+
+        // then:
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            assertThat(store.<String>findGSet(CRDT_ID).get(), containsInAnyOrder("A", "B"));
+        }
+
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldMakeCommandsDurableBeforeLogIsClosed() throws Exception {
+        // given:
+        final Path directory = Files.createTempDirectory("wurmloch-store");
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            final GCounter counter = store.createGCounter(CRDT_ID);
+            counter.increment(2L);
+            counter.increment(3L);
+
+            // when:
+            store.awaitDurable().get(10, TimeUnit.SECONDS);
+
+            // then:
+            try (CommandLog copy = new CommandLog(directory)) {
+                final CrdtStore recovered = new CrdtStore(NODE_ID_1, copy);
+                assertThat(recovered.findGCounter(CRDT_ID).get().get(), is(5L));
+            }
+        }
+
+        deleteDirectory(directory);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void awaitDurableWithoutCommandLogShouldThrow() {
+        new CrdtStore(NODE_ID_1).awaitDurable();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldRecordLocalChangesOfRecoveredCrdts() throws Exception {
+        // given:
+        final Path directory = Files.createTempDirectory("wurmloch-store");
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            store.<String>createLWWRegister("LWW").set("A");
+            store.<String>createMVRegister("MV").set("A");
+            store.createGCounter("GC").increment();
+            store.createPNCounter("PN").increment(2L);
+            store.<String>createGSet("GS").add("A");
+            store.<String>createORSet("OR").add("A");
+            store.createCrdt(ORSWOT.class, "ORSWOT").add("A");
+            store.<String>createRGA("RGA").add("A");
+            store.createTextRGA("TEXT").append("A");
+        }
+
+        // when:
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            store.<String>findLWWRegister("LWW").get().set("B");
+            store.<String>findMVRegister("MV").get().set("B");
+            store.findGCounter("GC").get().increment();
+            store.findPNCounter("PN").get().decrement();
+            store.<String>findGSet("GS").get().add("B");
+            final ORSet<String> orSet = store.<String>findORSet("OR").get();
+            orSet.remove("A");
+            orSet.add("B");
+            final ORSWOT<String> orswot = store.getCrdt(ORSWOT.class, "ORSWOT");
+            orswot.remove("A");
+            orswot.add("B");
+            store.<String>findRGA("RGA").get().add("B");
+            store.findTextRGA("TEXT").get().append("B");
+        }
+
+        // then:
+        try (CommandLog log = new CommandLog(directory)) {
+            final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+            assertThat(store.<String>findLWWRegister("LWW").get().get(), is("B"));
+            assertThat(store.<String>findMVRegister("MV").get().get(), contains("B"));
+            assertThat(store.findGCounter("GC").get().get(), is(2L));
+            assertThat(store.findPNCounter("PN").get().get(), is(1L));
+            assertThat(store.<String>findGSet("GS").get(), containsInAnyOrder("A", "B"));
+            assertThat(store.<String>findORSet("OR").get(), containsInAnyOrder("B"));
+            final ORSWOT<String> orswot = store.getCrdt(ORSWOT.class, "ORSWOT");
+            assertThat(orswot, containsInAnyOrder("B"));
+            assertThat(store.<String>findRGA("RGA").get(), contains("A", "B"));
+            assertThat(store.findTextRGA("TEXT").get().toString(), is("AB"));
+        }
+
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldReportCommandLogFailures() throws Exception {
+        // given:
+        final Path directory = Files.createTempDirectory("wurmloch-store");
+        final CommandLog log = new CommandLog(directory);
+        final CrdtStore store = new CrdtStore(NODE_ID_1, log);
+        assertThat(store.getCommandLogFailure().isDefined(), is(false));
+
+        // when:
+        log.close();
+        store.createGCounter(CRDT_ID).increment();
+
+        // then:
+        assertThat(store.getCommandLogFailure().isDefined(), is(true));
+
+        deleteDirectory(directory);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void checkpointWithoutCommandLogShouldThrow() {
+        new CrdtStore(NODE_ID_1).checkpoint();
+    }
+
+    @Test(expectedExceptions = ExecutionException.class)
+    public void submittingToMissingCrdtShouldFail() throws Exception {
+        new CrdtStore(NODE_ID_1).submit(GCounter.class, CRDT_ID, GCounter::get).get();
+    }
+
+    @Test
+    public void shouldRegisterCrdtsCreatedConcurrently() throws Exception {
+        // given:
+        final int threadCount = 8;
+        final int crdtsPerThread = 500;
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        store1.registerFactory(SimpleCrdt.class, SimpleCrdt::new);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        store2.registerFactory(SimpleCrdt.class, SimpleCrdt::new);
+        store1.connect(store2);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+
+        // when:
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final CrdtStore store = i % 2 == 0 ? store1 : store2;
+            final String prefix = "T" + i + "_";
+            futures.add(executor.submit(() -> {
+                startSignal.await();
+                for (int j = 0; j < crdtsPerThread; j++) {
+                    store.createCrdt(SimpleCrdt.class, prefix + j);
+                }
+                return null;
+            }));
+        }
+        startSignal.countDown();
+        for (final Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then:
+        for (int i = 0; i < threadCount; i++) {
+            for (int j = 0; j < crdtsPerThread; j++) {
+                assertThat(store1.findCrdt("T" + i + "_" + j).isDefined(), is(true));
+                assertThat(store2.findCrdt("T" + i + "_" + j).isDefined(), is(true));
+            }
+        }
+    }
+
     @Test
     public void shouldAddCrdtWhileConnected() {
         // given:
@@ -260,4 +841,11 @@ public class CrdtStoreTest {
     public void shouldSendPartialCommandsAfterReconnect() {
 
     }
+
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
 }
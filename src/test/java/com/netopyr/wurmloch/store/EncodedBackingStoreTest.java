@@ -0,0 +1,82 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GSet;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class EncodedBackingStoreTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullCodecShouldThrow() {
+        new EncodedBackingStore(null);
+    }
+
+    @Test
+    public void shouldSaveAppendAndLoadCommands() {
+        // given:
+        final EncodedBackingStore store = new EncodedBackingStore();
+        final GSet<String> set = new GSet<>(CRDT_ID);
+        final TestSubscriber<GSet.AddCommand<String>> subscriber = TestSubscriber.create();
+        set.subscribe(subscriber);
+        set.add("A");
+        set.add("B");
+        set.add("C");
+        final List<GSet.AddCommand<String>> commands = subscriber.values();
+
+        // then:
+        assertThat(store.load(CRDT_ID), empty());
+
+        // when:
+        store.save(CRDT_ID, Arrays.asList(commands.get(0), commands.get(1)));
+        final int appended = store.append(CRDT_ID, commands.get(2));
+
+        // then:
+        assertThat(appended, is(1));
+        assertThat(store.load(CRDT_ID), contains((CrdtCommand) commands.get(0), commands.get(1), commands.get(2)));
+
+        // when:
+        store.save(CRDT_ID, commands.subList(2, 3));
+
+        // then:
+        assertThat(store.load(CRDT_ID), contains((CrdtCommand) commands.get(2)));
+
+        // when:
+        store.remove(CRDT_ID);
+
+        // then:
+        assertThat(store.load(CRDT_ID), empty());
+    }
+
+    @Test
+    public void shouldKeepEvictedCrdtsOfStore() {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, new LruEvictionPolicy(1), new EncodedBackingStore());
+        store1.connect(store2);
+        final GSet<String> set1 = store1.createGSet("A");
+        set1.add("1");
+
+        // when:
+        store2.createGSet("B");
+        set1.add("2");
+
+        // then:
+        final GSet<String> set2 = store2.<String>findGSet("A").get();
+        assertThat(set2, containsInAnyOrder("1", "2"));
+    }
+}
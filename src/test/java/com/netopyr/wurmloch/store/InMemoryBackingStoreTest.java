@@ -0,0 +1,49 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.store.SimpleCrdt.SimpleCommand;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class InMemoryBackingStoreTest {
+
+    private static final String CRDT_ID = "ID_1";
+
+
+    @Test
+    public void shouldSaveAppendAndLoadCommands() {
+        // given:
+        final InMemoryBackingStore store = new InMemoryBackingStore();
+        final SimpleCommand command1 = new SimpleCommand("N_1", CRDT_ID);
+        final SimpleCommand command2 = new SimpleCommand("N_2", CRDT_ID);
+        final SimpleCommand command3 = new SimpleCommand("N_3", CRDT_ID);
+
+        // then:
+        assertThat(store.load(CRDT_ID), empty());
+
+        // when:
+        store.save(CRDT_ID, Collections.singletonList(command1));
+        final int appended = store.append(CRDT_ID, command2);
+
+        // then:
+        assertThat(appended, is(1));
+        assertThat(store.load(CRDT_ID), contains(command1, command2));
+
+        // when:
+        store.save(CRDT_ID, Collections.singletonList(command3));
+
+        // then:
+        assertThat(store.load(CRDT_ID), contains(command3));
+
+        // when:
+        store.remove(CRDT_ID);
+
+        // then:
+        assertThat(store.load(CRDT_ID), empty());
+    }
+}
@@ -0,0 +1,64 @@
+package com.netopyr.wurmloch.store;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class LruEvictionPolicyTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroMaxResidentShouldThrow() {
+        new LruEvictionPolicy(0);
+    }
+
+    @Test
+    public void shouldSelectLeastRecentlyUsed() {
+        // given:
+        final LruEvictionPolicy policy = new LruEvictionPolicy(2);
+        policy.onLoad("A");
+        policy.onLoad("B");
+
+        // then:
+        assertThat(policy.selectVictims(), empty());
+
+        // when:
+        policy.onAccess("A");
+        policy.onLoad("C");
+
+        // then:
+        assertThat(policy.selectVictims(), contains("B"));
+
+        // when:
+        policy.onEvict("B");
+
+        // then:
+        assertThat(policy.selectVictims(), empty());
+    }
+
+    @Test
+    public void shouldEvictBelowTheLimit() {
+        // given:
+        final LruEvictionPolicy policy = new LruEvictionPolicy(8);
+        for (int i = 0; i < 9; i++) {
+            policy.onLoad("ID_" + i);
+        }
+
+        // then:
+        assertThat(policy.selectVictims(), contains("ID_0", "ID_1"));
+    }
+
+    @Test
+    public void shouldIgnoreAccessesOfEvictedCrdts() {
+        // given:
+        final LruEvictionPolicy policy = new LruEvictionPolicy(1);
+        policy.onLoad("A");
+
+        // when:
+        policy.onAccess("B");
+
+        // then:
+        assertThat(policy.selectVictims(), empty());
+    }
+}
@@ -0,0 +1,284 @@
+package com.netopyr.wurmloch.store;
+
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GCounter;
+import com.netopyr.wurmloch.crdt.ORSet;
+import com.netopyr.wurmloch.crdt.SnapshotHandshake;
+import com.netopyr.wurmloch.crdt.USet;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+public class ReplicationQueueTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID = "ID_1";
+
+    private ExecutorService executor;
+    private Scheduler scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        scheduler = Schedulers.from(executor);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void shouldOnlyEmitRequestedCommands() throws Exception {
+        // given:
+        final PublishProcessor<CrdtCommand> source = PublishProcessor.create();
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<CrdtCommand> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(source, 16, OverflowStrategy.BLOCK, true, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        for (int i = 0; i < 5; i++) {
+            source.onNext(new CrdtCommand(CRDT_ID) {});
+        }
+
+        // then:
+        Thread.sleep(50L);
+        assertThat(subscriber.valueCount(), is(0));
+        assertThat(metrics.getQueueDepth(), is(5L));
+
+        // when:
+        subscriber.request(2L);
+
+        // then:
+        awaitUntil(() -> subscriber.valueCount() == 2);
+        assertThat(metrics.getQueueDepth(), is(3L));
+        assertThat(metrics.getMaxQueueDepth(), is(5L));
+    }
+
+    @Test
+    public void shouldBlockEmitterWhileQueueIsFull() throws Exception {
+        // given:
+        final PublishProcessor<CrdtCommand> source = PublishProcessor.create();
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<CrdtCommand> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(source, 2, OverflowStrategy.BLOCK, true, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        final Thread emitter = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                source.onNext(new CrdtCommand(CRDT_ID) {});
+            }
+        });
+        emitter.start();
+
+        // then:
+        awaitUntil(() -> metrics.getBlockedCount() == 1L);
+        assertThat(emitter.isAlive(), is(true));
+
+        // when:
+        subscriber.request(1L);
+
+        // then:
+        emitter.join(10_000L);
+        assertThat(emitter.isAlive(), is(false));
+        assertThat(metrics.getQueueDepth(), is(2L));
+    }
+
+    @Test
+    public void shouldResyncWhenEmitterWaitedTooLong() throws Exception {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID);
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<ORSet.ORSetCommand<String>> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(set, 1, OverflowStrategy.BLOCK, true, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        set.add("A");
+        set.add("B");
+
+        // then:
+        assertThat(metrics.getBlockedCount(), is(1L));
+        assertThat(metrics.getResyncCount(), is(1L));
+
+        // when:
+        subscriber.request(Long.MAX_VALUE);
+
+        // then:
+        final ORSet<String> replica = new ORSet<>(NODE_ID_2, CRDT_ID);
+        awaitUntil(() -> metrics.getQueueDepth() == 0L);
+        replica.subscribeTo(Flowable.fromIterable(subscriber.values()));
+        assertThat(replica, containsInAnyOrder("A", "B"));
+    }
+
+    @Test
+    public void shouldCoalesceStateBasedCommandsWhileQueueIsFull() throws Exception {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID);
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<GCounter.UpdateCommand> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(counter, 1, OverflowStrategy.COALESCE, true, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        for (int i = 0; i < 10; i++) {
+            counter.increment();
+        }
+
+        // then:
+        assertThat(metrics.getQueueDepth(), is(1L));
+        assertThat(metrics.getCoalescedCount(), is(9L));
+
+        // when:
+        subscriber.request(Long.MAX_VALUE);
+
+        // then:
+        awaitUntil(() -> subscriber.valueCount() == 1);
+        final GCounter replica = new GCounter(NODE_ID_2, CRDT_ID);
+        replica.subscribeTo(Flowable.fromIterable(subscriber.values()));
+        assertThat(replica.get(), is(10L));
+    }
+
+    @Test
+    public void shouldResyncStateAfterDroppingCommands() throws Exception {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID);
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<ORSet.ORSetCommand<String>> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(set, 2, OverflowStrategy.DROP_AND_RESYNC, true, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        set.add("A");
+        set.add("B");
+        set.add("C");
+
+        // then:
+        assertThat(metrics.getResyncCount(), is(1L));
+        assertThat(metrics.getDroppedCount(), is(2L));
+
+        // when:
+        subscriber.request(Long.MAX_VALUE);
+
+        // then:
+        final ORSet<String> replica = new ORSet<>(NODE_ID_2, CRDT_ID);
+        awaitUntil(() -> metrics.getQueueDepth() == 0L);
+        replica.subscribeTo(Flowable.fromIterable(subscriber.values()));
+        assertThat(replica, containsInAnyOrder("A", "B", "C"));
+    }
+
+    @Test
+    public void shouldResyncInsteadOfBlockingShardThreads() throws Exception {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID);
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<ORSet.ORSetCommand<String>> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(set, 2, OverflowStrategy.BLOCK, true, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        try (ShardedExecutor shards = new ShardedExecutor(1)) {
+            final CountDownLatch done = new CountDownLatch(1);
+            shards.execute(CRDT_ID, () -> {
+                set.add("A");
+                set.add("B");
+                set.add("C");
+                done.countDown();
+            });
+            assertThat(done.await(10L, TimeUnit.SECONDS), is(true));
+        }
+
+        // then:
+        assertThat(metrics.getBlockedCount(), is(0L));
+        assertThat(metrics.getResyncCount(), is(1L));
+
+        // when:
+        subscriber.request(Long.MAX_VALUE);
+
+        // then:
+        final ORSet<String> replica = new ORSet<>(NODE_ID_2, CRDT_ID);
+        awaitUntil(() -> metrics.getQueueDepth() == 0L);
+        replica.subscribeTo(Flowable.fromIterable(subscriber.values()));
+        assertThat(replica, containsInAnyOrder("A", "B", "C"));
+    }
+
+    @Test
+    public void shouldResyncInsteadOfBlockingInNonBlockingQueue() throws Exception {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID);
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<ORSet.ORSetCommand<String>> subscriber = TestSubscriber.create(0L);
+        new ReplicationQueue<>(set, 2, OverflowStrategy.BLOCK, true, false, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        set.add("A");
+        set.add("B");
+        set.add("C");
+
+        // then:
+        assertThat(metrics.getBlockedCount(), is(0L));
+        assertThat(metrics.getResyncCount(), is(1L));
+
+        // when:
+        subscriber.request(Long.MAX_VALUE);
+
+        // then:
+        final ORSet<String> replica = new ORSet<>(NODE_ID_2, CRDT_ID);
+        awaitUntil(() -> metrics.getQueueDepth() == 0L);
+        replica.subscribeTo(Flowable.fromIterable(subscriber.values()));
+        assertThat(replica, containsInAnyOrder("A", "B", "C"));
+    }
+
+    @Test
+    public void shouldNotResyncCrdtsWithIncompleteSnapshots() throws Exception {
+        // given:
+        final USet<String> set = new USet<>(CRDT_ID);
+        final ReplicationMetrics metrics = new ReplicationMetrics();
+        final TestSubscriber<USet.USetCommand<String>> subscriber = TestSubscriber.create(0L);
+        final boolean resyncable = SnapshotHandshake.isComplete(USet.class);
+        new ReplicationQueue<>(set, 2, OverflowStrategy.DROP_AND_RESYNC, resyncable, scheduler, metrics).subscribe(subscriber);
+
+        // when:
+        final Thread emitter = new Thread(() -> {
+            set.add("A");
+            set.add("B");
+            set.remove("A");
+        });
+        emitter.start();
+
+        // then:
+        awaitUntil(() -> metrics.getBlockedCount() == 1L);
+        assertThat(metrics.getResyncCount(), is(0L));
+
+        // when:
+        subscriber.request(Long.MAX_VALUE);
+
+        // then:
+        emitter.join(10_000L);
+        awaitUntil(() -> subscriber.valueCount() == 3);
+        final USet<String> replica = new USet<>(CRDT_ID);
+        replica.subscribeTo(Flowable.fromIterable(subscriber.values()));
+        assertThat(replica, containsInAnyOrder("B"));
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(condition.getAsBoolean(), is(true));
+    }
+}
@@ -0,0 +1,73 @@
+package com.netopyr.wurmloch.store;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ShardedExecutorTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroShardsShouldThrow() {
+        new ShardedExecutor(0);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullThreadFactoryShouldThrow() {
+        new ShardedExecutor(1, null);
+    }
+
+    @Test
+    public void shouldRunTasksOfACrdtOnTheSameThreadInOrder() throws Exception {
+        // given:
+        final ShardedExecutor executor = new ShardedExecutor(4);
+        final List<Integer> results = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        // when:
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            last = executor.submit("ID_1", () -> {
+                results.add(value);
+                threads.add(Thread.currentThread());
+                return null;
+            });
+        }
+        last.get(10, TimeUnit.SECONDS);
+
+        // then:
+        assertThat(results, contains(0, 1, 2, 3, 4));
+        for (final Thread thread : threads) {
+            assertThat(thread, sameInstance(threads.get(0)));
+        }
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void shouldRunTasksImmediatelyOnOwningThread() throws Exception {
+        // given:
+        final ShardedExecutor executor = new ShardedExecutor(2);
+
+        // when:
+        final Boolean nested = executor.submit("ID_1", () -> {
+            final CompletableFuture<Boolean> inner = executor.submit("ID_1", () -> executor.isOwner("ID_1"));
+            return inner.isDone() && inner.join();
+        }).get(10, TimeUnit.SECONDS);
+
+        // then:
+        assertThat(nested, is(true));
+        assertThat(executor.isOwner("ID_1"), is(false));
+
+        executor.close();
+    }
+}
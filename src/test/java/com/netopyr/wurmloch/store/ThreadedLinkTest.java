@@ -0,0 +1,163 @@
+package com.netopyr.wurmloch.store;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.processors.UnicastProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class ThreadedLinkTest {
+
+    private static final ThreadFactory THREADS = runnable -> {
+        final Thread thread = new Thread(runnable, "link");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    @Test
+    public void shouldRelayItemsOnLinkThread() {
+        // given:
+        final PublishProcessor<Integer> source = PublishProcessor.create();
+        final List<String> threadNames = new CopyOnWriteArrayList<>();
+        final TestSubscriber<Integer> subscriber = TestSubscriber.create();
+        ThreadedLink.relay(source, THREADS, 4)
+                .doOnNext(item -> threadNames.add(Thread.currentThread().getName()))
+                .subscribe(subscriber);
+
+        // when:
+        source.onNext(1);
+        source.onNext(2);
+        source.onNext(3);
+        source.onComplete();
+
+        // then:
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        subscriber.assertResult(1, 2, 3);
+        assertThat(threadNames, contains("link", "link", "link"));
+    }
+
+    @Test
+    public void shouldNotRequestMoreItemsThanCapacity() throws Exception {
+        // given:
+        final List<Long> requests = new CopyOnWriteArrayList<>();
+        final Flowable<Integer> source = Flowable.range(0, 5).doOnRequest(requests::add);
+        final TestSubscriber<Integer> subscriber = TestSubscriber.create(0L);
+
+        // when:
+        ThreadedLink.relay(source, THREADS, 2).subscribe(subscriber);
+        Thread.sleep(200);
+
+        // then:
+        subscriber.assertNoValues();
+        assertThat(requests, contains(2L));
+
+        // when:
+        subscriber.request(5L);
+
+        // then:
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        subscriber.assertResult(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void shouldNotBlockEmitterWhileDownstreamIsSlow() throws Exception {
+        // given:
+        final UnicastProcessor<Integer> source = UnicastProcessor.create();
+        final CountDownLatch release = new CountDownLatch(1);
+        final TestSubscriber<Integer> subscriber = TestSubscriber.create();
+        ThreadedLink.relay(source, THREADS, 1)
+                .doOnNext(item -> release.await())
+                .subscribe(subscriber);
+        final Thread emitter = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                source.onNext(i);
+            }
+            source.onComplete();
+        });
+
+        // when:
+        emitter.start();
+        emitter.join(10_000);
+
+        // then:
+        assertThat(emitter.isAlive(), is(false));
+
+        // when:
+        release.countDown();
+
+        // then:
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        subscriber.assertResult(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void shouldCancelSourceWhichIgnoresBackpressure() throws Exception {
+        // given:
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final Publisher<Integer> source = downstream -> {
+            downstream.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.set(true);
+                }
+            });
+            downstream.onNext(0);
+            downstream.onNext(1);
+        };
+        final TestSubscriber<Integer> subscriber = TestSubscriber.create(0L);
+
+        // when:
+        ThreadedLink.relay(source, THREADS, 1).subscribe(subscriber);
+
+        // then:
+        assertThat(cancelled.get(), is(true));
+
+        // when:
+        subscriber.request(1L);
+
+        // then:
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        subscriber.assertValues(0);
+        subscriber.assertError(MissingBackpressureException.class);
+        assertThat(cancelled.get(), is(true));
+    }
+
+    @Test
+    public void shouldStopLinkThreadWhenCancelled() throws Exception {
+        // given:
+        final PublishProcessor<Integer> source = PublishProcessor.create();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final Disposable subscription = ThreadedLink.relay(source, runnable -> {
+            final Thread thread = THREADS.newThread(runnable);
+            threads.add(thread);
+            return thread;
+        }, 4).subscribe();
+
+        // when:
+        subscription.dispose();
+
+        // then:
+        threads.get(0).join(10_000);
+        assertThat(threads.get(0).isAlive(), is(false));
+        assertThat(source.hasSubscribers(), is(false));
+    }
+}
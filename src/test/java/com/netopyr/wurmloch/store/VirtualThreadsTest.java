@@ -0,0 +1,31 @@
+package com.netopyr.wurmloch.store;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void shouldCreateVirtualThreadsIfAvailable() throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            try {
+                VirtualThreads.threadFactory("test-");
+                throw new AssertionError("Expected UnsupportedOperationException");
+            } catch (UnsupportedOperationException expected) {
+                return;
+            }
+        }
+
+        // when:
+        final ThreadFactory factory = VirtualThreads.threadFactory("test-");
+        final Thread thread = factory.newThread(() -> {});
+
+        // then:
+        assertThat(Thread.class.getMethod("isVirtual").invoke(thread), is(true));
+        assertThat(thread.getName(), is("test-0"));
+    }
+}
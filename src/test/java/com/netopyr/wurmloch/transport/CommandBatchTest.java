@@ -0,0 +1,73 @@
+package com.netopyr.wurmloch.transport;
+
+import com.netopyr.wurmloch.crdt.CrdtCommand;
+import com.netopyr.wurmloch.crdt.GCounter;
+import com.netopyr.wurmloch.crdt.ORSet;
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class CommandBatchTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String CRDT_ID_1 = "ID_1";
+    private static final String CRDT_ID_2 = "ID_2";
+
+
+    @Test
+    public void shouldCoalesceStateBasedCommands() {
+        // given:
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID_1);
+        final TestSubscriber<CrdtCommand> subscriber = TestSubscriber.create();
+        Flowable.fromPublisher(counter).subscribe(subscriber);
+        final CommandBatch batch = new CommandBatch();
+
+        // when:
+        for (int i = 0; i < 100; i++) {
+            counter.increment();
+            batch.add(subscriber.values().get(i));
+        }
+
+        // then:
+        assertThat(batch.size(), is(1));
+        assertThat(batch.getCoalescedCommandCount(), is(99L));
+        final List<CrdtCommand> commands = batch.drain();
+        assertThat(commands, contains(subscriber.values().get(99)));
+        assertThat(batch.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldKeepOrderOfOperationBasedCommands() {
+        // given:
+        final ORSet<String> set = new ORSet<>(NODE_ID_1, CRDT_ID_1);
+        final GCounter counter = new GCounter(NODE_ID_1, CRDT_ID_2);
+        final TestSubscriber<CrdtCommand> setCommands = TestSubscriber.create();
+        final TestSubscriber<CrdtCommand> counterCommands = TestSubscriber.create();
+        Flowable.fromPublisher(set).subscribe(setCommands);
+        Flowable.fromPublisher(counter).subscribe(counterCommands);
+        set.add("A");
+        counter.increment();
+        set.remove("A");
+        counter.increment();
+        final CommandBatch batch = new CommandBatch();
+
+        // when:
+        batch.add(setCommands.values().get(0));
+        batch.add(counterCommands.values().get(0));
+        batch.add(setCommands.values().get(1));
+        batch.add(counterCommands.values().get(1));
+
+        // then:
+        assertThat(batch.drain(), contains(
+                setCommands.values().get(0),
+                counterCommands.values().get(1),
+                setCommands.values().get(1)
+        ));
+    }
+}
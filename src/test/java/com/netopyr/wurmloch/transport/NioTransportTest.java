@@ -0,0 +1,299 @@
+package com.netopyr.wurmloch.transport;
+
+import com.netopyr.wurmloch.crdt.BinaryCommandCodec;
+import com.netopyr.wurmloch.crdt.GCounter;
+import com.netopyr.wurmloch.crdt.GSet;
+import com.netopyr.wurmloch.crdt.ORSet;
+import com.netopyr.wurmloch.crdt.RGA;
+import com.netopyr.wurmloch.store.CrdtDefinition;
+import com.netopyr.wurmloch.store.CrdtStore;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+public class NioTransportTest {
+
+    private static final String NODE_ID_1 = "N_1";
+    private static final String NODE_ID_2 = "N_2";
+    private static final String CRDT_ID_1 = "ID_1";
+    private static final String CRDT_ID_2 = "ID_2";
+
+    private NioTransport transport1;
+    private NioTransport transport2;
+
+    @BeforeMethod
+    public void setUp() {
+        transport1 = null;
+        transport2 = null;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (transport1 != null) {
+            transport1.close();
+        }
+        if (transport2 != null) {
+            transport2.close();
+        }
+    }
+
+
+    @Test
+    public void shouldReplicateCrdtsInBothDirections() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        final GCounter counter1 = store1.createGCounter(CRDT_ID_1);
+        counter1.increment(3L);
+        connect(store1, store2);
+
+        // when:
+        final RGA<String> rga2 = store2.createRGA(CRDT_ID_2);
+        rga2.add("A");
+        counter1.increment(2L);
+
+        // then:
+        awaitUntil(() -> store2.findGCounter(CRDT_ID_1).map(GCounter::get).getOrElse(0L) == 5L);
+        awaitUntil(() -> store1.<String>findRGA(CRDT_ID_2).map(RGA::size).getOrElse(0) == 1);
+
+        // when:
+        store2.findGCounter(CRDT_ID_1).get().increment();
+        store1.<String>findRGA(CRDT_ID_2).get().add("B");
+
+        // then:
+        awaitUntil(() -> counter1.get() == 6L);
+        awaitUntil(() -> rga2.size() == 2);
+        assertThat(rga2, contains("A", "B"));
+    }
+
+    @Test
+    public void shouldReplicateFramesLargerThanPooledBuffers() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        final ORSet<String> set1 = store1.createORSet(CRDT_ID_1);
+        for (int i = 0; i < 2000; i++) {
+            set1.add("element" + i);
+        }
+
+        // when:
+        connect(store1, store2);
+
+        // then:
+        awaitUntil(() -> store2.<String>findORSet(CRDT_ID_1).map(ORSet::size).getOrElse(0) == 2000);
+        assertThat(store2.<String>findORSet(CRDT_ID_1).get().contains("element1999"), is(true));
+    }
+
+    @Test
+    public void shouldSendStateWhenLazyStoreMaterializesCrdt() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2, true);
+        final ORSet<String> set1 = store1.createORSet(CRDT_ID_1);
+        set1.add("A");
+        connect(store1, store2);
+        set1.add("B");
+        Thread.sleep(100L);
+
+        // when:
+        final ORSet<String> set2 = awaitCrdt(store2);
+
+        // then:
+        awaitUntil(() -> set2.size() == 2);
+        assertThat(set2, containsInAnyOrder("A", "B"));
+    }
+
+    @Test
+    public void shouldCompleteRemoteStoreWhenConnectionIsClosed() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        final RemoteCrdtStore remote = connect(store1, store2);
+        awaitUntil(() -> transport1.getConnectionCount() == 1);
+
+        // when:
+        transport2.close();
+
+        // then:
+        assertThat(remote.isConnected(), is(false));
+        awaitUntil(() -> transport1.getConnectionCount() == 0);
+    }
+
+    @Test
+    public void shouldSendKnownDefinitionsToLateSubscriber() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        store1.createGCounter(CRDT_ID_1);
+        final RemoteCrdtStore remote = connect(store1, store2);
+        awaitUntil(() -> store2.findGCounter(CRDT_ID_1).isDefined());
+        final TestSubscriber<CrdtDefinition> subscriber = TestSubscriber.create();
+
+        // when:
+        remote.subscribe(subscriber);
+        store1.createGSet(CRDT_ID_2);
+
+        // then:
+        awaitUntil(() -> subscriber.valueCount() == 2);
+        assertThat(subscriber.values().get(0).getCrdtId(), is(CRDT_ID_1));
+        assertThat(subscriber.values().get(1).getCrdtId(), is(CRDT_ID_2));
+    }
+
+    @Test
+    public void shouldBatchAndCoalesceCounterUpdates() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        transport1 = new NioTransport(store1, new BinaryCommandCodec(), 20L, TimeUnit.MILLISECONDS, 64);
+        transport2 = new NioTransport(store2, new BinaryCommandCodec(), 20L, TimeUnit.MILLISECONDS, 64);
+        final InetSocketAddress address = transport1.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        transport2.connect(address);
+        final GCounter counter1 = store1.createGCounter(CRDT_ID_1);
+        final ORSet<String> set1 = store1.createORSet(CRDT_ID_2);
+        // the definitions arrive after the connection subscribed to the commands of the CRDTs
+        awaitUntil(() -> store2.findGCounter(CRDT_ID_1).isDefined() && store2.findORSet(CRDT_ID_2).isDefined());
+
+        // when:
+        for (int i = 0; i < 10_000; i++) {
+            counter1.increment();
+        }
+        set1.add("A");
+
+        // then:
+        awaitUntil(() -> store2.findGCounter(CRDT_ID_1).map(GCounter::get).getOrElse(0L) == 10_000L);
+        awaitUntil(() -> store2.<String>findORSet(CRDT_ID_2).map(ORSet::size).getOrElse(0) == 1);
+        assertThat(transport1.getCoalescedCommandCount() > 0L, is(true));
+    }
+
+    @Test
+    public void shouldStartBatchWindowWithFirstCommandAfterFullBatch() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        transport1 = new NioTransport(store1, new BinaryCommandCodec(), 1L, TimeUnit.SECONDS, 2);
+        transport2 = new NioTransport(store2, new BinaryCommandCodec(), 1L, TimeUnit.SECONDS, 2);
+        final InetSocketAddress address = transport1.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        transport2.connect(address);
+        final GSet<String> set1 = store1.createGSet(CRDT_ID_1);
+        awaitUntil(() -> store2.findGSet(CRDT_ID_1).isDefined());
+        final GSet<String> set2 = store2.<String>findGSet(CRDT_ID_1).get();
+
+        // when:
+        set1.add("A");
+        set1.add("B");
+        awaitUntil(() -> set2.size() == 2);
+        Thread.sleep(500L);
+        final long start = System.nanoTime();
+        set1.add("C");
+        awaitUntil(() -> set2.size() == 3);
+
+        // then:
+        assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900L), is(true));
+    }
+
+    @Test
+    public void shouldServeConnectionsAfterATaskFailed() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        transport1 = new NioTransport(store1);
+        transport2 = new NioTransport(store2);
+        final InetSocketAddress address = transport1.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        // when:
+        transport1.execute(() -> {
+            throw new IllegalStateException("Task failed");
+        });
+        transport2.connect(address);
+        store1.createGCounter(CRDT_ID_1).increment();
+
+        // then:
+        awaitUntil(() -> store2.findGCounter(CRDT_ID_1).map(GCounter::get).getOrElse(0L) == 1L);
+    }
+
+    @Test
+    public void shouldCloseOnlyTheConnectionThatSentAMalformedFrame() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        final CrdtStore store2 = new CrdtStore(NODE_ID_2);
+        transport1 = new NioTransport(store1);
+        transport2 = new NioTransport(store2);
+        final InetSocketAddress address = transport1.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        transport2.connect(address);
+        awaitUntil(() -> transport1.getConnectionCount() == 1);
+
+        // when:
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            awaitUntil(() -> transport1.getConnectionCount() == 2);
+            // a frame with an unknown type
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 1, 99}));
+            awaitUntil(() -> transport1.getConnectionCount() == 1);
+        }
+        store1.createGCounter(CRDT_ID_1).increment();
+
+        // then:
+        awaitUntil(() -> store2.findGCounter(CRDT_ID_1).map(GCounter::get).getOrElse(0L) == 1L);
+    }
+
+    @Test
+    public void shouldCloseConnectionThatAnnouncesAnOversizedFrame() throws Exception {
+        // given:
+        final CrdtStore store1 = new CrdtStore(NODE_ID_1);
+        transport1 = new NioTransport(store1);
+        final InetSocketAddress address = transport1.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        // when:
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            awaitUntil(() -> transport1.getConnectionCount() == 1);
+            // the header of a 32 MB frame without any payload
+            channel.write(ByteBuffer.wrap(new byte[] {2, 0, 0, 0}));
+
+            // then:
+            awaitUntil(() -> transport1.getConnectionCount() == 0);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void constructorWithZeroBatchWindowShouldThrow() throws Exception {
+        new NioTransport(new CrdtStore(), new BinaryCommandCodec(), 0L, TimeUnit.MILLISECONDS, 64);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void constructorWithNullStoreShouldThrow() throws Exception {
+        new NioTransport(null);
+    }
+
+
+    private RemoteCrdtStore connect(CrdtStore store1, CrdtStore store2) throws Exception {
+        transport1 = new NioTransport(store1);
+        transport2 = new NioTransport(store2);
+        final InetSocketAddress address = transport1.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return transport2.connect(address);
+    }
+
+    private static ORSet<String> awaitCrdt(CrdtStore store) throws InterruptedException {
+        awaitUntil(() -> store.findORSet(CRDT_ID_1).isDefined());
+        return store.<String>findORSet(CRDT_ID_1).get();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(condition.getAsBoolean(), is(true));
+    }
+}
@@ -0,0 +1,48 @@
+package com.netopyr.wurmloch.vectorclock;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class NodeRegistryTest {
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void indexOfNullShouldThrow() {
+        NodeRegistry.indexOf(null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void nodeIdOfUnknownIndexShouldThrow() {
+        NodeRegistry.nodeIdOf(-1);
+    }
+
+    @Test
+    public void itShouldAssignStableIndices() {
+        // when
+        final int index1 = NodeRegistry.indexOf("NodeRegistryTest_1");
+        final int index2 = NodeRegistry.indexOf("NodeRegistryTest_2");
+
+        // then
+        assertThat(index1, is(not(index2)));
+        assertThat(NodeRegistry.indexOf("NodeRegistryTest_1"), is(index1));
+        assertThat(NodeRegistry.indexOf("NodeRegistryTest_2"), is(index2));
+        assertThat(NodeRegistry.nodeIdOf(index1), is("NodeRegistryTest_1"));
+        assertThat(NodeRegistry.nodeIdOf(index2), is("NodeRegistryTest_2"));
+    }
+
+    @Test
+    public void itShouldGrowBeyondInitialCapacity() {
+        // when
+        final int[] indices = new int[100];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = NodeRegistry.indexOf("NodeRegistryTest_Growth_" + i);
+        }
+
+        // then
+        for (int i = 0; i < indices.length; i++) {
+            assertThat(NodeRegistry.nodeIdOf(indices[i]), is("NodeRegistryTest_Growth_" + i));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.netopyr.wurmloch.StrictVectorClock;
 
+import com.netopyr.wurmloch.vectorclock.Causality;
 import com.netopyr.wurmloch.vectorclock.StrictVectorClock;
 import org.testng.annotations.Test;
 
@@ -333,4 +334,40 @@ public class StrictVectorClockTest {
         assertThat(vectorClock22_11.equals(vectorClock11_22), is(true));
     }
 
+    @Test
+    public void shouldCalculateCausality() {
+        // given
+        final StrictVectorClock vectorClock1 = new StrictVectorClock(ID_1);
+        final StrictVectorClock vectorClock11 = vectorClock1.increment();
+        final StrictVectorClock vectorClock2 = new StrictVectorClock(ID_2);
+        final StrictVectorClock vectorClock22 = vectorClock2.increment();
+        final StrictVectorClock vectorClock11_22 = vectorClock11.merge(vectorClock22);
+
+        // then
+        assertThat(vectorClock1.compare(vectorClock2), is(Causality.EQUAL));
+        assertThat(vectorClock1.compare(vectorClock11), is(Causality.BEFORE));
+        assertThat(vectorClock11.compare(vectorClock1), is(Causality.AFTER));
+        assertThat(vectorClock11.compare(vectorClock22), is(Causality.CONCURRENT));
+        assertThat(vectorClock22.compare(vectorClock11), is(Causality.CONCURRENT));
+        assertThat(vectorClock11_22.compare(vectorClock22), is(Causality.AFTER));
+        assertThat(vectorClock22.compare(vectorClock11_22), is(Causality.BEFORE));
+    }
+
+    @Test
+    public void shouldCalculateMeet() {
+        // given
+        final StrictVectorClock vectorClock1 = new StrictVectorClock(ID_1);
+        final StrictVectorClock vectorClock11 = vectorClock1.increment();
+        final StrictVectorClock vectorClock111 = vectorClock11.increment();
+        final StrictVectorClock vectorClock2 = new StrictVectorClock(ID_2);
+        final StrictVectorClock vectorClock22 = vectorClock2.increment();
+        final StrictVectorClock vectorClock11_22 = vectorClock11.merge(vectorClock22);
+        final StrictVectorClock vectorClock111_2 = vectorClock111.merge(vectorClock2);
+
+        // then
+        assertThat(vectorClock11.meet(vectorClock111).compare(vectorClock11), is(Causality.EQUAL));
+        assertThat(vectorClock111.meet(vectorClock11).compare(vectorClock11), is(Causality.EQUAL));
+        assertThat(vectorClock11.meet(vectorClock22).compare(vectorClock1), is(Causality.EQUAL));
+        assertThat(vectorClock11_22.meet(vectorClock111_2).compare(vectorClock11), is(Causality.EQUAL));
+    }
 }
@@ -1,6 +1,7 @@
 package com.netopyr.wurmloch.vectorclock;
 
 import com.netopyr.wurmloch.vectorclock.VectorClock;
+import javaslang.collection.HashMap;
 import org.testng.annotations.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -341,4 +342,36 @@ public class VectorClockTest {
         assertThat(vectorClock2_1.equals(vectorClock1_2), is(true));
     }
 
+    @Test
+    public void equalClocksShouldHaveEqualHashCodes() {
+        // given
+        final VectorClock vectorClock1 = new VectorClock().increment(ID_1).increment(ID_2);
+        final VectorClock vectorClock2 = new VectorClock(HashMap.of(ID_1, 1L, ID_2, 1L, "ID_3", 0L));
+
+        // then
+        assertThat(vectorClock1.equals(vectorClock2), is(true));
+        assertThat(vectorClock1.hashCode(), is(vectorClock2.hashCode()));
+    }
+
+    @Test
+    public void shouldCalculateCausality() {
+        // given
+        final VectorClock vectorClock0 = new VectorClock();
+        final VectorClock vectorClock1 = vectorClock0.increment(ID_1);
+        final VectorClock vectorClock2 = vectorClock0.increment(ID_2);
+        final VectorClock vectorClock1_2 = vectorClock1.merge(vectorClock2);
+        final VectorClock vectorClock2_2 = vectorClock2.increment(ID_2);
+
+        // then
+        assertThat(vectorClock0.compare(vectorClock0), is(Causality.EQUAL));
+        assertThat(vectorClock0.compare(vectorClock1), is(Causality.BEFORE));
+        assertThat(vectorClock1.compare(vectorClock0), is(Causality.AFTER));
+        assertThat(vectorClock1.compare(vectorClock2), is(Causality.CONCURRENT));
+        assertThat(vectorClock2.compare(vectorClock1), is(Causality.CONCURRENT));
+        assertThat(vectorClock1.compare(vectorClock1_2), is(Causality.BEFORE));
+        assertThat(vectorClock1_2.compare(vectorClock2), is(Causality.AFTER));
+        assertThat(vectorClock1_2.compare(vectorClock2.merge(vectorClock1)), is(Causality.EQUAL));
+        assertThat(vectorClock1_2.compare(vectorClock2_2), is(Causality.CONCURRENT));
+        assertThat(vectorClock2_2.compare(vectorClock1_2), is(Causality.CONCURRENT));
+    }
 }